@@ -13,12 +13,10 @@ import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.MapController;
 import org.osmdroid.views.overlay.DirectedLocationOverlay;
 import org.osmdroid.views.overlay.OverlayManager;
-import org.xmlpull.v1.XmlPullParserException;
 
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
-import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.location.LocationManager;
@@ -40,8 +38,16 @@ import android.widget.TextView;
 import android.widget.Toast;
 import fr.umlv.lastproject.smart.GpsTrack.TrackMode;
 import fr.umlv.lastproject.smart.browser.utils.FileUtils;
-import fr.umlv.lastproject.smart.data.DataImport;
+import fr.umlv.lastproject.smart.data.ExportEvent;
+import fr.umlv.lastproject.smart.data.ExportJob;
+import fr.umlv.lastproject.smart.data.ExportJobService;
+import fr.umlv.lastproject.smart.data.ExportListener;
+import fr.umlv.lastproject.smart.data.ImportEvent;
+import fr.umlv.lastproject.smart.data.ImportJob;
+import fr.umlv.lastproject.smart.data.ImportJobService;
+import fr.umlv.lastproject.smart.data.ImportListener;
 import fr.umlv.lastproject.smart.data.TMSOverlay;
+import fr.umlv.lastproject.smart.database.SurveyWriteQueue;
 import fr.umlv.lastproject.smart.dialog.ExitSmartDialog;
 import fr.umlv.lastproject.smart.dialog.FormDialog;
 import fr.umlv.lastproject.smart.dialog.GPSSettingDialog;
@@ -110,10 +116,111 @@ public class MenuActivity extends Activity {
 
 	private static final Logger LOGGER = SmartLogger.getLocator().getLogger();
 
+	private final ImportListener importListener = new ImportListener() {
+
+		@Override
+		public void layersImported(ImportEvent event) {
+			final TMSOverlay overlay = event.getOverlay();
+			if (overlay != null) {
+				mapView.addGeoTIFFOverlay(overlay);
+				Toast.makeText(MenuActivity.this, R.string.geotiffImport,
+						Toast.LENGTH_SHORT).show();
+				mapView.getController().setCenter(
+						overlay.getExtent().getBoundingBox().getCenter());
+				mapView.getController().setZoom(overlay.getExtent().getZoom());
+			} else {
+				mapView.addGeometryLayers(event.getLayers());
+				final String extension = FileUtils.getExtension(event
+						.getPath());
+				int message = R.string.kmlImport;
+				if (".shp".equalsIgnoreCase(extension)) {
+					message = R.string.shpImport;
+				} else if (".geojson".equalsIgnoreCase(extension)) {
+					message = R.string.geojsonImport;
+				} else if (".gpx".equalsIgnoreCase(extension)) {
+					message = R.string.gpxImport;
+				}
+				Toast.makeText(MenuActivity.this, withProgress(event, message),
+						Toast.LENGTH_SHORT).show();
+			}
+		}
+
+		@Override
+		public void importFailed(ImportEvent event) {
+			if (event.getError() == R.string.importMemoryError) {
+				mapView.getTileProvider().clearTileCache();
+			}
+			Toast.makeText(MenuActivity.this,
+					withProgress(event, event.getError()), Toast.LENGTH_SHORT)
+					.show();
+		}
+
+		/**
+		 * Add the progress of the job to the message if it imports several
+		 * files
+		 */
+		private String withProgress(ImportEvent event, int message) {
+			if (event.getTotal() == 1) {
+				return getString(message);
+			}
+			return getString(message)
+					+ " ("
+					+ getString(R.string.importProgress, event.getDone(),
+							event.getTotal()) + ")";
+		}
+
+		@Override
+		public void jobFinished(ImportJob job) {
+			if (!job.getLayers().isEmpty()) {
+				zoomToLayers(job.getLayers());
+			}
+		}
+	};
+
+	private final ExportListener exportListener = new ExportListener() {
+
+		@Override
+		public void missionExported(ExportEvent event) {
+			if (event.getDone() < event.getTotal()) {
+				Toast.makeText(
+						MenuActivity.this,
+						getString(R.string.exportProgress, event.getDone(),
+								event.getTotal()), Toast.LENGTH_SHORT).show();
+			}
+		}
+
+		@Override
+		public void exportFailed(ExportEvent event) {
+			Toast.makeText(MenuActivity.this, event.getError(),
+					Toast.LENGTH_LONG).show();
+		}
+
+		@Override
+		public void jobFinished(ExportJob job) {
+			if (job.getFiles().isEmpty()) {
+				return;
+			}
+			Toast.makeText(
+					MenuActivity.this,
+					getString(R.string.missionExported) + " : "
+							+ SmartConstants.APP_PATH, Toast.LENGTH_LONG).show();
+
+			if (job.isEmail()) {
+				final ArrayList<Uri> files = new ArrayList<Uri>();
+				for (String path : job.getFiles()) {
+					files.add(Uri.fromFile(new File(path)));
+				}
+				startActivity(FileUtils.createEmailIntent(files));
+			}
+		}
+	};
+
 	@Override
 	protected void onSaveInstanceState(Bundle outState) {
 		super.onSaveInstanceState(outState);
 
+		// The geometries of the pending surveys must be saved with their id
+		SurveyWriteQueue.getInstance(this).flush();
 		outState.putAll(BundleCreator.createBundle(mapView, gpsTrack,
 				polygonTrack));
 		LOGGER.log(Level.INFO, "Saving the application bundle");
@@ -222,6 +329,8 @@ public class MenuActivity extends Activity {
 			}
 		}
 
+		ImportJobService.getInstance().setImportListener(importListener);
+		ExportJobService.getInstance().setExportListener(exportListener);
 	}
 
 	@Override
@@ -241,6 +350,10 @@ public class MenuActivity extends Activity {
 		menu.add(0, SmartConstants.PARAMS_GPS_SETTINGS, 0, R.string.gpsSettings);
 		menu.add(0, SmartConstants.PARAMS_SETTINGS, 0, R.string.settings);
 		menu.add(0, SmartConstants.PARAMS_HELP, 0, R.string.help);
+		menu.add(0, SmartConstants.PARAMS_CANCEL_IMPORT, 0,
+				R.string.cancelImport);
+		menu.add(0, SmartConstants.PARAMS_CANCEL_EXPORT, 0,
+				R.string.cancelExport);
 		// menu.add(0, 5, 0, R.string.about);
 
 		return true;
@@ -337,6 +450,15 @@ public class MenuActivity extends Activity {
 		gps.addGpsListener(infoOverlay);
 	}
 
+	@Override
+	public boolean onPrepareOptionsMenu(Menu menu) {
+		menu.findItem(SmartConstants.PARAMS_CANCEL_IMPORT).setVisible(
+				ImportJobService.getInstance().isRunning());
+		menu.findItem(SmartConstants.PARAMS_CANCEL_EXPORT).setVisible(
+				ExportJobService.getInstance().isRunning());
+		return super.onPrepareOptionsMenu(menu);
+	}
+
 	@Override
 	public boolean onOptionsItemSelected(MenuItem item) {
 		// TODO deporter dans un enum
@@ -374,6 +496,20 @@ public class MenuActivity extends Activity {
 			helpDialog.show();
 			break;
 
+		case SmartConstants.PARAMS_CANCEL_IMPORT:
+			if (ImportJobService.getInstance().cancelAll() > 0) {
+				Toast.makeText(this, R.string.importCancelled,
+						Toast.LENGTH_SHORT).show();
+			}
+			break;
+
+		case SmartConstants.PARAMS_CANCEL_EXPORT:
+			if (ExportJobService.getInstance().cancelAll() > 0) {
+				Toast.makeText(this, R.string.exportCancelled,
+						Toast.LENGTH_SHORT).show();
+			}
+			break;
+
 		// case 5:
 		// final AboutDialog about = new AboutDialog(this);
 		// about.show();
@@ -466,191 +602,27 @@ public class MenuActivity extends Activity {
 
 			case SmartConstants.IMPORT_KML_SHP_BROWSER_ACTIVITY:
 				final String path = data.getData().getPath();
-				final String extension = FileUtils.getExtension(path);
-				final ProgressDialog progressDialogKmlShp = ProgressDialog
-						.show(this, getString(R.string.vector_progress_title),
-								getString(R.string.vector_progress));
-
 				LOGGER.log(Level.INFO, "Getting vector data :" + path);
-				final Thread vectorThread = new Thread(new Runnable() {
-
-					@Override
-					public void run() {
-						try {
-							List<GeometryLayer> geometryLayersToImport = new ArrayList<GeometryLayer>();
-							int err = R.string.kmlParseError;
-							int succ = R.string.kmlImport;
-
-							if (extension.equalsIgnoreCase(".kml")) {
-								try {
-									geometryLayersToImport = DataImport
-											.importKml(MenuActivity.this, path);
-									succ = R.string.kmlImport;
-								} catch (XmlPullParserException e) {
-									err = R.string.kmlParseError;
-								} catch (IOException e) {
-									err = R.string.kmlReadError;
-
-								}
-							} else if (extension.equalsIgnoreCase(".shp")) {
-								try {
-									final GeometryLayer lay = DataImport
-											.importShapeFile(MenuActivity.this,
-													path);
-									if (lay != null) {
-										geometryLayersToImport.add(lay);
-										succ = R.string.shpImport;
-
-									} else {
-										err = R.string.errorShp;
-									}
-
-								} catch (SmartException e) {
-									err = R.string.errorShp;
-								}
-
-							}
-							final int error = err;
-							final int success = succ;
-							final List<GeometryLayer> layers = geometryLayersToImport;
-							runOnUiThread(new Runnable() {
-
-								@Override
-								public void run() {
-									if (layers == null || layers.isEmpty()) {
-										Toast.makeText(MenuActivity.this,
-												error, Toast.LENGTH_SHORT)
-												.show();
-									} else {
-										mapView.addGeometryLayers(layers);
-										Toast.makeText(MenuActivity.this,
-												success, Toast.LENGTH_SHORT)
-												.show();
-										BoundingBoxE6 vectorBB = layers.get(0)
-												.getExtent().getBoundingBox();
-										if (layers.size() > 1) {
-											int northBB = layers.get(0)
-													.getExtent()
-													.getBoundingBox()
-													.getLatNorthE6(), southBB = layers
-													.get(0).getExtent()
-													.getBoundingBox()
-													.getLatSouthE6(), eastBB = layers
-													.get(0).getExtent()
-													.getBoundingBox()
-													.getLonEastE6(), westBB = layers
-													.get(0).getExtent()
-													.getBoundingBox()
-													.getLonWestE6();
-											for (int i = 0; i < layers.size(); i++) {
-												BoundingBoxE6 tmpBB = layers
-														.get(i).getExtent()
-														.getBoundingBox();
-												int tmpNorth = tmpBB
-														.getLatNorthE6();
-												int tmpSouth = tmpBB
-														.getLatSouthE6();
-												int tmpEast = tmpBB
-														.getLonEastE6();
-												int tmpWest = tmpBB
-														.getLonWestE6();
-												if (tmpNorth > northBB) {
-													northBB = tmpNorth;
-												}
-												if (tmpSouth < southBB) {
-													southBB = tmpSouth;
-												}
-												if (tmpEast > eastBB) {
-													eastBB = tmpEast;
-												}
-												if (tmpWest < westBB) {
-													westBB = tmpWest;
-												}
-											}
-											vectorBB = new BoundingBoxE6(
-													northBB, eastBB, southBB,
-													westBB);
-										}
-										mapView.zoomToBoundingBox(vectorBB);
-									}
-									progressDialogKmlShp.dismiss();
-								}
-							});
-						} catch (OutOfMemoryError outOfMemory) {
-							mapView.getTileProvider().clearTileCache();
-
-							progressDialogKmlShp.dismiss();
-							runOnUiThread(new Runnable() {
-
-								@Override
-								public void run() {
-									Toast.makeText(MenuActivity.this, "Error",
-											Toast.LENGTH_LONG).show();
-
-								}
-							});
-						}
-
-					}
-
-				});
-				vectorThread.start();
+				// A selected directory imports all its vector files at once
+				final List<String> paths = getVectorFiles(path);
+				if (paths.isEmpty()) {
+					Toast.makeText(this, R.string.noVectorFile,
+							Toast.LENGTH_SHORT).show();
+					break;
+				}
+				ImportJobService.getInstance().importVectors(this, paths);
+				Toast.makeText(this, R.string.vector_progress,
+						Toast.LENGTH_SHORT).show();
 				break;
 
 			case SmartConstants.IMPORT_TIFF_BROWSER_ACTIVITY:
 				final String tiffPath = data.getData().getPath();
-				final ProgressDialog progressDialog = ProgressDialog.show(this,
-						getString(R.string.tiff_progress_title),
-						getString(R.string.tiff_progress));
 				LOGGER.log(Level.INFO,
 						"Getting TIFF path from browser activity :" + tiffPath);
-				final Thread tiffThread = new Thread(new Runnable() {
-
-					@Override
-					public void run() {
-						TMSOverlay tms = null;
-						try {
-
-							tms = DataImport.importGeoTIFFFileFolder(tiffPath,
-									MenuActivity.this);
-							LOGGER.log(Level.INFO,
-									"Trying to import TIFF file :" + tiffPath);
-
-						} catch (IOException e) {
-							LOGGER.log(Level.SEVERE,
-									"TIFF file can't be imported :" + tiffPath);
-						}
-						final TMSOverlay overlay = tms;
-						runOnUiThread(new Runnable() {
-
-							@Override
-							public void run() {
-								if (overlay == null) {
-									Toast.makeText(MenuActivity.this,
-											R.string.geotiffReadError,
-											Toast.LENGTH_SHORT).show();
-								} else {
-									mapView.addGeoTIFFOverlay(overlay);
-									Toast.makeText(MenuActivity.this,
-											R.string.geotiffImport,
-											Toast.LENGTH_SHORT).show();
-									mapView.getController().setCenter(
-											(overlay.getExtent()
-													.getBoundingBox()
-													.getCenter()));
-									mapView.getController().setZoom(
-											overlay.getExtent().getZoom());
-
-								}
-
-								progressDialog.dismiss();
-
-							}
-						});
-
-					}
-				});
-				tiffThread.start();
+				ImportJobService.getInstance().importTiles(this,
+						Collections.singletonList(tiffPath));
+				Toast.makeText(this, R.string.tiff_progress,
+						Toast.LENGTH_SHORT).show();
 				break;
 
 			case SmartConstants.HEIGHT_ACTIVITY:
@@ -991,6 +963,8 @@ public class MenuActivity extends Activity {
 	@Override
 	protected void onDestroy() {
 		super.onDestroy();
+		ImportJobService.getInstance().removeImportListener(importListener);
+		ExportJobService.getInstance().removeExportListener(exportListener);
 		pref.setOrientation(SmartParameters.getParameters()
 				.getScreenOrientation());
 		pref.setTheme(SmartParameters.getParameters().getApplicationTheme());
@@ -1006,6 +980,56 @@ public class MenuActivity extends Activity {
 		System.gc();
 	}
 
+	/**
+	 * Zoom on the extent of all the given layers
+	 * 
+	 * @param layers
+	 */
+	private void zoomToLayers(List<GeometryLayer> layers) {
+		BoundingBoxE6 first = layers.get(0).getExtent().getBoundingBox();
+		int northBB = first.getLatNorthE6();
+		int southBB = first.getLatSouthE6();
+		int eastBB = first.getLonEastE6();
+		int westBB = first.getLonWestE6();
+		for (int i = 1; i < layers.size(); i++) {
+			BoundingBoxE6 tmpBB = layers.get(i).getExtent().getBoundingBox();
+			northBB = Math.max(northBB, tmpBB.getLatNorthE6());
+			southBB = Math.min(southBB, tmpBB.getLatSouthE6());
+			eastBB = Math.max(eastBB, tmpBB.getLonEastE6());
+			westBB = Math.min(westBB, tmpBB.getLonWestE6());
+		}
+		mapView.zoomToBoundingBox(new BoundingBoxE6(northBB, eastBB, southBB,
+				westBB));
+	}
+
+	/**
+	 * 
+	 * @param path
+	 *            of a vector file or of a directory
+	 * @return the file, or the vector files of the directory
+	 */
+	private static List<String> getVectorFiles(String path) {
+		final File file = new File(path);
+		final List<String> paths = new ArrayList<String>();
+		if (!file.isDirectory()) {
+			paths.add(path);
+			return paths;
+		}
+		final File[] files = file.listFiles();
+		if (files == null) {
+			return paths;
+		}
+		for (File f : files) {
+			final String extension = FileUtils.getExtension(f.getPath());
+			for (String type : FileUtils.KML_SHP_TYPE) {
+				if (f.isFile() && type.equalsIgnoreCase(extension)) {
+					paths.add(f.getPath());
+				}
+			}
+		}
+		return paths;
+	}
+
 	private void cleanTmpFolder() {
 		LOGGER.log(Level.INFO, "tmp folder cleaned");
 		final List<File> files = FileUtils.getFileList(SmartConstants.TMP_PATH);
@@ -1168,6 +1192,13 @@ public class MenuActivity extends Activity {
 		createDialog(FORM_MODIFY_DIALOG, null);
 	}
 
+	@Override
+	protected void onPause() {
+		// The process may be killed once paused
+		SurveyWriteQueue.getInstance(this).flush();
+		super.onPause();
+	}
+
 	@Override
 	protected void onStop() {
 		mapView.getTileProvider().clearTileCache();
@@ -56,9 +56,11 @@ public final class FileUtils {
 
 	private static FileFilter fileFilter;
 
-	public static final String[] KML_SHP_TYPE = { ".shp", ".kml" };
+	public static final String[] KML_SHP_TYPE = { ".shp", ".kml", ".kmz",
+			".geojson", ".gpx" };
 	//public static final String[] KML_TYPE = { ".kml" };
 	public static final String[] CSV_TYPE = { ".csv" };
+	public static final String[] GEOJSON_TYPE = { ".geojson" };
 	public static final String[] TIF_TYPE = { ".tif", ".tiff" };
 	/* We do not want any file displayed */
 	public static final String[] DIRECTORY_TYPE = { "?" };
@@ -0,0 +1,105 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A set of tasks run in parallel by a {@link JobService}, each task publishes
+ * one event
+ *
+ * @param <E>
+ *            the type of the events
+ */
+public abstract class BackgroundJob<E> {
+
+	private final Set<Thread> workers = new HashSet<Thread>();
+	private volatile boolean cancelled = false;
+	private int done = 0;
+	private int ended = 0;
+
+	BackgroundJob() {
+	}
+
+	/**
+	 *
+	 * @return the number of tasks of the job
+	 */
+	public abstract int getTotal();
+
+	/**
+	 *
+	 * @return the number of tasks already handled
+	 */
+	public int getDone() {
+		return done;
+	}
+
+	/**
+	 *
+	 * @return true if all the tasks have been handled
+	 */
+	public boolean isFinished() {
+		return done == getTotal();
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Keep the result of a task, called on the UI thread
+	 *
+	 * @param event
+	 *            of the task
+	 */
+	abstract void addResult(E event);
+
+	/**
+	 * Called on the thread of a task before it runs
+	 *
+	 * @return false if the job is cancelled, the task must then be skipped
+	 */
+	synchronized boolean begin() {
+		if (cancelled) {
+			return false;
+		}
+		workers.add(Thread.currentThread());
+		return true;
+	}
+
+	/**
+	 * Called on the thread of a task once it has run
+	 */
+	synchronized void end() {
+		workers.remove(Thread.currentThread());
+		// The interruption of a cancelled task must not reach the next one
+		Thread.interrupted();
+	}
+
+	/**
+	 * Cancel the job : the tasks not yet started are skipped and the running
+	 * ones are interrupted
+	 */
+	synchronized void cancel() {
+		cancelled = true;
+		for (Thread worker : workers) {
+			worker.interrupt();
+		}
+	}
+
+	int taskDone(E event) {
+		addResult(event);
+		done++;
+		return done;
+	}
+
+	/**
+	 * Called on the UI thread when a task has stopped, skipped or not
+	 *
+	 * @return true if all the tasks of the job have stopped
+	 */
+	boolean taskEnded() {
+		ended++;
+		return ended == getTotal();
+	}
+}
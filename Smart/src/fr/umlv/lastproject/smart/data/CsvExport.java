@@ -0,0 +1,299 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import android.content.Context;
+import fr.umlv.lastproject.smart.R;
+import fr.umlv.lastproject.smart.browser.utils.FileUtils;
+import fr.umlv.lastproject.smart.database.DbManager;
+import fr.umlv.lastproject.smart.database.FormRowIterator;
+import fr.umlv.lastproject.smart.database.GeometryIterator;
+import fr.umlv.lastproject.smart.database.GeometryRow;
+import fr.umlv.lastproject.smart.database.MissionRecord;
+import fr.umlv.lastproject.smart.layers.GeometryType;
+import fr.umlv.lastproject.smart.layers.PackedCoordinates;
+import fr.umlv.lastproject.smart.utils.SmartException;
+import fr.umlv.lastproject.smart.utils.SmartLogger;
+
+/**
+ * Utils for export in CSV : one file by type of geometry, the geometry in WKT
+ * then the columns of the form, separated by ';'. The geometries are streamed
+ * from the database to buffered UTF-8 files, a file is created only when its
+ * first geometry is written.
+ *
+ */
+public final class CsvExport {
+
+	private static final Logger LOGGER = SmartLogger.getLocator().getLogger();
+	private static final String UNABLE_TO_EXPORT = "Unable to export the mission";
+	private static final String MISSION_CHANGED = "The mission has been modified during the export";
+	private static final String CANCELLED = "The export has been cancelled";
+	private static final String CHARSET = "UTF-8";
+	private static final int BUFFER_SIZE = 8192;
+	private static final char SEPARATOR = ';';
+
+	/**
+	 * Decimals of the coordinates, 1E-7 degree is about 1 cm
+	 */
+	private static final int DECIMALS = 7;
+	private static final long SCALE = 10000000L;
+
+	private CsvExport() {
+	}
+
+	/**
+	 * Export the geometries of a mission in CSV files named <the name of the
+	 * mission><the type>.csv. The file of a type without geometry is deleted,
+	 * so that an older export is not taken for this one.
+	 *
+	 * @param path
+	 *            of the folder
+	 * @param idMission
+	 * @param context
+	 * @return the paths to the written files
+	 * @throws CsvExportException
+	 */
+	public static List<String> exportMission(String path, long idMission,
+			Context context) throws CsvExportException {
+		DbManager dbm = new DbManager();
+		try {
+			dbm.open(context);
+		} catch (SmartException e) {
+			LOGGER.log(Level.SEVERE, UNABLE_TO_EXPORT);
+			throw new CsvExportException(UNABLE_TO_EXPORT, e);
+		}
+
+		try {
+			MissionRecord mission = dbm.getMission(idMission);
+			GeometryIterator geometries = dbm
+					.iterateGeometriesFromMission(mission.getId());
+			FormRowIterator rows = dbm.iterateFormRowsFromMission(
+					mission.getId(), mission.getForm().getTitle());
+
+			GeometryType[] types = GeometryType.values();
+			Writer[] csvs = new Writer[types.length];
+			String base = path + mission.getTitle();
+			char[] digits = new char[Long.toString(Long.MAX_VALUE).length()];
+			String[] columns = rows.getColumnNames();
+			boolean written = false;
+			try {
+				if (!geometries.hasNext()) {
+					throw new CsvExportException(
+							context.getString(R.string.noGeometryInMission));
+				}
+
+				// The n-th row is the form record of the n-th geometry
+				while (geometries.hasNext()) {
+					if (DataExport.isCancelled()) {
+						throw new CsvExportException(CANCELLED);
+					}
+					GeometryRow geometry = geometries.next();
+					if (!rows.moveToNext()) {
+						throw new CsvExportException(MISSION_CHANGED);
+					}
+					int type = geometry.getType().ordinal();
+					if (csvs[type] == null) {
+						csvs[type] = openCsv(fileName(base, types[type]),
+								columns);
+					}
+					Writer out = csvs[type];
+					writeWkt(out, geometry, digits);
+					for (int i = 0; i < columns.length; i++) {
+						out.write(SEPARATOR);
+						writeField(out, rows.getString(i));
+					}
+					out.write('\n');
+				}
+				written = true;
+			} finally {
+				geometries.close();
+				rows.close();
+				for (int i = 0; i < csvs.length; i++) {
+					if (csvs[i] != null) {
+						csvs[i].close();
+						// A failed or cancelled export leaves no partial file
+						if (!written) {
+							new File(fileName(base, types[i])).delete();
+						}
+					}
+				}
+			}
+
+			List<String> files = new ArrayList<String>();
+			for (int i = 0; i < types.length; i++) {
+				String fileName = fileName(base, types[i]);
+				if (csvs[i] != null) {
+					files.add(fileName);
+				} else {
+					new File(fileName).delete();
+				}
+			}
+			LOGGER.log(Level.INFO,
+					"Export mission to CSV :" + mission.getTitle());
+			return files;
+
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, UNABLE_TO_EXPORT);
+			throw new CsvExportException(UNABLE_TO_EXPORT, e);
+		} finally {
+			dbm.close();
+		}
+	}
+
+	private static String fileName(String base, GeometryType type) {
+		return base + type.toString() + FileUtils.CSV_TYPE[0];
+	}
+
+	/**
+	 * Create a file and write its header
+	 */
+	private static Writer openCsv(String fileName, String[] columns)
+			throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(fileName), CHARSET), BUFFER_SIZE);
+		out.write("Geom");
+		for (String column : columns) {
+			out.write(SEPARATOR);
+			writeField(out, column);
+		}
+		out.write('\n');
+		return out;
+	}
+
+	/**
+	 * Write a value, between quotes if it contains a separator, a quote or a
+	 * new line. Nothing is written for null.
+	 */
+	private static void writeField(Writer out, String value)
+			throws IOException {
+		if (value == null) {
+			return;
+		}
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == SEPARATOR || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			out.write(value);
+			return;
+		}
+		out.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				out.write('"');
+			}
+			out.write(c);
+		}
+		out.write('"');
+	}
+
+	/**
+	 * Write the geometry in WKT, the ring of a polygon is closed by its first
+	 * point
+	 */
+	private static void writeWkt(Writer out, GeometryRow geometry,
+			char[] digits) throws IOException {
+		PackedCoordinates points = geometry.getCoordinates();
+		switch (geometry.getType()) {
+		case POINT:
+			out.write("POINT");
+			break;
+		case LINE:
+			out.write("LINESTRING");
+			break;
+		case POLYGON:
+			out.write("POLYGON");
+			break;
+		default:
+			throw new IllegalStateException(
+					"The given GeometryType is not supported for the CSV export");
+		}
+		if (points.size() == 0) {
+			out.write(" EMPTY");
+			return;
+		}
+
+		boolean polygon = geometry.getType() == GeometryType.POLYGON;
+		out.write(polygon ? "((" : "(");
+		for (int i = 0; i < points.size(); i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+			writePosition(out, points, i, digits);
+		}
+		int last = points.size() - 1;
+		if (polygon
+				&& (points.getLatitude(0) != points.getLatitude(last) || points
+						.getLongitude(0) != points.getLongitude(last))) {
+			out.write(',');
+			writePosition(out, points, 0, digits);
+		}
+		out.write(polygon ? "))" : ")");
+	}
+
+	private static void writePosition(Writer out, PackedCoordinates points,
+			int i, char[] digits) throws IOException {
+		writeNumber(out, points.getLongitude(i), digits);
+		out.write(' ');
+		writeNumber(out, points.getLatitude(i), digits);
+	}
+
+	/**
+	 * Write a number with at most {@link #DECIMALS} decimals, without the
+	 * trailing zeros, through a reused buffer instead of a String by number
+	 */
+	private static void writeNumber(Writer out, double value, char[] digits)
+			throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value)
+				|| Math.abs(value) >= Long.MAX_VALUE / SCALE) {
+			out.write(Double.toString(value));
+			return;
+		}
+		long scaled = Math.round(Math.abs(value) * SCALE);
+		if (value < 0 && scaled != 0) {
+			out.write('-');
+		}
+		writeDigits(out, scaled / SCALE, 1, digits);
+
+		long fraction = scaled % SCALE;
+		if (fraction == 0) {
+			return;
+		}
+		int decimals = DECIMALS;
+		while (fraction % 10 == 0) {
+			fraction /= 10;
+			decimals--;
+		}
+		out.write('.');
+		writeDigits(out, fraction, decimals, digits);
+	}
+
+	/**
+	 * Write a positive number on at least the given number of digits, padded
+	 * with zeros
+	 */
+	private static void writeDigits(Writer out, long value, int length,
+			char[] digits) throws IOException {
+		int start = digits.length;
+		long rest = value;
+		do {
+			digits[--start] = (char) ('0' + rest % 10);
+			rest /= 10;
+		} while (rest > 0);
+		while (digits.length - start < length) {
+			digits[--start] = '0';
+		}
+		out.write(digits, start, digits.length - start);
+	}
+}
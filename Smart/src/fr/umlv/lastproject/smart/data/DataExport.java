@@ -1,26 +1,8 @@
 package fr.umlv.lastproject.smart.data;
 
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 
 import android.content.Context;
-import fr.umlv.lastproject.smart.R;
-import fr.umlv.lastproject.smart.browser.utils.FileUtils;
-import fr.umlv.lastproject.smart.database.BooleanFieldRecord;
-import fr.umlv.lastproject.smart.database.DbManager;
-import fr.umlv.lastproject.smart.database.FieldRecord;
-import fr.umlv.lastproject.smart.database.FormRecord;
-import fr.umlv.lastproject.smart.database.GeometryRecord;
-import fr.umlv.lastproject.smart.database.HeightFieldRecord;
-import fr.umlv.lastproject.smart.database.ListFieldRecord;
-import fr.umlv.lastproject.smart.database.MissionRecord;
-import fr.umlv.lastproject.smart.database.NumericFieldRecord;
-import fr.umlv.lastproject.smart.database.PictureFieldRecord;
-import fr.umlv.lastproject.smart.database.PointRecord;
-import fr.umlv.lastproject.smart.database.TextFieldRecord;
-import fr.umlv.lastproject.smart.layers.GeometryType;
 import fr.umlv.lastproject.smart.utils.SmartException;
 
 public final class DataExport {
@@ -29,135 +11,26 @@ public final class DataExport {
 	}
 
 	/**
-	 * Export the geometries of the mission in a CSV file. The name of the file
-	 * is <the name of the mission>.csv
+	 * The exports check it between two geometries, a cancelled export deletes
+	 * the files it has written
 	 * 
-	 * @throws IOException
+	 * @return true if the export run by the current thread has been cancelled
 	 */
-	public static String exportCsv(String path, long idMission, Context context)
-			throws CsvExportException {
-		try {
-			DbManager dbm = new DbManager();
-			dbm.open(context);
-			MissionRecord mission = dbm.getMission(idMission);
-			Iterator<GeometryRecord> geometryIterator = dbm
-					.getGeometriesFromMission(mission.getId()).iterator();
-
-			if (!geometryIterator.hasNext()) {
-				throw new CsvExportException(
-						context.getString(R.string.noGeometryInMission));
-			}
-
-			HashMap<GeometryType, FileWriter> csvs = new HashMap<GeometryType, FileWriter>();
-
-			for (GeometryType t : GeometryType.values()) {
-				csvs.put(t,
-						new FileWriter(path + mission.getTitle() + t.toString()
-								+ FileUtils.CSV_TYPE[0]));
-				csvs.get(t).write("Geom");
-			}
-
-			GeometryRecord geometry = geometryIterator.next();
-			FormRecord formRecord = dbm.getFormRecord(
-					geometry.getIdFormRecord(), mission.getForm().getTitle());
-			for (GeometryType t : GeometryType.values()) {
-				for (FieldRecord field : formRecord.getFields()) {
-					csvs.get(t).write(";" + field.getField().getLabel());
-
-				}
-				csvs.get(t).write("\n");
-
-			}
-
-			while (true) {
-
-				StringBuilder line = new StringBuilder();
-
-				if (geometry.getType() == GeometryType.LINE) {
-					line.append("LINESTRING(");
-				} else {
-					line.append(geometry.getType()).append("(");
-				}
-
-				if (geometry.getType() == GeometryType.POLYGON) {
-					line.append("(");
-				}
-
-				for (PointRecord point : geometry.getPointsRecord()) {
-					line.append(point.getY()).append(" ").append(point.getX());
-					line.append(",");
-				}
-				line.deleteCharAt(line.length() - 1);
-				if (geometry.getType() == GeometryType.POLYGON) {
-					// Add the first point at the end
-					PointRecord point = geometry.getPointsRecord().get(0);
-					line.append(",").append(point.getY()).append(" ")
-							.append(point.getX());
-					line.append(")");
-				}
-				line.append(")");
-
-				for (FieldRecord field : formRecord.getFields()) {
-					line.append(";");
-
-					switch (field.getField().getType()) {
-					case TEXT:
-						TextFieldRecord tf = (TextFieldRecord) field;
-						line.append(tf.getValue());
-						break;
-
-					case NUMERIC:
-						NumericFieldRecord nf = (NumericFieldRecord) field;
-						line.append(String.valueOf(nf.getValue()));
-						break;
-
-					case BOOLEAN:
-						BooleanFieldRecord bf = (BooleanFieldRecord) field;
-						line.append(String.valueOf(bf.getValue()));
-						break;
-
-					case LIST:
-						ListFieldRecord lf = (ListFieldRecord) field;
-						line.append(lf.getValue());
-						break;
-
-					case PICTURE:
-						PictureFieldRecord pf = (PictureFieldRecord) field;
-						line.append(pf.getValue());
-						break;
-
-					case HEIGHT:
-						HeightFieldRecord hf = (HeightFieldRecord) field;
-						line.append(String.valueOf(hf.getValue()));
-						break;
-
-					default:
-						throw new IllegalStateException("Unkown field type");
-					}
-				}
-
-				line.append("\n");
-				csvs.get(geometry.getType()).write(line.toString());
-
-				if (!geometryIterator.hasNext()) {
-					break;
-				}
-				geometry = geometryIterator.next();
-				formRecord = dbm.getFormRecord(geometry.getIdFormRecord(),
-						mission.getForm().getTitle());
-			}
-
-			for (GeometryType t : GeometryType.values()) {
-				csvs.get(t).close();
+	static boolean isCancelled() {
+		return Thread.currentThread().isInterrupted();
+	}
 
-			}
-			dbm.close();
-			return path + mission.getTitle();
-		} catch (IOException e) {
-			throw new CsvExportException("Unable to export the mission", e);
-		} catch (SmartException e) {
-			throw new CsvExportException("Unable to export the mission", e);
-		}
+	/**
+	 * Export the geometries of the mission in CSV files, one by type of
+	 * geometry. The name of a file is <the name of the mission><the type>.csv
+	 * 
+	 * @return the paths to the saved files, a type without geometry has no
+	 *         file
+	 * @throws CsvExportException
+	 */
+	public static List<String> exportCsv(String path, long idMission,
+			Context context) throws CsvExportException {
+		return CsvExport.exportMission(path, idMission, context);
 	}
 
 	/**
@@ -172,4 +45,30 @@ public final class DataExport {
 			throws KmlExportException {
 		return KmlExport.exportMission(path, idMission, context);
 	}
+
+	/**
+	 * Export the geometries of the mission in a GeoJson file. The name of the
+	 * file is <the name of the mission>.geojson
+	 * 
+	 * @return the path to the saved file
+	 * @throws GeoJsonExportException
+	 */
+	public static String exportGeoJson(String path, long idMission,
+			Context context) throws GeoJsonExportException {
+		return GeoJsonExport.exportMission(path, idMission, context);
+	}
+
+	/**
+	 * Export the geometries of the mission in shapefiles, one by type of
+	 * geometry. The name of a shapefile is <the name of the mission><the
+	 * type>.shp, with its .shx, .dbf, .prj and .cpg files
+	 * 
+	 * @return the paths to the saved files, a type without geometry has no
+	 *         file
+	 * @throws ShpExportException
+	 */
+	public static List<String> exportShp(String path, long idMission,
+			Context context) throws ShpExportException {
+		return ShpExport.exportMission(path, idMission, context);
+	}
 }
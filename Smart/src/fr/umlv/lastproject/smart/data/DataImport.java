@@ -2,6 +2,7 @@ package fr.umlv.lastproject.smart.data;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 
 import org.osmdroid.tileprovider.MapTileProviderBasic;
@@ -12,6 +13,8 @@ import org.xmlpull.v1.XmlPullParserException;
 import android.content.Context;
 import fr.umlv.lastproject.smart.layers.GeometryLayer;
 import fr.umlv.lastproject.smart.layers.GeometryType;
+import fr.umlv.lastproject.smart.projection.CoordinateSystems;
+import fr.umlv.lastproject.smart.projection.CoordinateTransform;
 import fr.umlv.lastproject.smart.utils.SmartException;
 import fr.umlv.lastproject.smart.utils.ZIPUtils;
 
@@ -91,6 +94,8 @@ public final class DataImport {
 	}
 
 	/**
+	 * Import a shapefile, reprojected with its .prj file. The layer is read
+	 * from the {@link LayerCache} if the file was already imported
 	 * 
 	 * @param context
 	 * @param filename
@@ -101,11 +106,64 @@ public final class DataImport {
 		if (context == null || filename == null) {
 			throw new IllegalArgumentException();
 		}
-		return ShpImport.getLayerFromShp(filename, context);
+		// the layer depends on the .prj file too
+		final File prj = ShpImport.getPrjFile(filename);
+		final String variant = prj.exists() ? "prj:" + prj.length() + ":"
+				+ prj.lastModified() : "";
+		final List<GeometryLayer> cached = LayerCache.load(context, filename,
+				variant);
+		if (cached != null && cached.size() == 1) {
+			return cached.get(0);
+		}
+		final GeometryLayer layer = ShpImport.getLayerFromShp(filename, context);
+		if (layer != null) {
+			LayerCache.store(filename, variant,
+					Collections.singletonList(layer));
+		}
+		return layer;
 	}
 
 	/**
+	 * Import a shapefile whose coordinates are in the coordinate system of an
+	 * EPSG code, whatever its .prj file
 	 * 
+	 * @param context
+	 * @param filename
+	 * @param epsg
+	 *            code of the coordinate system, as 2154 for Lambert 93
+	 * @return
+	 * @throws SmartException
+	 *             if the shapefile can't be imported or the coordinate system
+	 *             is not supported
+	 */
+	public static GeometryLayer importShapeFile(Context context,
+			String filename, int epsg) throws SmartException {
+		if (context == null || filename == null) {
+			throw new IllegalArgumentException();
+		}
+		final CoordinateTransform transform = CoordinateSystems.fromEpsg(epsg);
+		if (transform == null) {
+			throw new SmartException("Coordinate system not supported : EPSG:"
+					+ epsg);
+		}
+		final String variant = "EPSG:" + epsg;
+		final List<GeometryLayer> cached = LayerCache.load(context, filename,
+				variant);
+		if (cached != null && cached.size() == 1) {
+			return cached.get(0);
+		}
+		final GeometryLayer layer = ShpImport.getLayerFromShp(filename,
+				context, transform);
+		if (layer != null) {
+			LayerCache.store(filename, variant,
+					Collections.singletonList(layer));
+		}
+		return layer;
+	}
+
+	/**
+	 * Import a kml file, the layers are read from the {@link LayerCache} if
+	 * the file was already imported
 	 * 
 	 * @param context
 	 * @param filename
@@ -115,7 +173,78 @@ public final class DataImport {
 	 */
 	public static List<GeometryLayer> importKml(Context context, String filename)
 			throws XmlPullParserException, IOException {
-		return KmlImport.getLayersFromKML(filename, context);
+		List<GeometryLayer> layers = LayerCache.load(context, filename);
+		if (layers == null) {
+			layers = KmlImport.getLayersFromKML(filename, context);
+			LayerCache.store(filename, layers);
+		}
+		return layers;
+	}
+
+	/**
+	 * Import a kmz archive, the kml document is read without extracting the
+	 * archive. The layers are read from the {@link LayerCache} if the archive
+	 * was already imported
+	 * 
+	 * @param context
+	 * @param filename
+	 * @return
+	 * @throws XmlPullParserException
+	 * @throws IOException
+	 */
+	public static List<GeometryLayer> importKmz(Context context, String filename)
+			throws XmlPullParserException, IOException {
+		List<GeometryLayer> layers = LayerCache.load(context, filename);
+		if (layers == null) {
+			layers = KmlImport.getLayersFromKMZ(filename, context);
+			LayerCache.store(filename, layers);
+		}
+		return layers;
+	}
+
+	/**
+	 * Import a GeoJson file, the layers are read from the {@link LayerCache}
+	 * if the file was already imported
+	 * 
+	 * @param context
+	 * @param filename
+	 * @return
+	 * @throws IOException
+	 */
+	public static List<GeometryLayer> importGeoJson(Context context,
+			String filename) throws IOException {
+		if (context == null || filename == null) {
+			throw new IllegalArgumentException();
+		}
+		List<GeometryLayer> layers = LayerCache.load(context, filename);
+		if (layers == null) {
+			layers = GeoJsonImport.getLayersFromGeoJson(filename, context);
+			LayerCache.store(filename, layers);
+		}
+		return layers;
+	}
+
+	/**
+	 * Import the tracks and the waypoints of a Gpx file, the layers are read
+	 * from the {@link LayerCache} if the file was already imported
+	 * 
+	 * @param context
+	 * @param filename
+	 * @return
+	 * @throws XmlPullParserException
+	 * @throws IOException
+	 */
+	public static List<GeometryLayer> importGpx(Context context, String filename)
+			throws XmlPullParserException, IOException {
+		if (context == null || filename == null) {
+			throw new IllegalArgumentException();
+		}
+		List<GeometryLayer> layers = LayerCache.load(context, filename);
+		if (layers == null) {
+			layers = GpxImport.getLayersFromGpx(filename, context);
+			LayerCache.store(filename, layers);
+		}
+		return layers;
 	}
 
 	/**
@@ -0,0 +1,79 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of the export of one mission in one format of an {@link ExportJob}
+ * 
+ */
+public class ExportEvent extends JobEvent<ExportJob> {
+
+	private final long idMission;
+	private final ExportFormat format;
+	private final List<String> files;
+	private final String error;
+
+	/**
+	 * Event of a successful export
+	 * 
+	 * @param job
+	 * @param idMission
+	 *            of the exported mission
+	 * @param format
+	 * @param files
+	 *            written by the export
+	 */
+	public ExportEvent(ExportJob job, long idMission, ExportFormat format,
+			List<String> files) {
+		super(job);
+		this.idMission = idMission;
+		this.format = format;
+		this.files = files;
+		this.error = null;
+	}
+
+	/**
+	 * Event of a failed export
+	 * 
+	 * @param job
+	 * @param idMission
+	 *            of the mission
+	 * @param format
+	 * @param error
+	 *            message to display
+	 */
+	public ExportEvent(ExportJob job, long idMission, ExportFormat format,
+			String error) {
+		super(job);
+		this.idMission = idMission;
+		this.format = format;
+		this.files = Collections.emptyList();
+		this.error = error;
+	}
+
+	public long getIdMission() {
+		return idMission;
+	}
+
+	public ExportFormat getFormat() {
+		return format;
+	}
+
+	public List<String> getFiles() {
+		return files;
+	}
+
+	/**
+	 * 
+	 * @return the error message, null if the export succeed
+	 */
+	public String getError() {
+		return error;
+	}
+
+	@Override
+	public boolean isFailed() {
+		return error != null;
+	}
+}
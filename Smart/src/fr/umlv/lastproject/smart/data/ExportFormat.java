@@ -0,0 +1,9 @@
+package fr.umlv.lastproject.smart.data;
+
+/**
+ * Formats of the export of a mission
+ * 
+ */
+public enum ExportFormat {
+	CSV, KML, GEOJSON, SHP
+}
@@ -0,0 +1,84 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Missions exported in parallel by the {@link ExportJobService}, each mission
+ * in each format of the job
+ * 
+ */
+public final class ExportJob extends BackgroundJob<ExportEvent> {
+
+	private final String path;
+	private final List<Long> missions;
+	private final List<ExportFormat> formats;
+	private final boolean email;
+	private final List<String> files = new ArrayList<String>();
+
+	ExportJob(String path, List<Long> missions, List<ExportFormat> formats,
+			boolean email) {
+		this.path = path;
+		this.missions = Collections.unmodifiableList(new ArrayList<Long>(
+				missions));
+		this.formats = Collections
+				.unmodifiableList(new ArrayList<ExportFormat>(formats));
+		this.email = email;
+	}
+
+	/**
+	 * 
+	 * @return the ids of the exported missions
+	 */
+	public List<Long> getMissions() {
+		return missions;
+	}
+
+	public List<ExportFormat> getFormats() {
+		return formats;
+	}
+
+	/**
+	 * 
+	 * @return true if the files are to be sent by email once the job is
+	 *         finished
+	 */
+	public boolean isEmail() {
+		return email;
+	}
+
+	/**
+	 * 
+	 * @return the number of exports of the job : the missions by the formats
+	 */
+	@Override
+	public int getTotal() {
+		return missions.size() * formats.size();
+	}
+
+	/**
+	 * 
+	 * @return the files written so far by the job
+	 */
+	public List<String> getFiles() {
+		return files;
+	}
+
+	/**
+	 * 
+	 * @return true if the job exports one of the missions in one of the
+	 *         formats in the same folder, so writes the same files
+	 */
+	boolean overlaps(String path, List<Long> missions,
+			List<ExportFormat> formats) {
+		return this.path.equals(path)
+				&& !Collections.disjoint(this.missions, missions)
+				&& !Collections.disjoint(this.formats, formats);
+	}
+
+	@Override
+	void addResult(ExportEvent event) {
+		files.addAll(event.getFiles());
+	}
+}
@@ -0,0 +1,194 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import android.content.Context;
+import fr.umlv.lastproject.smart.utils.SmartLogger;
+
+/**
+ * Export the missions on a bounded pool of threads. Each mission of a job is
+ * exported in each format as a separate task, and each result is published
+ * to the {@link ExportListener} as soon as the files are written.
+ *
+ * The exports only read the database : they share the connection of the
+ * application (see {@link fr.umlv.lastproject.smart.database.DbConnection}),
+ * whose write-ahead log lets them read in parallel while a survey is saved.
+ * A cancelled export is interrupted and deletes the files it has written.
+ *
+ */
+public final class ExportJobService extends
+		JobService<ExportJob, ExportEvent, ExportListener> {
+
+	private static final Logger LOGGER = SmartLogger.getLocator().getLogger();
+
+	private static ExportJobService service;
+
+	private ExportJobService() {
+		super("Export");
+	}
+
+	/**
+	 *
+	 * @return the unique instance of the service
+	 */
+	public static synchronized ExportJobService getInstance() {
+		if (service == null) {
+			service = new ExportJobService();
+		}
+		return service;
+	}
+
+	/**
+	 * Export missions in one format
+	 *
+	 * @param context
+	 * @param path
+	 *            of the folder of the files
+	 * @param missions
+	 *            ids of the missions to export
+	 * @param format
+	 * @param email
+	 *            true if the files are to be sent by email
+	 * @return the job, to follow or cancel it, or null if one of the exports
+	 *         is run by another job
+	 */
+	public ExportJob export(Context context, String path, List<Long> missions,
+			ExportFormat format, boolean email) {
+		return export(context, path, missions, Collections.singletonList(format),
+				email);
+	}
+
+	/**
+	 * Export missions in several formats. The job is rejected if another one
+	 * exports one of the missions in one of the formats in the same folder,
+	 * until its exports have stopped : both would write the same files.
+	 *
+	 * @param context
+	 * @param path
+	 *            of the folder of the files
+	 * @param missions
+	 *            ids of the missions to export
+	 * @param formats
+	 * @param email
+	 *            true if the files are to be sent by email
+	 * @return the job, to follow or cancel it, or null if one of the exports
+	 *         is run by another job
+	 */
+	public ExportJob export(Context context, final String path,
+			List<Long> missions, List<ExportFormat> formats, boolean email) {
+		if (context == null || missions == null || missions.isEmpty()
+				|| formats == null || formats.isEmpty()) {
+			throw new IllegalArgumentException();
+		}
+		for (ExportJob running : getJobs()) {
+			if (running.overlaps(path, missions, formats)) {
+				LOGGER.log(Level.WARNING,
+						"Export job rejected : the missions are already exported");
+				return null;
+			}
+		}
+		final Context appContext = context.getApplicationContext();
+		final ExportJob job = new ExportJob(path, missions, formats, email);
+		start(job);
+
+		for (final Long idMission : job.getMissions()) {
+			for (final ExportFormat format : job.getFormats()) {
+				execute(job, new Task<ExportEvent>() {
+
+					@Override
+					public ExportEvent call() {
+						return exportMission(job, path, idMission, format,
+								appContext);
+					}
+				});
+			}
+		}
+		LOGGER.log(Level.INFO, "Export job submitted : " + missions.size()
+				+ " mission(s) in " + formats.size() + " format(s)");
+		return job;
+	}
+
+	private static ExportEvent exportMission(ExportJob job, String path,
+			long idMission, ExportFormat format, Context context) {
+		try {
+			switch (format) {
+			case CSV:
+				return new ExportEvent(job, idMission, format,
+						DataExport.exportCsv(path, idMission, context));
+
+			case KML:
+				return new ExportEvent(job, idMission, format,
+						Collections.singletonList(DataExport.exportKml(path,
+								idMission, context)));
+
+			case GEOJSON:
+				return new ExportEvent(job, idMission, format,
+						Collections.singletonList(DataExport.exportGeoJson(
+								path, idMission, context)));
+
+			case SHP:
+				return new ExportEvent(job, idMission, format,
+						DataExport.exportShp(path, idMission, context));
+
+			default:
+				throw new IllegalStateException("Unknown export format "
+						+ format);
+			}
+		} catch (CsvExportException e) {
+			return failed(job, idMission, format, e);
+		} catch (KmlExportException e) {
+			return failed(job, idMission, format, e);
+		} catch (GeoJsonExportException e) {
+			return failed(job, idMission, format, e);
+		} catch (ShpExportException e) {
+			return failed(job, idMission, format, e);
+		} catch (RuntimeException e) {
+			return failed(job, idMission, format, e);
+		}
+	}
+
+	private static ExportEvent failed(ExportJob job, long idMission,
+			ExportFormat format, Exception e) {
+		LOGGER.log(Level.SEVERE, "Mission " + idMission + " not exported in "
+				+ format + " : " + e.getMessage());
+		return new ExportEvent(job, idMission, format, e.getMessage());
+	}
+
+	@Override
+	void dispatch(ExportListener l, ExportEvent event) {
+		if (event.isFailed()) {
+			l.exportFailed(event);
+		} else {
+			l.missionExported(event);
+		}
+		if (event.getDone() == event.getTotal()) {
+			l.jobFinished(event.getJob());
+		}
+	}
+
+	/**
+	 * Register the listener of the exports, the results published while no
+	 * listener was registered are delivered immediately. Must be called on the
+	 * UI thread.
+	 *
+	 * @param l
+	 *            the listener
+	 */
+	public void setExportListener(ExportListener l) {
+		setListener(l);
+	}
+
+	/**
+	 * Unregister the listener if it is the registered one. Must be called on
+	 * the UI thread.
+	 *
+	 * @param l
+	 *            the listener
+	 */
+	public void removeExportListener(ExportListener l) {
+		removeListener(l);
+	}
+}
@@ -0,0 +1,33 @@
+package fr.umlv.lastproject.smart.data;
+
+/**
+ * Listener of the exports run by the {@link ExportJobService}. All the methods
+ * are called on the UI thread.
+ * 
+ */
+public interface ExportListener {
+
+	/**
+	 * A mission of a job has been exported in a format
+	 * 
+	 * @param event
+	 *            contains the written files
+	 */
+	void missionExported(ExportEvent event);
+
+	/**
+	 * A mission of a job can't be exported in a format
+	 * 
+	 * @param event
+	 *            contains the error message
+	 */
+	void exportFailed(ExportEvent event);
+
+	/**
+	 * All the exports of the job have been handled
+	 * 
+	 * @param job
+	 *            the finished job
+	 */
+	void jobFinished(ExportJob job);
+}
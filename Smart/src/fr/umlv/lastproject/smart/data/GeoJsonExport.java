@@ -0,0 +1,297 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import android.content.Context;
+import fr.umlv.lastproject.smart.R;
+import fr.umlv.lastproject.smart.browser.utils.FileUtils;
+import fr.umlv.lastproject.smart.database.BooleanFieldRecord;
+import fr.umlv.lastproject.smart.database.DbManager;
+import fr.umlv.lastproject.smart.database.FieldRecord;
+import fr.umlv.lastproject.smart.database.FormRecord;
+import fr.umlv.lastproject.smart.database.FormRecordSet;
+import fr.umlv.lastproject.smart.database.GeometryIterator;
+import fr.umlv.lastproject.smart.database.GeometryRow;
+import fr.umlv.lastproject.smart.database.HeightFieldRecord;
+import fr.umlv.lastproject.smart.database.ListFieldRecord;
+import fr.umlv.lastproject.smart.database.MissionRecord;
+import fr.umlv.lastproject.smart.database.NumericFieldRecord;
+import fr.umlv.lastproject.smart.database.PictureFieldRecord;
+import fr.umlv.lastproject.smart.database.TextFieldRecord;
+import fr.umlv.lastproject.smart.layers.PackedCoordinates;
+import fr.umlv.lastproject.smart.utils.SmartException;
+import fr.umlv.lastproject.smart.utils.SmartLogger;
+
+/**
+ * Utils for export in GeoJson. The FeatureCollection is written feature by
+ * feature in a buffered stream, the fields of the form are the properties of
+ * the features.
+ *
+ */
+public final class GeoJsonExport {
+
+	private static final Logger LOGGER = SmartLogger.getLocator().getLogger();
+	private static final String UNABLE_TO_EXPORT = "Unable to export the mission";
+	private static final String CANCELLED = "The export has been cancelled";
+	private static final String CHARSET = "UTF-8";
+	private static final int BUFFER_SIZE = 8192;
+
+	private GeoJsonExport() {
+	}
+
+	/**
+	 * Export the given mission in a GeoJson file. The name of the file is <the
+	 * name of the mission>.geojson
+	 *
+	 * @param path
+	 *            of the folder
+	 * @param idMission
+	 * @param context
+	 * @return the path to the saved file
+	 * @throws GeoJsonExportException
+	 */
+	public static String exportMission(String path, long idMission,
+			Context context) throws GeoJsonExportException {
+		DbManager dbm = new DbManager();
+		try {
+			dbm.open(context);
+		} catch (SmartException e) {
+			LOGGER.log(Level.SEVERE, UNABLE_TO_EXPORT);
+			throw new GeoJsonExportException(UNABLE_TO_EXPORT, e);
+		}
+
+		try {
+			MissionRecord mission = dbm.getMission(idMission);
+			FormRecordSet formRecords = dbm.getFormRecordsFromMission(
+					mission.getId(), mission.getForm().getTitle());
+			// the geometries are streamed from the database to the file
+			GeometryIterator geometries = dbm
+					.iterateGeometriesFromMission(mission.getId());
+			if (!geometries.hasNext()) {
+				LOGGER.log(Level.SEVERE,
+						"Try to export mission without geometry");
+				throw new GeoJsonExportException(
+						context.getString(R.string.noGeometryInMission));
+			}
+
+			String fileName = path + mission.getTitle()
+					+ FileUtils.GEOJSON_TYPE[0];
+			Writer out = null;
+			boolean written = false;
+			try {
+				out = new BufferedWriter(new OutputStreamWriter(
+						new FileOutputStream(fileName), CHARSET), BUFFER_SIZE);
+				out.write("{\"type\":\"FeatureCollection\",\"features\":[");
+				boolean first = true;
+				while (geometries.hasNext()) {
+					if (DataExport.isCancelled()) {
+						throw new GeoJsonExportException(CANCELLED);
+					}
+					GeometryRow geometry = geometries.next();
+					if (!first) {
+						out.write(',');
+					}
+					first = false;
+					writeFeature(out, geometry,
+							formRecords.get(geometry.getIdFormRecord()));
+				}
+				out.write("]}");
+				written = true;
+			} finally {
+				geometries.close();
+				if (out != null) {
+					out.close();
+					// A failed or cancelled export leaves no partial file
+					if (!written) {
+						new File(fileName).delete();
+					}
+				}
+			}
+
+			LOGGER.log(Level.INFO,
+					"Export mission to GeoJson :" + mission.getTitle());
+			return fileName;
+
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, UNABLE_TO_EXPORT);
+			throw new GeoJsonExportException(UNABLE_TO_EXPORT, e);
+		} finally {
+			dbm.close();
+		}
+	}
+
+	private static void writeFeature(Writer out, GeometryRow geometry,
+			FormRecord formRecord) throws IOException {
+		out.write("\n{\"type\":\"Feature\",\"id\":");
+		out.write(Long.toString(geometry.getId()));
+		out.write(",\"geometry\":");
+		writeGeometry(out, geometry);
+		out.write(",\"properties\":{");
+		// A geometry without form record has no property
+		if (formRecord != null) {
+			boolean first = true;
+			for (FieldRecord field : formRecord.getFields()) {
+				if (!first) {
+					out.write(',');
+				}
+				first = false;
+				writeString(out, field.getField().getLabel());
+				out.write(':');
+				writeValue(out, field);
+			}
+		}
+		out.write("}}");
+	}
+
+	private static void writeGeometry(Writer out, GeometryRow geometry)
+			throws IOException {
+		final PackedCoordinates points = geometry.getCoordinates();
+		if (points.size() == 0) {
+			// A geometry without point is an unlocated feature
+			out.write("null");
+			return;
+		}
+		switch (geometry.getType()) {
+		case POINT:
+			out.write("{\"type\":\"Point\",\"coordinates\":");
+			writePosition(out, geometry, 0);
+			break;
+
+		case LINE:
+			out.write("{\"type\":\"LineString\",\"coordinates\":[");
+			writePositions(out, geometry);
+			out.write(']');
+			break;
+
+		case POLYGON:
+			out.write("{\"type\":\"Polygon\",\"coordinates\":[[");
+			writePositions(out, geometry);
+			// A GeoJson ring is closed by its first point
+			int last = points.size() - 1;
+			if (points.getLatitude(0) != points.getLatitude(last)
+					|| points.getLongitude(0) != points.getLongitude(last)) {
+				out.write(',');
+				writePosition(out, geometry, 0);
+			}
+			out.write("]]");
+			break;
+
+		default:
+			throw new IllegalStateException(
+					"The given GeometryType is not supported for the GeoJson export");
+		}
+		out.write('}');
+	}
+
+	private static void writePositions(Writer out, GeometryRow geometry)
+			throws IOException {
+		for (int i = 0; i < geometry.getCoordinates().size(); i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+			writePosition(out, geometry, i);
+		}
+	}
+
+	/**
+	 * Write the [longitude, latitude(, altitude)] array of a point
+	 */
+	private static void writePosition(Writer out, GeometryRow geometry, int i)
+			throws IOException {
+		out.write('[');
+		out.write(Double.toString(geometry.getCoordinates().getLongitude(i)));
+		out.write(',');
+		out.write(Double.toString(geometry.getCoordinates().getLatitude(i)));
+		if (geometry.getAltitude(i) != -1.0) {
+			out.write(',');
+			out.write(Double.toString(geometry.getAltitude(i)));
+		}
+		out.write(']');
+	}
+
+	private static void writeValue(Writer out, FieldRecord field)
+			throws IOException {
+		switch (field.getField().getType()) {
+		case TEXT:
+			writeString(out, ((TextFieldRecord) field).getValue());
+			break;
+
+		case NUMERIC:
+			writeNumber(out, ((NumericFieldRecord) field).getValue());
+			break;
+
+		case BOOLEAN:
+			out.write(((BooleanFieldRecord) field).getValue() ? "true"
+					: "false");
+			break;
+
+		case LIST:
+			writeString(out, ((ListFieldRecord) field).getValue());
+			break;
+
+		case PICTURE:
+			writeString(out, ((PictureFieldRecord) field).getValue());
+			break;
+
+		case HEIGHT:
+			writeNumber(out, ((HeightFieldRecord) field).getValue());
+			break;
+
+		default:
+			throw new IllegalStateException("Unkown field type");
+		}
+	}
+
+	private static void writeNumber(Writer out, double value)
+			throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			out.write("null");
+		} else {
+			out.write(Double.toString(value));
+		}
+	}
+
+	private static void writeString(Writer out, String value)
+			throws IOException {
+		if (value == null) {
+			out.write("null");
+			return;
+		}
+		out.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				if (c < ' ') {
+					out.write(String.format("\\u%04x", (int) c));
+				} else {
+					out.write(c);
+				}
+				break;
+			}
+		}
+		out.write('"');
+	}
+}
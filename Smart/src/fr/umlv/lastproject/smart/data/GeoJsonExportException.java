@@ -0,0 +1,28 @@
+package fr.umlv.lastproject.smart.data;
+
+/**
+ * The exception class for the GeoJson export.
+ * 
+ * @author joan
+ *
+ */
+public class GeoJsonExportException extends Exception {
+
+	private static final long serialVersionUID = -2937040529417342206L;
+
+	public GeoJsonExportException() {
+		super();
+	}
+
+	public GeoJsonExportException(String detailMessage, Throwable throwable) {
+		super(detailMessage, throwable);
+	}
+
+	public GeoJsonExportException(String detailMessage) {
+		super(detailMessage);
+	}
+
+	public GeoJsonExportException(Throwable throwable) {
+		super(throwable);
+	}
+}
@@ -0,0 +1,280 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import android.content.Context;
+import fr.umlv.lastproject.smart.data.JsonTokenizer.Token;
+import fr.umlv.lastproject.smart.layers.Geometry;
+import fr.umlv.lastproject.smart.layers.GeometryLayer;
+import fr.umlv.lastproject.smart.layers.GeometryType;
+import fr.umlv.lastproject.smart.layers.LineGeometry;
+import fr.umlv.lastproject.smart.layers.PackedCoordinates;
+import fr.umlv.lastproject.smart.layers.PointGeometry;
+import fr.umlv.lastproject.smart.layers.PolygonGeometry;
+import fr.umlv.lastproject.smart.utils.SmartLogger;
+
+/**
+ *
+ * @Description : Import a GeoJson file. The document is tokenized while it is
+ *              read and each feature is turned into geometries as soon as it
+ *              is parsed, the properties are skipped.
+ *
+ *              The multi-geometries are split into simple geometries, only the
+ *              outer ring of the polygons is kept.
+ *
+ */
+public final class GeoJsonImport {
+
+	private static final Logger LOGGER = SmartLogger.getLocator().getLogger();
+	private static final String CHARSET = "UTF-8";
+
+	private static final String TYPE = "type";
+	private static final String FEATURES = "features";
+	private static final String GEOMETRY = "geometry";
+	private static final String GEOMETRIES = "geometries";
+	private static final String COORDINATES = "coordinates";
+
+	private static final String POINT = "Point";
+	private static final String MULTI_POINT = "MultiPoint";
+	private static final String LINE_STRING = "LineString";
+	private static final String MULTI_LINE_STRING = "MultiLineString";
+	private static final String POLYGON = "Polygon";
+	private static final String MULTI_POLYGON = "MultiPolygon";
+
+	private final JsonTokenizer tokenizer;
+	private final Map<GeometryType, List<Geometry>> geometries = new HashMap<GeometryType, List<Geometry>>();
+
+	/* coordinates of the geometry being read, reused between geometries */
+	private final PackedCoordinates coordinates = new PackedCoordinates();
+	/* end of each array of positions in the coordinates */
+	private final List<Integer> lineEnds = new ArrayList<Integer>();
+	/* end of each array of rings in lineEnds */
+	private final List<Integer> groupEnds = new ArrayList<Integer>();
+
+	private GeoJsonImport(JsonTokenizer tokenizer) {
+		this.tokenizer = tokenizer;
+	}
+
+	/**
+	 * Return a list of GeometryLayer with all the geometry type in the
+	 * GeoJson file
+	 *
+	 * @param path
+	 * @param context
+	 * @return
+	 * @throws IOException
+	 *             if the file can't be read or is not a valid GeoJson document
+	 */
+	public static List<GeometryLayer> getLayersFromGeoJson(String path,
+			Context context) throws IOException {
+		final InputStreamReader reader = new InputStreamReader(
+				new BufferedInputStream(new FileInputStream(path)), CHARSET);
+		final GeoJsonImport geoJson = new GeoJsonImport(new JsonTokenizer(
+				reader));
+		try {
+			geoJson.readObject();
+		} finally {
+			reader.close();
+		}
+		LOGGER.log(Level.INFO, "GeoJson read : " + path);
+		return KmlImport.createLayers(geoJson.geometries, path, context);
+	}
+
+	/**
+	 * Read a FeatureCollection, a Feature or a geometry object
+	 */
+	private void readObject() throws IOException {
+		String type = null;
+		tokenizer.beginObject();
+		while (tokenizer.hasNext()) {
+			final String name = tokenizer.nextName();
+			if (TYPE.equals(name) && tokenizer.peek() == Token.STRING) {
+				type = tokenizer.nextString();
+			} else if (FEATURES.equals(name)
+					&& tokenizer.peek() == Token.BEGIN_ARRAY) {
+				tokenizer.beginArray();
+				while (tokenizer.hasNext()) {
+					readFeature();
+				}
+				tokenizer.endArray();
+			} else if (GEOMETRY.equals(name)
+					&& tokenizer.peek() == Token.BEGIN_OBJECT) {
+				readGeometry();
+			} else if (GEOMETRIES.equals(name)
+					|| COORDINATES.equals(name)) {
+				// the document is a single geometry
+				readGeometryMember(name);
+			} else {
+				tokenizer.skipValue();
+			}
+		}
+		tokenizer.endObject();
+		addGeometries(type);
+	}
+
+	private void readFeature() throws IOException {
+		if (tokenizer.peek() != Token.BEGIN_OBJECT) {
+			tokenizer.skipValue();
+			return;
+		}
+		tokenizer.beginObject();
+		while (tokenizer.hasNext()) {
+			final String name = tokenizer.nextName();
+			if (GEOMETRY.equals(name) && tokenizer.peek() == Token.BEGIN_OBJECT) {
+				readGeometry();
+			} else {
+				// properties, id, and null geometries
+				tokenizer.skipValue();
+			}
+		}
+		tokenizer.endObject();
+	}
+
+	private void readGeometry() throws IOException {
+		String type = null;
+		tokenizer.beginObject();
+		while (tokenizer.hasNext()) {
+			final String name = tokenizer.nextName();
+			if (TYPE.equals(name) && tokenizer.peek() == Token.STRING) {
+				type = tokenizer.nextString();
+			} else {
+				readGeometryMember(name);
+			}
+		}
+		tokenizer.endObject();
+		addGeometries(type);
+	}
+
+	private void readGeometryMember(String name) throws IOException {
+		if (COORDINATES.equals(name) && tokenizer.peek() == Token.BEGIN_ARRAY) {
+			coordinates.clear();
+			lineEnds.clear();
+			groupEnds.clear();
+			readCoordinates();
+		} else if (GEOMETRIES.equals(name)
+				&& tokenizer.peek() == Token.BEGIN_ARRAY) {
+			// GeometryCollection
+			tokenizer.beginArray();
+			while (tokenizer.hasNext()) {
+				if (tokenizer.peek() == Token.BEGIN_OBJECT) {
+					readGeometry();
+				} else {
+					tokenizer.skipValue();
+				}
+			}
+			tokenizer.endArray();
+		} else {
+			tokenizer.skipValue();
+		}
+	}
+
+	/**
+	 * Read nested arrays of coordinates
+	 *
+	 * @return the depth of the array : 0 for a position, 1 for an array of
+	 *         positions...
+	 */
+	private int readCoordinates() throws IOException {
+		tokenizer.beginArray();
+		if (tokenizer.peek() == Token.NUMBER) {
+			final double longitude = tokenizer.nextDouble();
+			final double latitude = tokenizer.nextDouble();
+			while (tokenizer.hasNext()) {
+				// altitude
+				tokenizer.skipValue();
+			}
+			tokenizer.endArray();
+			coordinates.add(latitude, longitude);
+			return 0;
+		}
+
+		int depth = 0;
+		while (tokenizer.hasNext()) {
+			depth = readCoordinates();
+		}
+		tokenizer.endArray();
+		depth++;
+		if (depth == 1) {
+			lineEnds.add(coordinates.size());
+		} else if (depth == 2) {
+			groupEnds.add(lineEnds.size());
+		}
+		return depth;
+	}
+
+	/**
+	 * Create the geometries of the coordinates read
+	 */
+	private void addGeometries(String type) {
+		if (type == null || coordinates.size() == 0) {
+			return;
+		}
+		if (POINT.equals(type) || MULTI_POINT.equals(type)) {
+			for (int i = 0; i < coordinates.size(); i++) {
+				add(GeometryType.POINT,
+						new PointGeometry(coordinates.getLatitude(i),
+								coordinates.getLongitude(i)));
+			}
+		} else if (LINE_STRING.equals(type) || MULTI_LINE_STRING.equals(type)) {
+			for (int i = 0; i < lineEnds.size(); i++) {
+				addLine(i);
+			}
+		} else if (POLYGON.equals(type)) {
+			addPolygon(0);
+		} else if (MULTI_POLYGON.equals(type)) {
+			int first = 0;
+			for (Integer end : groupEnds) {
+				if (first < end) {
+					addPolygon(first);
+				}
+				first = end;
+			}
+		} else {
+			LOGGER.log(Level.WARNING, "GeoJson geometry not supported : "
+					+ type);
+		}
+		coordinates.clear();
+	}
+
+	private void addLine(int line) {
+		final int from = line == 0 ? 0 : lineEnds.get(line - 1);
+		final int to = lineEnds.get(line);
+		if (to > from) {
+			add(GeometryType.LINE,
+					new LineGeometry(coordinates.toPoints(from, to)));
+		}
+	}
+
+	/**
+	 * Add the polygon of the outer ring
+	 */
+	private void addPolygon(int ring) {
+		if (ring >= lineEnds.size()) {
+			return;
+		}
+		final int from = ring == 0 ? 0 : lineEnds.get(ring - 1);
+		final int to = lineEnds.get(ring);
+		if (to > from) {
+			add(GeometryType.POLYGON,
+					new PolygonGeometry(coordinates.toPoints(from, to)));
+		}
+	}
+
+	private void add(GeometryType type, Geometry geometry) {
+		List<Geometry> list = geometries.get(type);
+		if (list == null) {
+			list = new ArrayList<Geometry>();
+			geometries.put(type, list);
+		}
+		list.add(geometry);
+	}
+}
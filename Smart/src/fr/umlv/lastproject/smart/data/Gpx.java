@@ -0,0 +1,325 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import fr.umlv.lastproject.smart.layers.PackedCoordinates;
+
+/**
+ *
+ * @Description : This gpx class parse a .gpx file, as written by
+ *              {@link fr.umlv.lastproject.smart.GpxWriter}, and returns the
+ *              track segments, the routes and the waypoints. The points are
+ *              stored in {@link PackedCoordinates} with their timestamps, so
+ *              a long track is read without an object per point.
+ *
+ */
+public class Gpx {
+
+	public static final String TRKTAG = "trk";
+	public static final String TRKSEGTAG = "trkseg";
+	public static final String TRKPTTAG = "trkpt";
+	public static final String RTETAG = "rte";
+	public static final String RTEPTTAG = "rtept";
+	public static final String WPTTAG = "wpt";
+	public static final String NAMETAG = "name";
+	public static final String TIMETAG = "time";
+	public static final String LATATTRIBUTE = "lat";
+	public static final String LONATTRIBUTE = "lon";
+
+	/**
+	 * Timestamp of a point without time
+	 */
+	public static final long NO_TIME = -1;
+
+	private final File file;
+	private final List<Segment> segments = new ArrayList<Segment>();
+	private final Segment waypoints = new Segment(null);
+
+	/**
+	 * Points of a track segment, a route or the waypoints, with their
+	 * timestamps in milliseconds
+	 */
+	public static final class Segment {
+
+		private final String name;
+		private final PackedCoordinates coordinates = new PackedCoordinates();
+		private long[] times = new long[16];
+
+		Segment(String name) {
+			this.name = name;
+		}
+
+		void add(double latitude, double longitude, long time) {
+			final int index = coordinates.size();
+			if (index == times.length) {
+				final long[] grown = new long[times.length * 2];
+				System.arraycopy(times, 0, grown, 0, times.length);
+				times = grown;
+			}
+			times[index] = time;
+			coordinates.add(latitude, longitude);
+		}
+
+		void setTime(int index, long time) {
+			times[index] = time;
+		}
+
+		/**
+		 *
+		 * @return the name of the track or the route
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 *
+		 * @return the points
+		 */
+		public PackedCoordinates getCoordinates() {
+			return coordinates;
+		}
+
+		/**
+		 *
+		 * @param index
+		 *            of the point
+		 * @return the time of the point in milliseconds since the epoch, or
+		 *         {@link Gpx#NO_TIME}
+		 */
+		public long getTime(int index) {
+			if (index < 0 || index >= coordinates.size()) {
+				throw new IndexOutOfBoundsException();
+			}
+			return times[index];
+		}
+
+		/**
+		 *
+		 * @return the number of points
+		 */
+		public int size() {
+			return coordinates.size();
+		}
+	}
+
+	public Gpx(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Read the Gpx file given in the constructor.
+	 *
+	 * @throws XmlPullParserException
+	 * @throws IOException
+	 */
+	public void readGpx() throws XmlPullParserException, IOException {
+		InputStream stream = new BufferedInputStream(new FileInputStream(file));
+		try {
+			readGpx(stream);
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Read a Gpx document from the given stream. The stream is not closed.
+	 *
+	 * @param stream
+	 *            the stream of the gpx document
+	 * @throws XmlPullParserException
+	 * @throws IOException
+	 */
+	public void readGpx(InputStream stream) throws XmlPullParserException,
+			IOException {
+		XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		XmlPullParser xpp = factory.newPullParser();
+		xpp.setInput(stream, "UTF-8");
+
+		String trackName = null;
+		Segment segment = null;
+		Segment pointSegment = null;
+		boolean time = false;
+		boolean name = false;
+
+		int eventType = xpp.getEventType();
+		while (eventType != XmlPullParser.END_DOCUMENT) {
+			if (eventType == XmlPullParser.START_TAG) {
+				final String tag = xpp.getName();
+				if (TRKTAG.equals(tag)) {
+					trackName = null;
+				} else if (TRKSEGTAG.equals(tag)) {
+					segment = new Segment(trackName);
+				} else if (RTETAG.equals(tag)) {
+					trackName = null;
+					segment = new Segment(null);
+				} else if (TRKPTTAG.equals(tag) || RTEPTTAG.equals(tag)
+						|| WPTTAG.equals(tag)) {
+					pointSegment = WPTTAG.equals(tag) ? waypoints : segment;
+					if (pointSegment != null) {
+						pointSegment.add(parseCoordinate(xpp, LATATTRIBUTE),
+								parseCoordinate(xpp, LONATTRIBUTE), NO_TIME);
+					}
+				} else if (TIMETAG.equals(tag)) {
+					time = pointSegment != null;
+				} else if (NAMETAG.equals(tag)) {
+					name = pointSegment == null && segment == null;
+				}
+
+			} else if (eventType == XmlPullParser.TEXT) {
+				if (time) {
+					pointSegment.setTime(pointSegment.size() - 1,
+							parseTime(xpp.getText().trim()));
+				} else if (name) {
+					trackName = xpp.getText().trim();
+				}
+
+			} else if (eventType == XmlPullParser.END_TAG) {
+				final String tag = xpp.getName();
+				if (TRKSEGTAG.equals(tag) || RTETAG.equals(tag)) {
+					if (segment != null && segment.size() > 0) {
+						segments.add(segment);
+					}
+					segment = null;
+				} else if (TRKPTTAG.equals(tag) || RTEPTTAG.equals(tag)
+						|| WPTTAG.equals(tag)) {
+					pointSegment = null;
+				} else if (TIMETAG.equals(tag)) {
+					time = false;
+				} else if (NAMETAG.equals(tag)) {
+					name = false;
+				}
+			}
+			eventType = xpp.next();
+		}
+	}
+
+	private static double parseCoordinate(XmlPullParser xpp, String attribute)
+			throws XmlPullParserException {
+		final String value = xpp.getAttributeValue(null, attribute);
+		if (value == null) {
+			throw new XmlPullParserException("Missing " + attribute
+					+ " attribute", xpp, null);
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new XmlPullParserException("Invalid " + attribute
+					+ " attribute", xpp, e);
+		}
+	}
+
+	/**
+	 * Parse a xsd:dateTime, as 2012-06-15T10:32:05Z or
+	 * 2012-06-15T12:32:05.250+02:00
+	 *
+	 * @param value
+	 * @return the time in milliseconds since the epoch, or {@link #NO_TIME}
+	 *         if the value is not valid
+	 */
+	static long parseTime(String value) {
+		final int length = value.length();
+		if (length < 19 || value.charAt(4) != '-' || value.charAt(7) != '-'
+				|| value.charAt(10) != 'T' || value.charAt(13) != ':'
+				|| value.charAt(16) != ':') {
+			return NO_TIME;
+		}
+		final int year = parseInt(value, 0, 4);
+		final int month = parseInt(value, 5, 7);
+		final int day = parseInt(value, 8, 10);
+		final int hour = parseInt(value, 11, 13);
+		final int minute = parseInt(value, 14, 16);
+		final int second = parseInt(value, 17, 19);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || hour < 0
+				|| minute < 0 || second < 0) {
+			return NO_TIME;
+		}
+
+		int i = 19;
+		int millis = 0;
+		if (i < length && value.charAt(i) == '.') {
+			int scale = 100;
+			i++;
+			while (i < length && Character.isDigit(value.charAt(i))) {
+				millis += (value.charAt(i) - '0') * scale;
+				scale /= 10;
+				i++;
+			}
+		}
+
+		int offset = 0;
+		if (i < length && value.charAt(i) != 'Z') {
+			if (length < i + 6) {
+				return NO_TIME;
+			}
+			final int sign = value.charAt(i) == '-' ? -1 : 1;
+			final int offsetHours = parseInt(value, i + 1, i + 3);
+			final int offsetMinutes = parseInt(value, i + 4, i + 6);
+			if (offsetHours < 0 || offsetMinutes < 0) {
+				return NO_TIME;
+			}
+			offset = sign * (offsetHours * 60 + offsetMinutes);
+		}
+
+		final long days = daysFromEpoch(year, month, day);
+		return (((days * 24 + hour) * 60 + minute - offset) * 60 + second)
+				* 1000 + millis;
+	}
+
+	private static int parseInt(String value, int from, int to) {
+		int result = 0;
+		for (int i = from; i < to; i++) {
+			final char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			result = result * 10 + c - '0';
+		}
+		return result;
+	}
+
+	/**
+	 * Number of days between 1970-01-01 and the given date of the gregorian
+	 * calendar
+	 */
+	private static long daysFromEpoch(int year, int month, int day) {
+		final int y = month <= 2 ? year - 1 : year;
+		final int era = y / 400;
+		final int yearOfEra = y - era * 400;
+		final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5
+				+ day - 1;
+		final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra
+				/ 100 + dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+
+	/**
+	 * Return the track segments and the routes found with the readGpx()
+	 * method, in document order
+	 *
+	 * @return
+	 */
+	public List<Segment> getSegments() {
+		return segments;
+	}
+
+	/**
+	 * Return the waypoints found with the readGpx() method
+	 *
+	 * @return
+	 */
+	public Segment getWaypoints() {
+		return waypoints;
+	}
+}
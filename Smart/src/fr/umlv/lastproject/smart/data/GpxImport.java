@@ -0,0 +1,98 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.content.Context;
+import fr.umlv.lastproject.smart.layers.Geometry;
+import fr.umlv.lastproject.smart.layers.GeometryLayer;
+import fr.umlv.lastproject.smart.layers.GeometryType;
+import fr.umlv.lastproject.smart.layers.LineGeometry;
+import fr.umlv.lastproject.smart.layers.PackedCoordinates;
+import fr.umlv.lastproject.smart.layers.PointGeometry;
+import fr.umlv.lastproject.smart.utils.SmartLogger;
+
+/**
+ *
+ * @Description : Import a Gpx file, the track segments and the routes are
+ *              imported as lines and the waypoints as points. The layers
+ *              only carry the positions : the timestamps stay in the
+ *              {@link Gpx} read, see {@link Gpx.Segment#getTime(int)}, as
+ *              the geometries of a layer and the layer cache have no time.
+ *
+ */
+public final class GpxImport {
+
+	private static final Logger LOGGER = SmartLogger.getLocator().getLogger();
+
+	private GpxImport() {
+	}
+
+	/**
+	 * Return a list of GeometryLayer with the tracks and the waypoints of the
+	 * gpx
+	 *
+	 * @param path
+	 * @param context
+	 * @return
+	 * @throws XmlPullParserException
+	 * @throws IOException
+	 */
+	public static List<GeometryLayer> getLayersFromGpx(String path,
+			Context context) throws XmlPullParserException, IOException {
+		Gpx gpx = new Gpx(new File(path));
+		gpx.readGpx();
+		return getLayersFromGpx(gpx, path, context);
+	}
+
+	/**
+	 * Return a list of GeometryLayer with the tracks and the waypoints of a
+	 * gpx already read. A {@link LineGeometry} draws a list of
+	 * {@link PointGeometry}, so the points of a segment are only unpacked
+	 * here, once the whole document has been parsed.
+	 *
+	 * @param gpx
+	 * @param path
+	 *            of the gpx file
+	 * @param context
+	 * @return
+	 */
+	public static List<GeometryLayer> getLayersFromGpx(Gpx gpx, String path,
+			Context context) {
+		final Map<GeometryType, List<Geometry>> geometries = new HashMap<GeometryType, List<Geometry>>();
+
+		final List<Geometry> lines = new ArrayList<Geometry>();
+		for (Gpx.Segment segment : gpx.getSegments()) {
+			if (segment.size() > 1) {
+				lines.add(new LineGeometry(segment.getCoordinates()
+						.toPoints()));
+			}
+		}
+		if (!lines.isEmpty()) {
+			geometries.put(GeometryType.LINE, lines);
+		}
+
+		final PackedCoordinates waypoints = gpx.getWaypoints()
+				.getCoordinates();
+		if (waypoints.size() > 0) {
+			final List<Geometry> points = new ArrayList<Geometry>(
+					waypoints.size());
+			for (int i = 0; i < waypoints.size(); i++) {
+				points.add(new PointGeometry(waypoints.getLatitude(i),
+						waypoints.getLongitude(i)));
+			}
+			geometries.put(GeometryType.POINT, points);
+		}
+
+		LOGGER.log(Level.INFO, "Gpx read : " + path);
+		return KmlImport.createLayers(geometries, path, context);
+	}
+}
@@ -0,0 +1,80 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.util.Collections;
+import java.util.List;
+
+import fr.umlv.lastproject.smart.layers.GeometryLayer;
+
+/**
+ * Result of the import of one file of an {@link ImportJob}
+ * 
+ */
+public class ImportEvent extends JobEvent<ImportJob> {
+
+	private final String path;
+	private final List<GeometryLayer> layers;
+	private final TMSOverlay overlay;
+	private final int error;
+
+	/**
+	 * Event of a successful import
+	 * 
+	 * @param job
+	 * @param path
+	 *            of the imported file
+	 * @param layers
+	 *            imported, empty for a tiles import
+	 * @param overlay
+	 *            imported, null for a vector import
+	 */
+	public ImportEvent(ImportJob job, String path, List<GeometryLayer> layers,
+			TMSOverlay overlay) {
+		super(job);
+		this.path = path;
+		this.layers = layers;
+		this.overlay = overlay;
+		this.error = 0;
+	}
+
+	/**
+	 * Event of a failed import
+	 * 
+	 * @param job
+	 * @param path
+	 *            of the file
+	 * @param error
+	 *            id of the message to display
+	 */
+	public ImportEvent(ImportJob job, String path, int error) {
+		super(job);
+		this.path = path;
+		this.layers = Collections.emptyList();
+		this.overlay = null;
+		this.error = error;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public List<GeometryLayer> getLayers() {
+		return layers;
+	}
+
+	public TMSOverlay getOverlay() {
+		return overlay;
+	}
+
+	/**
+	 * 
+	 * @return the id of the error message, 0 if the import succeed
+	 */
+	public int getError() {
+		return error;
+	}
+
+	@Override
+	public boolean isFailed() {
+		return error != 0;
+	}
+}
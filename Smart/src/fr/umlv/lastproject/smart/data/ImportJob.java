@@ -0,0 +1,61 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import fr.umlv.lastproject.smart.layers.GeometryLayer;
+
+/**
+ * A set of files imported in parallel by the {@link ImportJobService}
+ * 
+ */
+public final class ImportJob extends BackgroundJob<ImportEvent> {
+
+	private final List<String> paths;
+	private final boolean tiles;
+	private final List<GeometryLayer> layers = new ArrayList<GeometryLayer>();
+
+	ImportJob(List<String> paths, boolean tiles) {
+		this.paths = Collections.unmodifiableList(new ArrayList<String>(paths));
+		this.tiles = tiles;
+	}
+
+	/**
+	 * 
+	 * @return the files of the job
+	 */
+	public List<String> getPaths() {
+		return paths;
+	}
+
+	/**
+	 * 
+	 * @return true if the job imports GeoTIFF tiles folders
+	 */
+	public boolean isTiles() {
+		return tiles;
+	}
+
+	/**
+	 * 
+	 * @return the number of files of the job
+	 */
+	@Override
+	public int getTotal() {
+		return paths.size();
+	}
+
+	/**
+	 * 
+	 * @return the geometry layers imported so far by the job
+	 */
+	public List<GeometryLayer> getLayers() {
+		return layers;
+	}
+
+	@Override
+	void addResult(ImportEvent event) {
+		layers.addAll(event.getLayers());
+	}
+}
@@ -0,0 +1,216 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.content.Context;
+import fr.umlv.lastproject.smart.R;
+import fr.umlv.lastproject.smart.browser.utils.FileUtils;
+import fr.umlv.lastproject.smart.layers.GeometryLayer;
+import fr.umlv.lastproject.smart.utils.SmartException;
+import fr.umlv.lastproject.smart.utils.SmartLogger;
+
+/**
+ * Import the vector and raster files on a bounded pool of threads. The files
+ * of a job are parsed in parallel and each result is published to the
+ * {@link ImportListener} as soon as the file is imported.
+ *
+ */
+public final class ImportJobService extends
+		JobService<ImportJob, ImportEvent, ImportListener> {
+
+	private static final Logger LOGGER = SmartLogger.getLocator().getLogger();
+
+	private static ImportJobService service;
+
+	private ImportJobService() {
+		super("Import");
+	}
+
+	/**
+	 *
+	 * @return the unique instance of the service
+	 */
+	public static synchronized ImportJobService getInstance() {
+		if (service == null) {
+			service = new ImportJobService();
+		}
+		return service;
+	}
+
+	/**
+	 * Import vector files (kml, kmz, geojson, gpx, shp)
+	 *
+	 * @param context
+	 * @param paths
+	 *            of the files to import
+	 * @return the job, to follow or cancel it
+	 */
+	public ImportJob importVectors(Context context, List<String> paths) {
+		return submit(context, paths, false);
+	}
+
+	/**
+	 * Import GeoTIFF tiles folders
+	 *
+	 * @param context
+	 * @param paths
+	 *            of the folders to import
+	 * @return the job, to follow or cancel it
+	 */
+	public ImportJob importTiles(Context context, List<String> paths) {
+		return submit(context, paths, true);
+	}
+
+	private ImportJob submit(Context context, List<String> paths,
+			final boolean tiles) {
+		if (context == null || paths == null || paths.isEmpty()) {
+			throw new IllegalArgumentException();
+		}
+		// The layers must not keep the activity which may be recreated
+		final Context appContext = context.getApplicationContext();
+		final ImportJob job = new ImportJob(paths, tiles);
+		start(job);
+
+		for (final String path : job.getPaths()) {
+			execute(job, new Task<ImportEvent>() {
+
+				@Override
+				public ImportEvent call() {
+					return importFile(job, path, appContext);
+				}
+			});
+		}
+		LOGGER.log(Level.INFO, "Import job submitted : " + paths.size()
+				+ " file(s)");
+		return job;
+	}
+
+	private static ImportEvent importFile(ImportJob job, String path,
+			Context context) {
+		try {
+			if (job.isTiles()) {
+				TMSOverlay overlay = DataImport.importGeoTIFFFileFolder(path,
+						context);
+				return new ImportEvent(job, path,
+						new ArrayList<GeometryLayer>(), overlay);
+			}
+			return importVector(job, path, context);
+
+		} catch (OutOfMemoryError e) {
+			LOGGER.log(Level.SEVERE, "Not enough memory to import " + path);
+			return new ImportEvent(job, path, R.string.importMemoryError);
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "File can't be imported :" + path);
+			return new ImportEvent(job, path,
+					job.isTiles() ? R.string.geotiffReadError
+							: R.string.kmlReadError);
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.SEVERE, "File can't be imported :" + path);
+			return new ImportEvent(job, path,
+					job.isTiles() ? R.string.geotiffReadError
+							: R.string.kmlParseError);
+		}
+	}
+
+	private static ImportEvent importVector(ImportJob job, String path,
+			Context context) throws IOException {
+		final String extension = FileUtils.getExtension(path);
+		List<GeometryLayer> layers = new ArrayList<GeometryLayer>();
+
+		if (extension.equalsIgnoreCase(".kml")
+				|| extension.equalsIgnoreCase(".kmz")) {
+			try {
+				if (extension.equalsIgnoreCase(".kml")) {
+					layers = DataImport.importKml(context, path);
+				} else {
+					layers = DataImport.importKmz(context, path);
+				}
+			} catch (XmlPullParserException e) {
+				return new ImportEvent(job, path, R.string.kmlParseError);
+			}
+			if (layers == null || layers.isEmpty()) {
+				return new ImportEvent(job, path, R.string.kmlParseError);
+			}
+
+		} else if (extension.equalsIgnoreCase(".geojson")) {
+			try {
+				layers = DataImport.importGeoJson(context, path);
+			} catch (IOException e) {
+				return new ImportEvent(job, path, R.string.geojsonError);
+			}
+			if (layers.isEmpty()) {
+				return new ImportEvent(job, path, R.string.geojsonError);
+			}
+
+		} else if (extension.equalsIgnoreCase(".gpx")) {
+			try {
+				layers = DataImport.importGpx(context, path);
+			} catch (XmlPullParserException e) {
+				return new ImportEvent(job, path, R.string.gpxError);
+			} catch (IOException e) {
+				return new ImportEvent(job, path, R.string.gpxError);
+			}
+			if (layers.isEmpty()) {
+				return new ImportEvent(job, path, R.string.gpxError);
+			}
+
+		} else if (extension.equalsIgnoreCase(".shp")) {
+			try {
+				final GeometryLayer layer = DataImport.importShapeFile(context,
+						path);
+				if (layer == null) {
+					return new ImportEvent(job, path, R.string.errorShp);
+				}
+				layers.add(layer);
+			} catch (SmartException e) {
+				return new ImportEvent(job, path, R.string.errorShp);
+			}
+
+		} else {
+			return new ImportEvent(job, path, R.string.kmlReadError);
+		}
+
+		return new ImportEvent(job, path, layers, null);
+	}
+
+	@Override
+	void dispatch(ImportListener l, ImportEvent event) {
+		if (event.isFailed()) {
+			l.importFailed(event);
+		} else {
+			l.layersImported(event);
+		}
+		if (event.getDone() == event.getTotal()) {
+			l.jobFinished(event.getJob());
+		}
+	}
+
+	/**
+	 * Register the listener of the imports, the results published while no
+	 * listener was registered are delivered immediately. Must be called on the
+	 * UI thread.
+	 *
+	 * @param l
+	 *            the listener
+	 */
+	public void setImportListener(ImportListener l) {
+		setListener(l);
+	}
+
+	/**
+	 * Unregister the listener if it is the registered one. Must be called on
+	 * the UI thread.
+	 *
+	 * @param l
+	 *            the listener
+	 */
+	public void removeImportListener(ImportListener l) {
+		removeListener(l);
+	}
+}
@@ -0,0 +1,33 @@
+package fr.umlv.lastproject.smart.data;
+
+/**
+ * Listener of the imports run by the {@link ImportJobService}. All the methods
+ * are called on the UI thread.
+ * 
+ */
+public interface ImportListener {
+
+	/**
+	 * A file of a job has been imported
+	 * 
+	 * @param event
+	 *            contains the layers or the overlay of the file
+	 */
+	void layersImported(ImportEvent event);
+
+	/**
+	 * A file of a job can't be imported
+	 * 
+	 * @param event
+	 *            contains the id of the error message
+	 */
+	void importFailed(ImportEvent event);
+
+	/**
+	 * All the files of the job have been handled
+	 * 
+	 * @param job
+	 *            the finished job
+	 */
+	void jobFinished(ImportJob job);
+}
@@ -0,0 +1,43 @@
+package fr.umlv.lastproject.smart.data;
+
+/**
+ * Result of one task of a {@link BackgroundJob}
+ *
+ * @param <J>
+ *            the type of the job
+ */
+public abstract class JobEvent<J extends BackgroundJob<?>> {
+
+	private final J job;
+	private int done;
+
+	JobEvent(J job) {
+		this.job = job;
+	}
+
+	public J getJob() {
+		return job;
+	}
+
+	public abstract boolean isFailed();
+
+	/**
+	 *
+	 * @return the number of tasks of the job handled when this one finished
+	 */
+	public int getDone() {
+		return done;
+	}
+
+	void setDone(int done) {
+		this.done = done;
+	}
+
+	/**
+	 *
+	 * @return the number of tasks of the job
+	 */
+	public int getTotal() {
+		return job.getTotal();
+	}
+}
@@ -0,0 +1,242 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import fr.umlv.lastproject.smart.utils.SmartLogger;
+
+/**
+ * Run the tasks of jobs on a bounded pool of threads and publish their events
+ * to a listener on the UI thread, as soon as each task is done.
+ *
+ * The services are application-scoped : the jobs keep running when the
+ * activity is recreated, the events published while no listener is
+ * registered are kept and delivered to the next one.
+ *
+ * @param <J>
+ *            the type of the jobs
+ * @param <E>
+ *            the type of the events
+ * @param <L>
+ *            the type of the listener
+ */
+public abstract class JobService<J extends BackgroundJob<E>, E extends JobEvent<J>, L> {
+
+	private static final Logger LOGGER = SmartLogger.getLocator().getLogger();
+	private static final int MIN_THREADS = 2;
+	private static final int MAX_THREADS = 4;
+
+	/**
+	 * A task of a job, run on a thread of the pool
+	 */
+	interface Task<E> {
+
+		/**
+		 *
+		 * @return the event to publish
+		 */
+		E call();
+	}
+
+	private final String name;
+	private final ExecutorService executor;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final List<J> jobs = new ArrayList<J>();
+	private final List<E> pendingEvents = new ArrayList<E>();
+	private L listener;
+
+	/**
+	 *
+	 * @param name
+	 *            of the service, for the threads and the logs
+	 */
+	JobService(final String name) {
+		this.name = name;
+		int threads = Math.max(MIN_THREADS, Math.min(MAX_THREADS, Runtime
+				.getRuntime().availableProcessors()));
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(final Runnable r) {
+				Thread t = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						r.run();
+					}
+				}, "Smart" + name + "-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Register a job before its tasks are executed. Must be called on the UI
+	 * thread.
+	 *
+	 * @param job
+	 */
+	final void start(J job) {
+		jobs.add(job);
+	}
+
+	/**
+	 * Run a task of a started job, its event is published on the UI thread
+	 *
+	 * @param job
+	 * @param task
+	 */
+	final void execute(final J job, final Task<E> task) {
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				E event = null;
+				try {
+					if (job.begin()) {
+						try {
+							event = task.call();
+						} finally {
+							job.end();
+						}
+					}
+				} finally {
+					final E result = event;
+					handler.post(new Runnable() {
+
+						@Override
+						public void run() {
+							ended(job, result);
+						}
+					});
+				}
+			}
+		});
+	}
+
+	/**
+	 * Called on the UI thread when a task of a job has stopped
+	 *
+	 * @param event
+	 *            of the task, null if it has been skipped
+	 */
+	private void ended(J job, E event) {
+		if (job.taskEnded()) {
+			jobs.remove(job);
+		}
+		if (event == null || job.isCancelled()) {
+			return;
+		}
+		event.setDone(job.taskDone(event));
+
+		if (listener == null) {
+			pendingEvents.add(event);
+		} else {
+			dispatch(listener, event);
+		}
+	}
+
+	/**
+	 * Deliver an event to the listener, on the UI thread
+	 *
+	 * @param l
+	 *            the listener
+	 * @param event
+	 */
+	abstract void dispatch(L l, E event);
+
+	/**
+	 *
+	 * @return the jobs whose tasks have not all stopped, the cancelled ones
+	 *         included
+	 */
+	final List<J> getJobs() {
+		return jobs;
+	}
+
+	/**
+	 * Register the listener, the events published while no listener was
+	 * registered are delivered immediately. Must be called on the UI thread.
+	 *
+	 * @param l
+	 *            the listener
+	 */
+	final void setListener(L l) {
+		this.listener = l;
+		if (l == null) {
+			return;
+		}
+		final List<E> events = new ArrayList<E>(pendingEvents);
+		pendingEvents.clear();
+		for (E event : events) {
+			dispatch(l, event);
+		}
+	}
+
+	/**
+	 * Unregister the listener if it is the registered one. Must be called on
+	 * the UI thread.
+	 *
+	 * @param l
+	 *            the listener
+	 */
+	final void removeListener(L l) {
+		if (listener == l) {
+			listener = null;
+		}
+	}
+
+	/**
+	 * Cancel a job, the tasks not yet started are skipped, the running ones
+	 * are interrupted and the events not yet published are dropped. Must be
+	 * called on the UI thread.
+	 *
+	 * @param job
+	 *            to cancel
+	 */
+	public void cancel(J job) {
+		job.cancel();
+		LOGGER.log(Level.INFO, name + " job cancelled");
+	}
+
+	/**
+	 * Cancel all the running jobs. Must be called on the UI thread.
+	 *
+	 * @return the number of cancelled jobs
+	 */
+	public int cancelAll() {
+		int cancelled = 0;
+		for (J job : new ArrayList<J>(jobs)) {
+			if (!job.isCancelled()) {
+				cancel(job);
+				cancelled++;
+			}
+		}
+		return cancelled;
+	}
+
+	/**
+	 *
+	 * @return true if a job is running
+	 */
+	public boolean isRunning() {
+		for (J job : jobs) {
+			if (!job.isCancelled()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
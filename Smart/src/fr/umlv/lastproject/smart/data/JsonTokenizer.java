@@ -0,0 +1,289 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Pull tokenizer of a json stream. The values are read one by one from the
+ * stream, nothing is kept in memory but the current token.
+ *
+ * The tokenizer is lenient : the ',' and ':' separators are skipped like
+ * whitespaces, so a valid document is read correctly but a malformed one is
+ * not always detected.
+ *
+ */
+final class JsonTokenizer {
+
+	/**
+	 * The json tokens
+	 */
+	enum Token {
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+	}
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Reader in;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private final StringBuilder value = new StringBuilder();
+	private int position;
+	private int limit;
+
+	JsonTokenizer(Reader in) {
+		this.in = in;
+	}
+
+	/**
+	 *
+	 * @return the type of the next token, without consuming it
+	 * @throws IOException
+	 */
+	Token peek() throws IOException {
+		final int c = peekChar();
+		switch (c) {
+		case -1:
+			return Token.END_DOCUMENT;
+		case '{':
+			return Token.BEGIN_OBJECT;
+		case '}':
+			return Token.END_OBJECT;
+		case '[':
+			return Token.BEGIN_ARRAY;
+		case ']':
+			return Token.END_ARRAY;
+		case '"':
+			return Token.STRING;
+		case 't':
+		case 'f':
+			return Token.BOOLEAN;
+		case 'n':
+			return Token.NULL;
+		default:
+			if (c == '-' || c >= '0' && c <= '9') {
+				return Token.NUMBER;
+			}
+			throw syntaxError("Unexpected character " + (char) c);
+		}
+	}
+
+	/**
+	 *
+	 * @return true if the current object or array has another element
+	 * @throws IOException
+	 */
+	boolean hasNext() throws IOException {
+		final int c = peekChar();
+		return c != '}' && c != ']' && c != -1;
+	}
+
+	void beginObject() throws IOException {
+		consume('{');
+	}
+
+	void endObject() throws IOException {
+		consume('}');
+	}
+
+	void beginArray() throws IOException {
+		consume('[');
+	}
+
+	void endArray() throws IOException {
+		consume(']');
+	}
+
+	String nextName() throws IOException {
+		return nextString();
+	}
+
+	String nextString() throws IOException {
+		consume('"');
+		value.setLength(0);
+		while (true) {
+			int c = read();
+			if (c == '"') {
+				return value.toString();
+			}
+			if (c == '\\') {
+				c = read();
+				switch (c) {
+				case 'b':
+					c = '\b';
+					break;
+				case 'f':
+					c = '\f';
+					break;
+				case 'n':
+					c = '\n';
+					break;
+				case 'r':
+					c = '\r';
+					break;
+				case 't':
+					c = '\t';
+					break;
+				case 'u':
+					int unicode = 0;
+					for (int i = 0; i < 4; i++) {
+						unicode = (unicode << 4)
+								| Character.digit((char) read(), 16);
+					}
+					if (unicode < 0) {
+						throw syntaxError("Invalid unicode escape");
+					}
+					c = unicode;
+					break;
+				default:
+					// '"', '\\' and '/' are kept
+					break;
+				}
+			}
+			value.append((char) c);
+		}
+	}
+
+	double nextDouble() throws IOException {
+		if (peek() != Token.NUMBER) {
+			throw syntaxError("Number expected");
+		}
+		value.setLength(0);
+		while (true) {
+			final int c = peekRaw();
+			if (c >= '0' && c <= '9' || c == '-' || c == '+' || c == '.'
+					|| c == 'e' || c == 'E') {
+				value.append((char) c);
+				position++;
+			} else {
+				break;
+			}
+		}
+		try {
+			return Double.parseDouble(value.toString());
+		} catch (NumberFormatException e) {
+			throw syntaxError("Invalid number " + value);
+		}
+	}
+
+	boolean nextBoolean() throws IOException {
+		if (peekChar() == 't') {
+			consumeLiteral("true");
+			return true;
+		}
+		consumeLiteral("false");
+		return false;
+	}
+
+	void nextNull() throws IOException {
+		consumeLiteral("null");
+	}
+
+	/**
+	 * Skip the next value, and all its content for an object or an array
+	 *
+	 * @throws IOException
+	 */
+	void skipValue() throws IOException {
+		int depth = 0;
+		do {
+			switch (peek()) {
+			case BEGIN_OBJECT:
+			case BEGIN_ARRAY:
+				position++;
+				depth++;
+				break;
+			case END_OBJECT:
+			case END_ARRAY:
+				position++;
+				depth--;
+				break;
+			case STRING:
+				skipString();
+				break;
+			case NUMBER:
+				nextDouble();
+				break;
+			case BOOLEAN:
+				nextBoolean();
+				break;
+			case NULL:
+				nextNull();
+				break;
+			default:
+				throw syntaxError("Unexpected end of document");
+			}
+		} while (depth > 0);
+	}
+
+	private void skipString() throws IOException {
+		consume('"');
+		while (true) {
+			final int c = read();
+			if (c == '"') {
+				return;
+			}
+			if (c == '\\') {
+				read();
+			}
+		}
+	}
+
+	private void consumeLiteral(String literal) throws IOException {
+		peekChar();
+		for (int i = 0; i < literal.length(); i++) {
+			if (read() != literal.charAt(i)) {
+				throw syntaxError(literal + " expected");
+			}
+		}
+	}
+
+	private void consume(char expected) throws IOException {
+		if (peekChar() != expected) {
+			throw syntaxError("'" + expected + "' expected");
+		}
+		position++;
+	}
+
+	/**
+	 * Skip the whitespaces and separators, and return the next character
+	 * without consuming it
+	 */
+	private int peekChar() throws IOException {
+		while (true) {
+			final int c = peekRaw();
+			if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == ','
+					|| c == ':') {
+				position++;
+			} else {
+				return c;
+			}
+		}
+	}
+
+	private int peekRaw() throws IOException {
+		if (position == limit && !fill()) {
+			return -1;
+		}
+		return buffer[position];
+	}
+
+	private int read() throws IOException {
+		if (position == limit && !fill()) {
+			throw syntaxError("Unexpected end of document");
+		}
+		return buffer[position++];
+	}
+
+	private boolean fill() throws IOException {
+		limit = in.read(buffer, 0, buffer.length);
+		position = 0;
+		if (limit <= 0) {
+			limit = 0;
+			return false;
+		}
+		return true;
+	}
+
+	private static IOException syntaxError(String message) {
+		return new IOException("Invalid json : " + message);
+	}
+}
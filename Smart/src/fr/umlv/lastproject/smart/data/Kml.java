@@ -3,6 +3,7 @@ package fr.umlv.lastproject.smart.data;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -60,11 +61,29 @@ public class Kml {
 	 * @throws IOException
 	 */
 	public void readKml() throws XmlPullParserException, IOException {
+		FileInputStream stream = new FileInputStream(file);
+		try {
+			readKml(stream);
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Read a Kml document from the given stream. The stream is not closed, so
+	 * it can be an entry of an archive.
+	 * 
+	 * @param stream
+	 *            the stream of the kml document
+	 * @throws XmlPullParserException
+	 * @throws IOException
+	 */
+	public void readKml(InputStream stream) throws XmlPullParserException,
+			IOException {
 		// initialize the parser
 		XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
 		factory.setNamespaceAware(true);
 		XmlPullParser xpp = factory.newPullParser();
-		FileInputStream stream = new FileInputStream(file);
 		xpp.setInput(stream, "UTF-8");
 		int eventType = xpp.getEventType();
 		
@@ -1,53 +1,50 @@
 package fr.umlv.lastproject.smart.data;
 
-import java.util.List;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import org.xmlpull.v1.XmlSerializer;
 
 import android.content.Context;
+import android.util.Xml;
 import fr.umlv.lastproject.smart.browser.utils.FileUtils;
-import fr.umlv.lastproject.smart.database.BooleanFieldRecord;
 import fr.umlv.lastproject.smart.database.DbManager;
-import fr.umlv.lastproject.smart.database.FieldRecord;
-import fr.umlv.lastproject.smart.database.FormRecord;
-import fr.umlv.lastproject.smart.database.GeometryRecord;
-import fr.umlv.lastproject.smart.database.HeightFieldRecord;
-import fr.umlv.lastproject.smart.database.ListFieldRecord;
+import fr.umlv.lastproject.smart.database.FormRowIterator;
+import fr.umlv.lastproject.smart.database.GeometryIterator;
+import fr.umlv.lastproject.smart.database.GeometryRow;
 import fr.umlv.lastproject.smart.database.MissionRecord;
-import fr.umlv.lastproject.smart.database.NumericFieldRecord;
-import fr.umlv.lastproject.smart.database.PictureFieldRecord;
-import fr.umlv.lastproject.smart.database.PointRecord;
-import fr.umlv.lastproject.smart.database.TextFieldRecord;
+import fr.umlv.lastproject.smart.layers.PackedCoordinates;
 import fr.umlv.lastproject.smart.utils.SmartException;
 import fr.umlv.lastproject.smart.utils.SmartLogger;
 
 /**
- * Utils for export in Kml
- * 
+ * Utils for export in Kml. The document is written placemark by placemark
+ * with an {@link XmlSerializer} while the geometries and their form records
+ * are read from the database, so the memory used does not depend on the size
+ * of the mission.
+ *
  * @author Joan Goyeau
- * 
+ *
  */
 public final class KmlExport {
 
 	private static final Logger LOGGER = SmartLogger.getLocator().getLogger();
 	private static final String UNABLE_TO_EXPORT ="Unable to export the mission";
+	private static final String MISSION_CHANGED = "The mission has been modified during the export";
+	private static final String CANCELLED = "The export has been cancelled";
+	private static final String CHARSET = "UTF-8";
+	private static final int BUFFER_SIZE = 8192;
+	private static final String KML_NS = "http://www.opengis.net/kml/2.2";
 
 	/**
 	 * Export the given mission in a Kml file.
-	 * 
+	 *
 	 * @param kmlFile
 	 * @param mission
 	 * @return the path to the saved file
@@ -56,228 +53,196 @@ public final class KmlExport {
 	 */
 	public static String exportMission(String path, long idMission,
 			Context context) throws KmlExportException {
+		DbManager dbm = new DbManager();
 		try {
-			DbManager dbm = new DbManager();
 			dbm.open(context);
-			MissionRecord mission = dbm.getMission(idMission);
-
-			DocumentBuilderFactory docFactory = DocumentBuilderFactory
-					.newInstance();
-			DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-			Document kml = docBuilder.newDocument();
-
-			// kml element
-			Element kmlElement = kml.createElement(Kml.KMLTAG);
-			kml.appendChild(kmlElement);
-
-			// Set attributes to kml element
-			Attr xmlns = kml.createAttribute(Kml.KMLNSTAG);
-			xmlns.setValue("http://www.opengis.net/kml/2.2");
-			kmlElement.setAttributeNode(xmlns);
-
-			Attr xmlnsGx = kml.createAttribute(Kml.KMLNSGXTAG);
-			xmlnsGx.setValue("http://www.google.com/kml/ext/2.2");
-			kmlElement.setAttributeNode(xmlnsGx);
-
-			Attr xmlnsKml = kml.createAttribute(Kml.XMLNSKMLTAG);
-			xmlnsKml.setValue("http://www.opengis.net/kml/2.2");
-			kmlElement.setAttributeNode(xmlnsKml);
-
-			Attr xmlnsAtom = kml.createAttribute(Kml.XMLNSATOMTAG);
-			xmlnsAtom.setValue("http://www.w3.org/2005/Atom");
-			kmlElement.setAttributeNode(xmlnsAtom);
-
-			// Document element
-			Element documentElement = kml.createElement(Kml.DOCUMENTTAG);
-			kmlElement.appendChild(documentElement);
-
-			// name element
-			Element documentNameElement = kml.createElement(Kml.NAMETAG);
-			documentNameElement.appendChild(kml.createTextNode(mission
-					.getTitle() + ".kml"));
-			documentElement.appendChild(documentNameElement);
-
-			// Folder element
-			Element folderElement = kml.createElement(Kml.FOLDERTAG);
-			documentElement.appendChild(folderElement);
-
-			// name element
-			Element folderNameElement = kml.createElement(Kml.NAMETAG);
-			folderNameElement
-					.appendChild(kml.createTextNode(mission.getTitle()));
-			folderElement.appendChild(folderNameElement);
-
-			List<GeometryRecord> geometries = dbm
-					.getGeometriesFromMission(mission.getId());
-			if (geometries.size() < 1) {
-				LOGGER.log(Level.SEVERE,
-						"Try to export mission without geometry");
-				throw new KmlExportException("No geometry in the given mission");
-			}
-
-			for (GeometryRecord geometry : geometries) {
-				// Placemark element
-				Element placemarkElement = kml.createElement(Kml.PLACEMARKTAG);
-				folderElement.appendChild(placemarkElement);
-
-				// name element
-				Element placemarkNameElement = kml.createElement(Kml.NAMETAG);
-				placemarkNameElement.appendChild(kml.createTextNode(String
-						.valueOf(geometry.getId())));
-				placemarkElement.appendChild(placemarkNameElement);
-
-				// description element
-				Element descriptionElement = KmlExport
-						.pepareDescriptionElement(kml, dbm.getFormRecord(
-								geometry.getIdFormRecord(), mission.getForm()
-										.getTitle()));
-				placemarkElement.appendChild(descriptionElement);
+		} catch (SmartException e) {
+			LOGGER.log(Level.SEVERE, UNABLE_TO_EXPORT);
+			throw new KmlExportException(UNABLE_TO_EXPORT, e);
+		}
 
-				// Polygon or Point or LineString element
-				Element geometryElement = KmlExport.pepareGeometryElement(kml,
-						geometry);
-				placemarkElement.appendChild(geometryElement);
+		try {
+			MissionRecord mission = dbm.getMission(idMission);
+			String formName = mission.getForm().getTitle();
+			GeometryIterator geometries = dbm
+					.iterateGeometriesFromMission(mission.getId());
+			FormRowIterator rows = dbm.iterateFormRowsFromMission(
+					mission.getId(), formName);
+			String fileName = path + mission.getTitle()
+					+ FileUtils.KML_SHP_TYPE[1];
+			Writer out = null;
+			boolean written = false;
+			try {
+				if (!geometries.hasNext()) {
+					LOGGER.log(Level.SEVERE,
+							"Try to export mission without geometry");
+					throw new KmlExportException(
+							"No geometry in the given mission");
+				}
+
+				out = new BufferedWriter(new OutputStreamWriter(
+						new FileOutputStream(fileName), CHARSET), BUFFER_SIZE);
+				XmlSerializer kml = Xml.newSerializer();
+				kml.setOutput(out);
+				kml.startDocument(CHARSET, null);
+
+				// kml element
+				kml.startTag(null, Kml.KMLTAG);
+				kml.attribute(null, Kml.KMLNSTAG, KML_NS);
+				kml.attribute(null, Kml.KMLNSGXTAG,
+						"http://www.google.com/kml/ext/2.2");
+				kml.attribute(null, Kml.XMLNSKMLTAG, KML_NS);
+				kml.attribute(null, Kml.XMLNSATOMTAG,
+						"http://www.w3.org/2005/Atom");
+
+				// Document element
+				kml.startTag(null, Kml.DOCUMENTTAG);
+				writeElement(kml, Kml.NAMETAG, mission.getTitle() + ".kml");
+
+				// Folder element
+				kml.startTag(null, Kml.FOLDERTAG);
+				writeElement(kml, Kml.NAMETAG, mission.getTitle());
+
+				// The n-th row is the form record of the n-th geometry
+				String[] columns = rows.getColumnNames();
+				StringBuilder buffer = new StringBuilder();
+				while (geometries.hasNext()) {
+					if (DataExport.isCancelled()) {
+						throw new KmlExportException(CANCELLED);
+					}
+					GeometryRow geometry = geometries.next();
+					if (!rows.moveToNext()) {
+						throw new KmlExportException(MISSION_CHANGED);
+					}
+					String description = rows.hasFormRecord() ? prepareDescription(
+							formName, columns, rows, buffer) : null;
+					writePlacemark(kml, geometry, description, buffer);
+				}
+
+				kml.endTag(null, Kml.FOLDERTAG);
+				kml.endTag(null, Kml.DOCUMENTTAG);
+				kml.endTag(null, Kml.KMLTAG);
+				kml.endDocument();
+				written = true;
+			} finally {
+				geometries.close();
+				rows.close();
+				if (out != null) {
+					out.close();
+					// A failed or cancelled export leaves no partial file
+					if (!written) {
+						new File(fileName).delete();
+					}
+				}
 			}
 
-			TransformerFactory transformerFactory = TransformerFactory
-					.newInstance();
-			Transformer transformer = transformerFactory.newTransformer();
-			DOMSource source = new DOMSource(kml);
-			StreamResult result = new StreamResult(path + mission.getTitle()
-					+ FileUtils.KML_SHP_TYPE[1]);
-
-			transformer.transform(source, result);
-
-			dbm.close();
 			LOGGER.log(Level.INFO,
 					"Export mission to KML :" + mission.getTitle());
-			return path + mission.getTitle() + FileUtils.KML_SHP_TYPE[1];
+			return fileName;
 
-		} catch (ParserConfigurationException e) {
-			LOGGER.log(Level.SEVERE, UNABLE_TO_EXPORT);
-			throw new KmlExportException(UNABLE_TO_EXPORT, e);
-		} catch (TransformerException e) {
-			LOGGER.log(Level.SEVERE, UNABLE_TO_EXPORT);
-			throw new KmlExportException(UNABLE_TO_EXPORT, e);
-		} catch (SmartException e) {
+		} catch (IOException e) {
 			LOGGER.log(Level.SEVERE, UNABLE_TO_EXPORT);
 			throw new KmlExportException(UNABLE_TO_EXPORT, e);
+		} finally {
+			dbm.close();
 		}
 	}
 
-	private static Element pepareGeometryElement(Document kml,
-			GeometryRecord geometry) {
-		// Polygon or Point or LineString element
-		Element geomertryElement = kml.createElement(geometry.getType()
-				.getKmlName());
+	private static void writeElement(XmlSerializer kml, String tag,
+			String text) throws IOException {
+		kml.startTag(null, tag);
+		kml.text(text);
+		kml.endTag(null, tag);
+	}
 
+	private static void writePlacemark(XmlSerializer kml,
+			GeometryRow geometry, String description, StringBuilder buffer)
+			throws IOException {
+		// Placemark element
+		kml.startTag(null, Kml.PLACEMARKTAG);
+		writeElement(kml, Kml.NAMETAG, Long.toString(geometry.getId()));
+
+		// description element
+		if (description != null) {
+			writeElement(kml, Kml.DESCRIPTIONTAG, description);
+		}
+
+		// Polygon or Point or LineString element
+		String geometryTag = geometry.getType().getKmlName();
+		kml.startTag(null, geometryTag);
 		switch (geometry.getType()) {
 		case POINT:
 		case LINE:
-			Element coordinatesElement = prepareCoordinatesElement(kml,
-					geometry);
-			geomertryElement.appendChild(coordinatesElement);
+			writeCoordinates(kml, geometry, false, buffer);
 			break;
 
 		case POLYGON:
-			Element outerBoundaryIsElement = prepareOuterBoundaryIsElement(kml,
-					geometry);
-			geomertryElement.appendChild(outerBoundaryIsElement);
+			kml.startTag(null, Kml.OUTERBOUNDARYTAG);
+			kml.startTag(null, Kml.LINEARRINGTAG);
+			writeCoordinates(kml, geometry, true, buffer);
+			kml.endTag(null, Kml.LINEARRINGTAG);
+			kml.endTag(null, Kml.OUTERBOUNDARYTAG);
 			break;
 
 		default:
 			throw new IllegalStateException(
 					"The given GeometryType is not supported for the KML export");
 		}
-
-		return geomertryElement;
+		kml.endTag(null, geometryTag);
+		kml.endTag(null, Kml.PLACEMARKTAG);
 	}
 
-	private static Element prepareCoordinatesElement(Document kml,
-			GeometryRecord geometry) {
-		// coordinates element
-		Element coordinatesElement = kml.createElement(Kml.COORDINATESTAG);
-		StringBuilder coordinates = new StringBuilder();
-		for (PointRecord point : geometry.getPointsRecord()) {
-			coordinates.append(point.getY()).append(",");
-			coordinates.append(point.getX()).append(",");
-			if (point.getZ() == -1.0) {
-				coordinates.append(0).append(" ");
-			} else {
-				coordinates.append(point.getZ()).append(" ");
-			}
+	/**
+	 * Write the coordinates element, point by point so that a long line is
+	 * never held in one string
+	 *
+	 * @param ring
+	 *            true to close the ring of a polygon with its first point
+	 */
+	private static void writeCoordinates(XmlSerializer kml,
+			GeometryRow geometry, boolean ring, StringBuilder buffer)
+			throws IOException {
+		PackedCoordinates points = geometry.getCoordinates();
+		kml.startTag(null, Kml.COORDINATESTAG);
+		for (int i = 0; i < points.size(); i++) {
+			writeCoordinate(kml, geometry, i, buffer);
 		}
-		coordinatesElement.appendChild(kml.createTextNode(coordinates
-				.toString()));
-
-		return coordinatesElement;
+		int last = points.size() - 1;
+		if (ring && last > 0
+				&& (points.getLatitude(0) != points.getLatitude(last) || points
+						.getLongitude(0) != points.getLongitude(last))) {
+			writeCoordinate(kml, geometry, 0, buffer);
+		}
+		kml.endTag(null, Kml.COORDINATESTAG);
 	}
 
-	private static Element prepareOuterBoundaryIsElement(Document kml,
-			GeometryRecord geometry) {
-		// outerBoundaryIs element
-		Element outerBoundaryIsElement = kml
-				.createElement(Kml.OUTERBOUNDARYTAG);
-
-		// LinearRing element
-		Element linearRingElement = kml.createElement(Kml.LINEARRINGTAG);
-		outerBoundaryIsElement.appendChild(linearRingElement);
-
-		Element coordinatesElement = prepareCoordinatesElement(kml, geometry);
-		linearRingElement.appendChild(coordinatesElement);
-
-		return outerBoundaryIsElement;
+	private static void writeCoordinate(XmlSerializer kml,
+			GeometryRow geometry, int i, StringBuilder buffer)
+			throws IOException {
+		PackedCoordinates points = geometry.getCoordinates();
+		buffer.setLength(0);
+		buffer.append(points.getLongitude(i)).append(',');
+		buffer.append(points.getLatitude(i)).append(',');
+		if (geometry.getAltitude(i) == -1.0) {
+			buffer.append(0).append(' ');
+		} else {
+			buffer.append(geometry.getAltitude(i)).append(' ');
+		}
+		kml.text(buffer.toString());
 	}
 
-	private static Element pepareDescriptionElement(Document kml,
-			FormRecord formRecord) {
-		Element descriptionElement = kml.createElement(Kml.DESCRIPTIONTAG);
-		StringBuilder description = new StringBuilder(formRecord.getName())
-				.append("\n");
-
-		for (FieldRecord field : formRecord.getFields()) {
-			description.append(field.getField().getLabel() + ": ");
-			switch (field.getField().getType()) {
-			case TEXT:
-				TextFieldRecord tf = (TextFieldRecord) field;
-				description.append(tf.getValue());
-				break;
-
-			case NUMERIC:
-				NumericFieldRecord nf = (NumericFieldRecord) field;
-				description.append(nf.getValue());
-				break;
-
-			case BOOLEAN:
-				BooleanFieldRecord bf = (BooleanFieldRecord) field;
-				description.append(bf.getValue());
-				break;
-
-			case LIST:
-				ListFieldRecord lf = (ListFieldRecord) field;
-				description.append(lf.getValue());
-				break;
-
-			case PICTURE:
-				PictureFieldRecord pf = (PictureFieldRecord) field;
-				description.append(pf.getValue());
-				break;
-
-			case HEIGHT:
-				HeightFieldRecord hf = (HeightFieldRecord) field;
-				description.append(hf.getValue());
-				break;
-
-			default:
-				throw new IllegalStateException("Unkown field type");
-			}
-
-			description.append("\n");
+	/**
+	 * The name of the form then a line by column : "name: value"
+	 */
+	private static String prepareDescription(String formName,
+			String[] columns, FormRowIterator row, StringBuilder description) {
+		description.setLength(0);
+		description.append(formName).append('\n');
+		for (int i = 0; i < columns.length; i++) {
+			description.append(columns[i]).append(": ")
+					.append(row.getString(i)).append('\n');
 		}
-
-		descriptionElement.appendChild(kml.createTextNode(description
-				.toString()));
-		return descriptionElement;
+		return description.toString();
 	}
 
 	private KmlExport() {
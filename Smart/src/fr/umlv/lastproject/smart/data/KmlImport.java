@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,10 +45,48 @@ public class KmlImport {
 			Context contexte) throws XmlPullParserException, IOException {
 		Kml kml = new Kml(new File(path));
 		kml.readKml();
+		return getLayersFromKML(kml, path, contexte);
+	}
+
+	/**
+	 * Return a list of GeometryLayer with all the geometry type in the kml
+	 * document of a kmz archive. The document is read directly from the
+	 * archive, nothing is extracted on the storage.
+	 * 
+	 * @param path
+	 *            of the kmz archive
+	 * @param contexte
+	 * @return
+	 * @throws XmlPullParserException
+	 * @throws IOException
+	 */
+	public static List<GeometryLayer> getLayersFromKMZ(String path,
+			Context contexte) throws XmlPullParserException, IOException {
+		Kml kml = new Kmz(new File(path)).readKml();
+		return getLayersFromKML(kml, path, contexte);
+	}
+
+	private static List<GeometryLayer> getLayersFromKML(Kml kml, String path,
+			Context contexte) throws XmlPullParserException, IOException {
+		return createLayers(kml.getGeometries(), path, contexte);
+	}
+
+	/**
+	 * Create a layer for each geometry type, named after the imported file
+	 * 
+	 * @param geometriesByType
+	 *            the geometries read from the file
+	 * @param path
+	 *            of the imported file
+	 * @param contexte
+	 * @return
+	 */
+	static List<GeometryLayer> createLayers(
+			Map<GeometryType, List<Geometry>> geometriesByType, String path,
+			Context contexte) {
 		List<GeometryLayer> overlays = new ArrayList<GeometryLayer>();
-		for (GeometryType type : kml.getGeometries().keySet()) {
-			List<Geometry> geometries = (ArrayList<Geometry>) kml
-					.getGeometries().get(type);
+		for (GeometryType type : geometriesByType.keySet()) {
+			List<Geometry> geometries = geometriesByType.get(type);
 			if (geometries == null) {
 				break;
 			}
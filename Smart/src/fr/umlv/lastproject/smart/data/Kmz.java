@@ -0,0 +1,69 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ *
+ * @Description : This kmz class read the kml document of a .kmz archive
+ *              without extracting it
+ *
+ */
+public class Kmz {
+
+	public static final String DOC_KML = "doc.kml";
+	private static final String KML_EXTENSION = ".kml";
+	private static final char SEPARATOR = '/';
+
+	private final File file;
+
+	public Kmz(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Read the kml document of the archive. The document is streamed from the
+	 * archive into the parser : the doc.kml entry, or the first .kml entry at
+	 * the root of the archive.
+	 *
+	 * @return the {@link Kml} read
+	 * @throws XmlPullParserException
+	 * @throws IOException
+	 *             if the archive can't be read or has no kml document
+	 */
+	public Kml readKml() throws XmlPullParserException, IOException {
+		ZipInputStream zip = new ZipInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			ZipEntry entry;
+			while ((entry = zip.getNextEntry()) != null) {
+				if (isDocument(entry)) {
+					Kml kml = new Kml(file);
+					kml.readKml(zip);
+					return kml;
+				}
+			}
+		} finally {
+			zip.close();
+		}
+		throw new IOException("No kml document in " + file.getName());
+	}
+
+	private static boolean isDocument(ZipEntry entry) {
+		String name = entry.getName();
+		if (entry.isDirectory()) {
+			return false;
+		}
+		if (DOC_KML.equalsIgnoreCase(name)) {
+			return true;
+		}
+		return name.indexOf(SEPARATOR) == -1
+				&& name.toLowerCase().endsWith(KML_EXTENSION);
+	}
+}
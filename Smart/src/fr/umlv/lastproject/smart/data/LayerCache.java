@@ -0,0 +1,460 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.osmdroid.util.BoundingBoxE6;
+import org.osmdroid.util.GeoPoint;
+
+import android.content.Context;
+import fr.umlv.lastproject.smart.layers.Geometry;
+import fr.umlv.lastproject.smart.layers.GeometryLayer;
+import fr.umlv.lastproject.smart.layers.GeometryType;
+import fr.umlv.lastproject.smart.layers.LineGeometry;
+import fr.umlv.lastproject.smart.layers.LineSymbology;
+import fr.umlv.lastproject.smart.layers.PointGeometry;
+import fr.umlv.lastproject.smart.layers.PointSymbology;
+import fr.umlv.lastproject.smart.layers.PointSymbology.PointSymbologieType;
+import fr.umlv.lastproject.smart.layers.PolygonGeometry;
+import fr.umlv.lastproject.smart.layers.PolygonSymbology;
+import fr.umlv.lastproject.smart.layers.Symbology;
+import fr.umlv.lastproject.smart.utils.SmartConstants;
+import fr.umlv.lastproject.smart.utils.SmartLogger;
+
+/**
+ * Binary cache of the imported vector files. The layers parsed from a file are
+ * written in {@link SmartConstants#CACHE_PATH}, the cache entry is only used
+ * while the path, the size and the last modification date of the file are
+ * unchanged. A variant can be added to the key when the layers also depend on
+ * something else than the file, as the coordinate system of a shapefile.
+ *
+ * For each layer the file holds its name, type and symbology, its extent, an
+ * index with the offset and the bounds of each geometry, then the coordinates
+ * packed as latitude/longitude E6 integers. The file is mapped in memory to be
+ * read back, and the index allows to only decode the geometries of an area.
+ *
+ */
+public final class LayerCache {
+
+	private static final Logger LOGGER = SmartLogger.getLocator().getLogger();
+
+	private static final int MAGIC = 0x534c5952;
+	private static final int VERSION = 2;
+	private static final String EXTENSION = ".lyr";
+	private static final String CHARSET = "UTF-8";
+	private static final double VALUE_1E6 = 1E6;
+
+	/* Size of an index entry : offset and north, east, south, west */
+	private static final int INDEX_ENTRY_SIZE = 5 * 4;
+	/* Size of a geometry header : type and number of points */
+	private static final int GEOMETRY_HEADER_SIZE = 1 + 4;
+	private static final int POINT_SIZE = 2 * 4;
+
+	private static final byte SYMBOLOGY_POINT = 0;
+	private static final byte SYMBOLOGY_LINE = 1;
+	private static final byte SYMBOLOGY_POLYGON = 2;
+
+	/**
+	 * Utility class/ can't instantiate
+	 */
+	private LayerCache() {
+
+	}
+
+	/**
+	 * Load the layers of a file from the cache
+	 *
+	 * @param context
+	 * @param path
+	 *            of the imported file
+	 * @return the layers, or null if the file is not cached or has changed
+	 */
+	public static List<GeometryLayer> load(Context context, String path) {
+		return load(context, path, "", null);
+	}
+
+	/**
+	 * Load the layers of a file from the cache
+	 *
+	 * @param context
+	 * @param path
+	 *            of the imported file
+	 * @param variant
+	 *            the variant given when the layers were stored
+	 * @return the layers, or null if the file is not cached, has changed or
+	 *         was stored with another variant
+	 */
+	public static List<GeometryLayer> load(Context context, String path,
+			String variant) {
+		return load(context, path, variant, null);
+	}
+
+	/**
+	 * Load the layers of a file from the cache, only with the geometries
+	 * intersecting an area
+	 *
+	 * @param context
+	 * @param path
+	 *            of the imported file
+	 * @param variant
+	 *            the variant given when the layers were stored
+	 * @param area
+	 *            the geometries to keep, or null to keep all the geometries
+	 * @return the layers, or null if the file is not cached, has changed or
+	 *         was stored with another variant
+	 */
+	public static List<GeometryLayer> load(Context context, String path,
+			String variant, BoundingBoxE6 area) {
+		final File source = new File(path);
+		final File cache = getCacheFile(path);
+		if (!source.exists() || !cache.exists()) {
+			return null;
+		}
+
+		try {
+			final FileInputStream in = new FileInputStream(cache);
+			try {
+				final FileChannel channel = in.getChannel();
+				final ByteBuffer buffer = channel.map(
+						FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (!readHeader(buffer, source, variant)) {
+					return null;
+				}
+				final int count = buffer.getInt();
+				final List<GeometryLayer> layers = new ArrayList<GeometryLayer>(
+						count);
+				for (int i = 0; i < count; i++) {
+					layers.add(readLayer(buffer, context, area));
+				}
+				LOGGER.log(Level.INFO, "Layers loaded from the cache : " + path);
+				return layers;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Cache can't be read for " + path);
+		} catch (RuntimeException e) {
+			// truncated or corrupted cache file
+			LOGGER.log(Level.WARNING, "Cache can't be read for " + path);
+		}
+		cache.delete();
+		return null;
+	}
+
+	/**
+	 * Write the layers imported from a file in the cache. A failure is logged
+	 * and doesn't affect the import.
+	 *
+	 * @param path
+	 *            of the imported file
+	 * @param layers
+	 *            imported from the file
+	 */
+	public static void store(String path, List<GeometryLayer> layers) {
+		store(path, "", layers);
+	}
+
+	/**
+	 * Write the layers imported from a file in the cache. A failure is logged
+	 * and doesn't affect the import.
+	 *
+	 * @param path
+	 *            of the imported file
+	 * @param variant
+	 *            added to the key of the cache entry
+	 * @param layers
+	 *            imported from the file
+	 */
+	public static void store(String path, String variant,
+			List<GeometryLayer> layers) {
+		final File source = new File(path);
+		if (layers == null || !source.exists()) {
+			return;
+		}
+		final File cache = getCacheFile(path);
+		final File tmp = new File(cache.getPath() + ".tmp");
+		cache.getParentFile().mkdirs();
+
+		try {
+			final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeString(out, source.getAbsolutePath());
+				writeString(out, variant);
+				out.writeLong(source.length());
+				out.writeLong(source.lastModified());
+				out.writeInt(layers.size());
+				for (GeometryLayer layer : layers) {
+					writeLayer(out, layer);
+				}
+			} finally {
+				out.close();
+			}
+			// the entry is only visible once complete
+			if (!tmp.renameTo(cache)) {
+				tmp.delete();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Cache can't be written for " + path);
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Remove the cached layers of a file
+	 *
+	 * @param path
+	 *            of the imported file
+	 */
+	public static void invalidate(String path) {
+		getCacheFile(path).delete();
+	}
+
+	private static File getCacheFile(String path) {
+		final String absolute = new File(path).getAbsolutePath();
+		String name = new File(path).getName().replaceAll("[^\\w.-]", "_");
+		return new File(SmartConstants.CACHE_PATH, name + "_"
+				+ Integer.toHexString(absolute.hashCode()) + EXTENSION);
+	}
+
+	private static boolean readHeader(ByteBuffer buffer, File source,
+			String variant) throws UnsupportedEncodingException {
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			return false;
+		}
+		return source.getAbsolutePath().equals(readString(buffer))
+				&& variant.equals(readString(buffer))
+				&& buffer.getLong() == source.length()
+				&& buffer.getLong() == source.lastModified();
+	}
+
+	private static void writeLayer(DataOutputStream out, GeometryLayer layer)
+			throws IOException {
+		writeString(out, layer.getName());
+		out.writeInt(layer.getType().getId());
+		writeSymbology(out, layer.getSymbology());
+
+		final List<Geometry> geometries = layer.getGeometries();
+		final int count = geometries.size();
+		final int[][] coordinates = new int[count][];
+		final int[] bounds = new int[count * 4];
+		int north = Integer.MIN_VALUE;
+		int east = Integer.MIN_VALUE;
+		int south = Integer.MAX_VALUE;
+		int west = Integer.MAX_VALUE;
+		for (int i = 0; i < count; i++) {
+			coordinates[i] = pack(geometries.get(i));
+			computeBounds(coordinates[i], bounds, i * 4);
+			north = Math.max(north, bounds[i * 4]);
+			east = Math.max(east, bounds[i * 4 + 1]);
+			south = Math.min(south, bounds[i * 4 + 2]);
+			west = Math.min(west, bounds[i * 4 + 3]);
+		}
+
+		out.writeInt(north);
+		out.writeInt(east);
+		out.writeInt(south);
+		out.writeInt(west);
+		out.writeInt(count);
+
+		int offset = 0;
+		for (int i = 0; i < count; i++) {
+			out.writeInt(offset);
+			for (int j = 0; j < 4; j++) {
+				out.writeInt(bounds[i * 4 + j]);
+			}
+			offset += GEOMETRY_HEADER_SIZE + coordinates[i].length / 2
+					* POINT_SIZE;
+		}
+		out.writeInt(offset);
+
+		for (int i = 0; i < count; i++) {
+			out.writeByte(geometries.get(i).getType().getId());
+			out.writeInt(coordinates[i].length / 2);
+			for (int value : coordinates[i]) {
+				out.writeInt(value);
+			}
+		}
+	}
+
+	private static GeometryLayer readLayer(ByteBuffer buffer, Context context,
+			BoundingBoxE6 area) throws IOException {
+		final String name = readString(buffer);
+		final GeometryType type = GeometryType.getFromId(buffer.getInt());
+		final Symbology symbology = readSymbology(buffer);
+
+		final int north = buffer.getInt();
+		final int east = buffer.getInt();
+		final int south = buffer.getInt();
+		final int west = buffer.getInt();
+		final int count = buffer.getInt();
+		final int indexStart = buffer.position();
+		final int dataStart = indexStart + count * INDEX_ENTRY_SIZE + 4;
+		final int dataLength = buffer.getInt(dataStart - 4);
+		final List<Geometry> geometries = new ArrayList<Geometry>();
+
+		if (area == null || contains(area, north, east, south, west)) {
+			buffer.position(dataStart);
+			for (int i = 0; i < count; i++) {
+				geometries.add(readGeometry(buffer));
+			}
+		} else if (intersects(area, north, east, south, west)) {
+			for (int i = 0; i < count; i++) {
+				final int entry = indexStart + i * INDEX_ENTRY_SIZE;
+				if (intersects(area, buffer.getInt(entry + 4),
+						buffer.getInt(entry + 8), buffer.getInt(entry + 12),
+						buffer.getInt(entry + 16))) {
+					buffer.position(dataStart + buffer.getInt(entry));
+					geometries.add(readGeometry(buffer));
+				}
+			}
+		}
+		buffer.position(dataStart + dataLength);
+
+		return new GeometryLayer(context, geometries, type, symbology, name);
+	}
+
+	private static void writeSymbology(DataOutputStream out,
+			Symbology symbology) throws IOException {
+		if (symbology instanceof PointSymbology) {
+			out.writeByte(SYMBOLOGY_POINT);
+			out.writeInt(((PointSymbology) symbology).getType().getId());
+		} else if (symbology instanceof LineSymbology) {
+			out.writeByte(SYMBOLOGY_LINE);
+		} else {
+			out.writeByte(SYMBOLOGY_POLYGON);
+		}
+		out.writeInt(symbology.getSize());
+		out.writeInt(symbology.getColor());
+		out.writeInt(symbology.getAlpha());
+	}
+
+	private static Symbology readSymbology(ByteBuffer buffer) {
+		switch (buffer.get()) {
+		case SYMBOLOGY_POINT:
+			final PointSymbologieType type = PointSymbologieType
+					.getFromId(buffer.getInt());
+			return new PointSymbology(buffer.getInt(), buffer.getInt(),
+					buffer.getInt(), type);
+		case SYMBOLOGY_LINE:
+			return new LineSymbology(buffer.getInt(), buffer.getInt(),
+					buffer.getInt());
+		default:
+			return new PolygonSymbology(buffer.getInt(), buffer.getInt(),
+					buffer.getInt());
+		}
+	}
+
+	private static Geometry readGeometry(ByteBuffer buffer) {
+		final GeometryType type = GeometryType.getFromId(buffer.get());
+		final int size = buffer.getInt();
+		switch (type) {
+		case POINT:
+			return new PointGeometry(buffer.getInt() / VALUE_1E6,
+					buffer.getInt() / VALUE_1E6);
+		case LINE:
+			return new LineGeometry(readPoints(buffer, size));
+		case POLYGON:
+			return new PolygonGeometry(readPoints(buffer, size));
+		default:
+			throw new IllegalStateException("Unknown geometry type");
+		}
+	}
+
+	private static List<PointGeometry> readPoints(ByteBuffer buffer, int size) {
+		final List<PointGeometry> points = new ArrayList<PointGeometry>(size);
+		for (int i = 0; i < size; i++) {
+			points.add(new PointGeometry(buffer.getInt() / VALUE_1E6, buffer
+					.getInt() / VALUE_1E6));
+		}
+		return points;
+	}
+
+	/**
+	 * Pack the coordinates of a geometry as latitude/longitude E6 pairs
+	 */
+	private static int[] pack(Geometry geometry) {
+		final List<PointGeometry> points;
+		switch (geometry.getType()) {
+		case POINT:
+			final GeoPoint point = ((PointGeometry) geometry).getCoordinates();
+			return new int[] { point.getLatitudeE6(), point.getLongitudeE6() };
+		case LINE:
+			points = ((LineGeometry) geometry).getPoints();
+			break;
+		case POLYGON:
+			points = ((PolygonGeometry) geometry).getPoints();
+			break;
+		default:
+			throw new IllegalStateException("Unknown geometry type");
+		}
+
+		final int[] packed = new int[points.size() * 2];
+		int i = 0;
+		for (PointGeometry p : points) {
+			final GeoPoint point = p.getCoordinates();
+			packed[i++] = point.getLatitudeE6();
+			packed[i++] = point.getLongitudeE6();
+		}
+		return packed;
+	}
+
+	/**
+	 * Write the north, east, south, west bounds of packed coordinates
+	 */
+	private static void computeBounds(int[] packed, int[] bounds, int offset) {
+		int north = Integer.MIN_VALUE;
+		int east = Integer.MIN_VALUE;
+		int south = Integer.MAX_VALUE;
+		int west = Integer.MAX_VALUE;
+		for (int i = 0; i < packed.length; i += 2) {
+			north = Math.max(north, packed[i]);
+			south = Math.min(south, packed[i]);
+			east = Math.max(east, packed[i + 1]);
+			west = Math.min(west, packed[i + 1]);
+		}
+		bounds[offset] = north;
+		bounds[offset + 1] = east;
+		bounds[offset + 2] = south;
+		bounds[offset + 3] = west;
+	}
+
+	private static boolean intersects(BoundingBoxE6 area, int north, int east,
+			int south, int west) {
+		return south <= area.getLatNorthE6() && north >= area.getLatSouthE6()
+				&& west <= area.getLonEastE6() && east >= area.getLonWestE6();
+	}
+
+	private static boolean contains(BoundingBoxE6 area, int north, int east,
+			int south, int west) {
+		return north <= area.getLatNorthE6() && south >= area.getLatSouthE6()
+				&& east <= area.getLonEastE6() && west >= area.getLonWestE6();
+	}
+
+	private static void writeString(DataOutputStream out, String value)
+			throws IOException {
+		final byte[] bytes = (value == null ? "" : value).getBytes(CHARSET);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer)
+			throws UnsupportedEncodingException {
+		final byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, CHARSET);
+	}
+}
@@ -0,0 +1,701 @@
+package fr.umlv.lastproject.smart.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import android.content.Context;
+import fr.umlv.lastproject.smart.R;
+import fr.umlv.lastproject.smart.browser.utils.FileUtils;
+import fr.umlv.lastproject.smart.database.DbManager;
+import fr.umlv.lastproject.smart.database.FormRowIterator;
+import fr.umlv.lastproject.smart.database.GeometryIterator;
+import fr.umlv.lastproject.smart.database.GeometryRow;
+import fr.umlv.lastproject.smart.database.MissionRecord;
+import fr.umlv.lastproject.smart.layers.GeometryType;
+import fr.umlv.lastproject.smart.layers.PackedCoordinates;
+import fr.umlv.lastproject.smart.utils.SmartException;
+import fr.umlv.lastproject.smart.utils.SmartLogger;
+
+/**
+ * Utils for export in ESRI Shapefile : a shapefile (.shp, .shx, .dbf, .prj and
+ * .cpg) by type of geometry, the attributes are the columns of the form.
+ *
+ * The geometries are read twice from the database : the first pass computes
+ * the headers (number of records, lengths, bounds and widths of the fields),
+ * the second one writes the records in order through buffered channels. Only
+ * the current geometry is in memory, whatever the size of the mission.
+ *
+ */
+public final class ShpExport {
+
+	private static final Logger LOGGER = SmartLogger.getLocator().getLogger();
+	private static final String UNABLE_TO_EXPORT = "Unable to export the mission";
+	private static final String MISSION_CHANGED = "The mission has been modified during the export";
+	private static final String CANCELLED = "The export has been cancelled";
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final String SHP = FileUtils.KML_SHP_TYPE[0];
+	private static final String SHX = ".shx";
+	private static final String DBF = ".dbf";
+	private static final String PRJ = ".prj";
+	private static final String CPG = ".cpg";
+
+	private static final int FILE_CODE = 9994;
+	private static final int VERSION = 1000;
+	private static final int HEADER_LENGTH = 100;
+	private static final int RECORD_HEADER_LENGTH = 8;
+	private static final int SHAPE_NULL = 0;
+	private static final int SHAPE_POINT = 1;
+	private static final int SHAPE_POLYLINE = 3;
+	private static final int SHAPE_POLYGON = 5;
+
+	private static final int DBF_VERSION = 3;
+	private static final int DBF_HEADER_LENGTH = 32;
+	private static final int DBF_FIELD_LENGTH = 32;
+	private static final int DBF_FIELD_NAME_LENGTH = 10;
+	private static final int DBF_MAX_FIELD_WIDTH = 254;
+	private static final byte DBF_HEADER_END = 0x0D;
+	private static final byte DBF_END = 0x1A;
+
+	/**
+	 * The coordinates are longitudes/latitudes in WGS84
+	 */
+	private static final String WGS84 = "GEOGCS[\"GCS_WGS_1984\","
+			+ "DATUM[\"D_WGS_1984\",SPHEROID[\"WGS_1984\",6378137.0,298.257223563]],"
+			+ "PRIMEM[\"Greenwich\",0.0],UNIT[\"Degree\",0.0174532925199433]]";
+	private static final String DBF_CHARSET = "UTF-8";
+
+	/**
+	 * First byte of a character encoded in UTF-8 on 2, 3 or 4 bytes
+	 */
+	private static final int[] UTF8_LEADS = { 0, 0, 0xC0, 0xE0, 0xF0 };
+
+	private ShpExport() {
+	}
+
+	/**
+	 * Export the geometries of a mission in shapefiles named <the name of the
+	 * mission><the type>.shp. The files of a type without geometry are
+	 * deleted, so that an older export is not taken for this one.
+	 *
+	 * @param path
+	 *            of the folder
+	 * @param idMission
+	 * @param context
+	 * @return the paths to the written files
+	 * @throws ShpExportException
+	 */
+	public static List<String> exportMission(String path, long idMission,
+			Context context) throws ShpExportException {
+		DbManager dbm = new DbManager();
+		try {
+			dbm.open(context);
+		} catch (SmartException e) {
+			LOGGER.log(Level.SEVERE, UNABLE_TO_EXPORT);
+			throw new ShpExportException(UNABLE_TO_EXPORT, e);
+		}
+
+		try {
+			MissionRecord mission = dbm.getMission(idMission);
+			String formName = mission.getForm().getTitle();
+			GeometryType[] types = GeometryType.values();
+			Layer[] layers = new Layer[types.length];
+			for (int i = 0; i < types.length; i++) {
+				layers[i] = new Layer(path + mission.getTitle()
+						+ types[i].toString());
+			}
+
+			// First pass : the headers
+			int[] widths = scan(dbm, mission.getId(), formName, layers);
+			boolean empty = true;
+			for (Layer layer : layers) {
+				empty &= layer.count == 0;
+			}
+			if (empty) {
+				throw new ShpExportException(
+						context.getString(R.string.noGeometryInMission));
+			}
+
+			// Second pass : the records
+			boolean written = false;
+			try {
+				write(dbm, mission.getId(), formName, layers, widths);
+				for (Layer layer : layers) {
+					layer.close();
+				}
+				written = true;
+			} finally {
+				// A failed or cancelled export leaves no partial file
+				if (!written) {
+					for (Layer layer : layers) {
+						layer.closeQuietly();
+						layer.delete();
+					}
+				}
+			}
+
+			List<String> files = new ArrayList<String>();
+			for (Layer layer : layers) {
+				if (layer.count > 0) {
+					layer.addFiles(files);
+				} else {
+					layer.delete();
+				}
+			}
+			LOGGER.log(Level.INFO,
+					"Export mission to SHP :" + mission.getTitle());
+			return files;
+
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, UNABLE_TO_EXPORT);
+			throw new ShpExportException(UNABLE_TO_EXPORT, e);
+		} finally {
+			dbm.close();
+		}
+	}
+
+	/**
+	 * Count the records and the lengths of the layers, and compute the widths
+	 * of the fields
+	 *
+	 * @return the widths of the columns of the form
+	 */
+	private static int[] scan(DbManager dbm, long idMission, String formName,
+			Layer[] layers) throws ShpExportException {
+		GeometryIterator geometries = dbm.iterateGeometriesFromMission(idMission);
+		FormRowIterator rows = dbm.iterateFormRowsFromMission(idMission,
+				formName);
+		try {
+			int[] widths = new int[rows.getColumnNames().length];
+			while (geometries.hasNext()) {
+				if (DataExport.isCancelled()) {
+					throw new ShpExportException(CANCELLED);
+				}
+				GeometryRow geometry = geometries.next();
+				if (!rows.moveToNext()) {
+					throw new ShpExportException(MISSION_CHANGED);
+				}
+				layers[geometry.getType().ordinal()].scan(geometry);
+				for (int i = 0; i < widths.length; i++) {
+					widths[i] = Math.max(widths[i],
+							Math.min(DBF_MAX_FIELD_WIDTH,
+									utf8Length(rows.getString(i))));
+				}
+			}
+			for (int i = 0; i < widths.length; i++) {
+				widths[i] = Math.max(1, widths[i]);
+			}
+			return widths;
+		} finally {
+			geometries.close();
+			rows.close();
+		}
+	}
+
+	/**
+	 * Write the files of the layers with records, the sizes must be the ones
+	 * computed by {@link #scan(DbManager, long, String, Layer[])}
+	 */
+	private static void write(DbManager dbm, long idMission, String formName,
+			Layer[] layers, int[] widths) throws IOException,
+			ShpExportException {
+		GeometryIterator geometries = dbm.iterateGeometriesFromMission(idMission);
+		FormRowIterator rows = dbm.iterateFormRowsFromMission(idMission,
+				formName);
+		try {
+			String[] fieldNames = fieldNames(rows.getColumnNames());
+			if (fieldNames.length != widths.length) {
+				throw new ShpExportException(MISSION_CHANGED);
+			}
+			for (int i = 0; i < layers.length; i++) {
+				if (layers[i].count > 0) {
+					layers[i].open(shapeType(GeometryType.values()[i]),
+							fieldNames, widths);
+				}
+			}
+
+			while (geometries.hasNext()) {
+				if (DataExport.isCancelled()) {
+					throw new ShpExportException(CANCELLED);
+				}
+				GeometryRow geometry = geometries.next();
+				Layer layer = layers[geometry.getType().ordinal()];
+				if (!rows.moveToNext() || layer.written == layer.count) {
+					throw new ShpExportException(MISSION_CHANGED);
+				}
+				layer.writeRecord(geometry);
+				layer.writeRow(rows, widths);
+			}
+
+			for (Layer layer : layers) {
+				if (layer.written != layer.count || layer.offset != layer.length) {
+					throw new ShpExportException(MISSION_CHANGED);
+				}
+				if (layer.count > 0) {
+					layer.dbf.reserve(1).put(DBF_END);
+				}
+			}
+		} finally {
+			geometries.close();
+			rows.close();
+		}
+	}
+
+	private static int shapeType(GeometryType type) {
+		switch (type) {
+		case POINT:
+			return SHAPE_POINT;
+		case LINE:
+			return SHAPE_POLYLINE;
+		case POLYGON:
+			return SHAPE_POLYGON;
+		default:
+			throw new IllegalStateException(
+					"The given GeometryType is not supported for the SHP export");
+		}
+	}
+
+	/**
+	 *
+	 * @return the number of points written for a geometry, the ring of a
+	 *         polygon is closed by its first point
+	 */
+	private static int pointCount(GeometryType type, PackedCoordinates points) {
+		int n = points.size();
+		if (type == GeometryType.POLYGON
+				&& n > 0
+				&& (points.getLatitude(0) != points.getLatitude(n - 1) || points
+						.getLongitude(0) != points.getLongitude(n - 1))) {
+			return n + 1;
+		}
+		return n;
+	}
+
+	/**
+	 *
+	 * @return the length in bytes of the content of a record
+	 */
+	private static int contentLength(GeometryType type,
+			PackedCoordinates points) {
+		if (points.size() == 0) {
+			return 4;
+		}
+		if (type == GeometryType.POINT) {
+			return 20;
+		}
+		// type, box, number of parts and points, one part
+		return 4 + 32 + 4 + 4 + 4 + 16 * pointCount(type, points);
+	}
+
+	/**
+	 * The names of the fields are at most 10 ASCII characters and unique
+	 */
+	private static String[] fieldNames(String[] columns) {
+		String[] names = new String[columns.length];
+		Set<String> used = new HashSet<String>();
+		for (int i = 0; i < columns.length; i++) {
+			StringBuilder name = new StringBuilder();
+			for (int j = 0; j < columns[i].length()
+					&& name.length() < DBF_FIELD_NAME_LENGTH; j++) {
+				char c = columns[i].charAt(j);
+				boolean valid = c < 128
+						&& (Character.isLetterOrDigit(c) || c == '_');
+				name.append(valid ? c : '_');
+			}
+			if (name.length() == 0) {
+				name.append("FIELD");
+			}
+			String base = name.toString();
+			for (int k = 1; used.contains(name.toString().toUpperCase(
+					Locale.US)); k++) {
+				String suffix = Integer.toString(k);
+				name.setLength(0);
+				name.append(base, 0,
+						Math.min(base.length(), DBF_FIELD_NAME_LENGTH
+								- suffix.length()));
+				name.append(suffix);
+			}
+			names[i] = name.toString();
+			used.add(names[i].toUpperCase(Locale.US));
+		}
+		return names;
+	}
+
+	private static int codePointLength(int codePoint) {
+		if (codePoint < 0x80) {
+			return 1;
+		} else if (codePoint < 0x800) {
+			return 2;
+		} else if (codePoint < 0x10000) {
+			return 3;
+		}
+		return 4;
+	}
+
+	/**
+	 *
+	 * @return the number of bytes of a value in UTF-8, 0 for null
+	 */
+	private static int utf8Length(String value) {
+		if (value == null) {
+			return 0;
+		}
+		int length = 0;
+		for (int i = 0; i < value.length();) {
+			int codePoint = value.codePointAt(i);
+			length += codePointLength(codePoint);
+			i += Character.charCount(codePoint);
+		}
+		return length;
+	}
+
+	/**
+	 * Write a value in UTF-8 on a field of the given width, cut before the
+	 * first character which does not fit and padded with spaces
+	 */
+	private static void writeField(ChannelWriter out, String value, int width)
+			throws IOException {
+		ByteBuffer buffer = out.reserve(width);
+		int length = 0;
+		for (int i = 0; value != null && i < value.length();) {
+			int codePoint = value.codePointAt(i);
+			if (codePoint >= Character.MIN_SURROGATE
+					&& codePoint <= Character.MAX_SURROGATE) {
+				codePoint = '?';
+			}
+			int bytes = codePointLength(codePoint);
+			if (length + bytes > width) {
+				break;
+			}
+			if (bytes == 1) {
+				buffer.put((byte) codePoint);
+			} else {
+				buffer.put((byte) (UTF8_LEADS[bytes] | (codePoint >> (6 * (bytes - 1)))));
+				for (int shift = 6 * (bytes - 2); shift >= 0; shift -= 6) {
+					buffer.put((byte) (0x80 | ((codePoint >> shift) & 0x3F)));
+				}
+			}
+			length += bytes;
+			i += Character.charCount(value.codePointAt(i));
+		}
+		for (; length < width; length++) {
+			buffer.put((byte) ' ');
+		}
+	}
+
+	/**
+	 * Shapefile of a type of geometry
+	 */
+	private static final class Layer implements Closeable {
+
+		private final String base;
+		private int count;
+		private int length = HEADER_LENGTH;
+		private boolean hasBounds;
+		private double minX;
+		private double minY;
+		private double maxX;
+		private double maxY;
+
+		private int written;
+		private int offset = HEADER_LENGTH;
+		private ChannelWriter shp;
+		private ChannelWriter shx;
+		private ChannelWriter dbf;
+
+		Layer(String base) {
+			this.base = base;
+		}
+
+		/**
+		 * Add a geometry to the sizes and the bounds of the layer
+		 */
+		void scan(GeometryRow geometry) {
+			PackedCoordinates points = geometry.getCoordinates();
+			count++;
+			length += RECORD_HEADER_LENGTH
+					+ contentLength(geometry.getType(), points);
+			for (int i = 0; i < points.size(); i++) {
+				double x = points.getLongitude(i);
+				double y = points.getLatitude(i);
+				if (!hasBounds) {
+					minX = x;
+					maxX = x;
+					minY = y;
+					maxY = y;
+					hasBounds = true;
+				} else {
+					minX = Math.min(minX, x);
+					maxX = Math.max(maxX, x);
+					minY = Math.min(minY, y);
+					maxY = Math.max(maxY, y);
+				}
+			}
+		}
+
+		/**
+		 * Create the files and write their headers
+		 */
+		void open(int shapeType, String[] fieldNames, int[] widths)
+				throws IOException {
+			shp = new ChannelWriter(base + SHP);
+			writeHeader(shp, shapeType, length);
+			shx = new ChannelWriter(base + SHX);
+			writeHeader(shx, shapeType, HEADER_LENGTH + RECORD_HEADER_LENGTH
+					* count);
+			dbf = new ChannelWriter(base + DBF);
+			writeDbfHeader(fieldNames, widths);
+
+			ChannelWriter prj = new ChannelWriter(base + PRJ);
+			try {
+				prj.put(WGS84.getBytes(DBF_CHARSET));
+			} finally {
+				prj.close();
+			}
+			ChannelWriter cpg = new ChannelWriter(base + CPG);
+			try {
+				cpg.put(DBF_CHARSET.getBytes(DBF_CHARSET));
+			} finally {
+				cpg.close();
+			}
+		}
+
+		private void writeHeader(ChannelWriter out, int shapeType,
+				int fileLength) throws IOException {
+			ByteBuffer buffer = out.reserve(HEADER_LENGTH);
+			buffer.order(ByteOrder.BIG_ENDIAN).putInt(FILE_CODE);
+			for (int i = 0; i < 5; i++) {
+				buffer.putInt(0);
+			}
+			// The lengths are in 16 bits words
+			buffer.putInt(fileLength / 2);
+			buffer.order(ByteOrder.LITTLE_ENDIAN).putInt(VERSION);
+			buffer.putInt(shapeType);
+			buffer.putDouble(minX).putDouble(minY);
+			buffer.putDouble(maxX).putDouble(maxY);
+			// No Z nor M
+			for (int i = 0; i < 4; i++) {
+				buffer.putDouble(0);
+			}
+		}
+
+		private void writeDbfHeader(String[] fieldNames, int[] widths)
+				throws IOException {
+			int recordLength = 1;
+			for (int width : widths) {
+				recordLength += width;
+			}
+			Calendar today = Calendar.getInstance();
+			ByteBuffer buffer = dbf.reserve(DBF_HEADER_LENGTH).order(
+					ByteOrder.LITTLE_ENDIAN);
+			buffer.put((byte) DBF_VERSION);
+			buffer.put((byte) (today.get(Calendar.YEAR) - 1900));
+			buffer.put((byte) (today.get(Calendar.MONTH) + 1));
+			buffer.put((byte) today.get(Calendar.DAY_OF_MONTH));
+			buffer.putInt(count);
+			buffer.putShort((short) (DBF_HEADER_LENGTH + DBF_FIELD_LENGTH
+					* fieldNames.length + 1));
+			buffer.putShort((short) recordLength);
+			buffer.put(new byte[20]);
+
+			for (int i = 0; i < fieldNames.length; i++) {
+				buffer = dbf.reserve(DBF_FIELD_LENGTH);
+				byte[] name = fieldNames[i].getBytes(DBF_CHARSET);
+				buffer.put(name);
+				buffer.put(new byte[11 - name.length]);
+				buffer.put((byte) 'C');
+				buffer.put(new byte[4]);
+				buffer.put((byte) widths[i]);
+				buffer.put((byte) 0);
+				buffer.put(new byte[14]);
+			}
+			dbf.reserve(1).put(DBF_HEADER_END);
+		}
+
+		/**
+		 * Write the geometry in the .shp and its offset in the .shx
+		 */
+		void writeRecord(GeometryRow geometry) throws IOException {
+			GeometryType type = geometry.getType();
+			PackedCoordinates points = geometry.getCoordinates();
+			int contentLength = contentLength(type, points);
+			written++;
+
+			shx.reserve(RECORD_HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN)
+					.putInt(offset / 2).putInt(contentLength / 2);
+			shp.reserve(RECORD_HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN)
+					.putInt(written).putInt(contentLength / 2);
+			offset += RECORD_HEADER_LENGTH + contentLength;
+
+			int n = points.size();
+			if (n == 0) {
+				shp.reserve(4).order(ByteOrder.LITTLE_ENDIAN)
+						.putInt(SHAPE_NULL);
+				return;
+			}
+			if (type == GeometryType.POINT) {
+				shp.reserve(20).order(ByteOrder.LITTLE_ENDIAN)
+						.putInt(SHAPE_POINT).putDouble(points.getLongitude(0))
+						.putDouble(points.getLatitude(0));
+				return;
+			}
+
+			double west = points.getLongitude(0);
+			double east = west;
+			double south = points.getLatitude(0);
+			double north = south;
+			double area = 0;
+			for (int i = 0; i < n; i++) {
+				double x = points.getLongitude(i);
+				double y = points.getLatitude(i);
+				west = Math.min(west, x);
+				east = Math.max(east, x);
+				south = Math.min(south, y);
+				north = Math.max(north, y);
+				int j = (i + 1) % n;
+				area += x * points.getLatitude(j) - points.getLongitude(j) * y;
+			}
+			int pointCount = pointCount(type, points);
+			ByteBuffer buffer = shp.reserve(48).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(type == GeometryType.POLYGON ? SHAPE_POLYGON
+					: SHAPE_POLYLINE);
+			buffer.putDouble(west).putDouble(south);
+			buffer.putDouble(east).putDouble(north);
+			buffer.putInt(1).putInt(pointCount).putInt(0);
+
+			// The outer ring of a polygon is clockwise, its area is negative
+			boolean reverse = type == GeometryType.POLYGON && area > 0;
+			for (int k = 0; k < pointCount; k++) {
+				int i = k % n;
+				if (reverse) {
+					i = n - 1 - i;
+				}
+				shp.reserve(16).order(ByteOrder.LITTLE_ENDIAN)
+						.putDouble(points.getLongitude(i))
+						.putDouble(points.getLatitude(i));
+			}
+		}
+
+		/**
+		 * Write the current form row in the .dbf
+		 */
+		void writeRow(FormRowIterator rows, int[] widths) throws IOException {
+			dbf.reserve(1).put((byte) ' ');
+			for (int i = 0; i < widths.length; i++) {
+				writeField(dbf, rows.getString(i), widths[i]);
+			}
+		}
+
+		void addFiles(List<String> files) {
+			files.add(base + SHP);
+			files.add(base + SHX);
+			files.add(base + DBF);
+			files.add(base + PRJ);
+			files.add(base + CPG);
+		}
+
+		void delete() {
+			for (String extension : new String[] { SHP, SHX, DBF, PRJ, CPG }) {
+				new File(base + extension).delete();
+			}
+		}
+
+		/**
+		 * Close the files, each one even if the closing of another fails
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				close(shp);
+			} finally {
+				try {
+					close(shx);
+				} finally {
+					close(dbf);
+				}
+			}
+		}
+
+		/**
+		 * Close the files of a failed export, the errors are only logged
+		 */
+		void closeQuietly() {
+			try {
+				close();
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Unable to close " + base + SHP);
+			}
+		}
+
+		private static void close(ChannelWriter writer) throws IOException {
+			if (writer != null) {
+				writer.close();
+			}
+		}
+	}
+
+	/**
+	 * Sequential writes on a file channel through a direct buffer
+	 */
+	private static final class ChannelWriter implements Closeable {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer
+				.allocateDirect(BUFFER_SIZE);
+
+		ChannelWriter(String fileName) throws IOException {
+			channel = new FileOutputStream(fileName).getChannel();
+		}
+
+		/**
+		 *
+		 * @param bytes
+		 *            at most {@link ShpExport#BUFFER_SIZE}
+		 * @return the buffer, with at least the given number of bytes
+		 *         remaining
+		 */
+		ByteBuffer reserve(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+			return buffer;
+		}
+
+		void put(byte[] bytes) throws IOException {
+			for (int i = 0; i < bytes.length; i += BUFFER_SIZE) {
+				int length = Math.min(BUFFER_SIZE, bytes.length - i);
+				reserve(length).put(bytes, i, length);
+			}
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				flush();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package fr.umlv.lastproject.smart.data;
+
+/**
+ * The exception class for the Shapefile export.
+ *
+ */
+public class ShpExportException extends Exception {
+
+	private static final long serialVersionUID = -3541976582245738135L;
+
+	public ShpExportException() {
+		super();
+	}
+
+	public ShpExportException(String detailMessage, Throwable throwable) {
+		super(detailMessage, throwable);
+	}
+
+	public ShpExportException(String detailMessage) {
+		super(detailMessage);
+	}
+
+	public ShpExportException(Throwable throwable) {
+		super(throwable);
+	}
+}
@@ -1,5 +1,7 @@
 package fr.umlv.lastproject.smart.data;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,6 +18,9 @@ import fr.umlv.lastproject.smart.layers.LineGeometry;
 import fr.umlv.lastproject.smart.layers.PointGeometry;
 import fr.umlv.lastproject.smart.layers.PointSymbology;
 import fr.umlv.lastproject.smart.layers.PolygonGeometry;
+import fr.umlv.lastproject.smart.projection.CoordinateSystems;
+import fr.umlv.lastproject.smart.projection.CoordinateTransform;
+import fr.umlv.lastproject.smart.projection.GeographicTransform;
 import fr.umlv.lastproject.smart.utils.SmartException;
 import fr.umlv.lastproject.smart.utils.SmartLogger;
 
@@ -26,7 +31,36 @@ public final class ShpImport {
 	private ShpImport() {
 	}
 
+	/**
+	 * Import a shapefile, the coordinates are reprojected to WGS84 with the
+	 * coordinate system of the .prj file. Without .prj file, the coordinates
+	 * are considered as WGS84 longitude/latitude.
+	 * 
+	 * @param file
+	 * @param context
+	 * @return the layer, or null if the shapefile can't be imported
+	 * @throws SmartException
+	 */
 	public static GeometryLayer getLayerFromShp(String file, Context context) throws SmartException{
+		return getLayerFromShp(file, context, readPrj(file));
+	}
+
+	/**
+	 * Import a shapefile whose coordinates are in the given coordinate system
+	 * 
+	 * @param file
+	 * @param context
+	 * @param transform
+	 *            from the coordinate system of the shapefile to WGS84, or null
+	 *            if the coordinates are WGS84 longitude/latitude
+	 * @return the layer, or null if the shapefile can't be imported
+	 * @throws SmartException
+	 */
+	public static GeometryLayer getLayerFromShp(String file, Context context,
+			CoordinateTransform transform) throws SmartException {
+		if (transform == GeographicTransform.WGS84) {
+			transform = null;
+		}
 		try {
 			
 			
@@ -47,13 +81,13 @@ public final class ShpImport {
 			LOGGER.log(Level.SEVERE, "Import shape file :" + type.toString());
 			switch (type) {
 			case Point: {
-				return getLayerFromPointShp(shp, context, fn);
+				return getLayerFromPointShp(shp, context, fn, transform);
 			}
 			case PolyLine: {
-				return getLayerFromPolylineShp(shp, context, fn);
+				return getLayerFromPolylineShp(shp, context, fn, transform);
 			}
 			case Polygon: {
-				return getLayerFromPolygonShp(shp, context, fn);
+				return getLayerFromPolygonShp(shp, context, fn, transform);
 			}
 			default:
 				return null;
@@ -66,8 +100,61 @@ public final class ShpImport {
 		return null;
 	}
 
+	/**
+	 * 
+	 * @param file
+	 *            the .shp file
+	 * @return the .prj file of the shapefile, which may not exist
+	 */
+	static File getPrjFile(String file) {
+		final int extension = file.lastIndexOf('.');
+		final String base = extension == -1 ? file : file.substring(0,
+				extension);
+		final File prj = new File(base + ".prj");
+		if (!prj.exists() && new File(base + ".PRJ").exists()) {
+			return new File(base + ".PRJ");
+		}
+		return prj;
+	}
+
+	private static CoordinateTransform readPrj(String file) {
+		final File prj = getPrjFile(file);
+		if (!prj.exists()) {
+			return null;
+		}
+		try {
+			final CoordinateTransform transform = CoordinateSystems
+					.fromPrj(prj);
+			if (transform == null) {
+				LOGGER.log(Level.WARNING, "Coordinate system not supported : "
+						+ prj.getName());
+			}
+			return transform;
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Unable to read " + prj.getName());
+			return null;
+		}
+	}
+
+	/**
+	 * Pack the x, y coordinates of a shape and reproject them to WGS84
+	 * longitude/latitude
+	 */
+	private static double[] toLonLat(double[][] points, int count,
+			CoordinateTransform transform) {
+		final double[] xy = new double[count * 2];
+		for (int j = 0; j < count; j++) {
+			xy[j * 2] = points[j][0];
+			xy[j * 2 + 1] = points[j][1];
+		}
+		if (transform != null) {
+			transform.toWgs84(xy, count);
+		}
+		return xy;
+	}
+
 	private static GeometryLayer getLayerFromPolygonShp(ShapeFile shp,
-			Context context, String fileName) {
+			Context context, String fileName, CoordinateTransform transform) {
 
 		GeometryLayer gl = new GeometryLayer(context);
 
@@ -78,10 +165,11 @@ public final class ShpImport {
 			PolygonGeometry p = new PolygonGeometry();
 
 			ShpPolygon polygon = shp.getSHP_shape(i);
-			double[][] points = polygon.getPoints();
+			int count = polygon.getNumberOfPoints();
+			double[] points = toLonLat(polygon.getPoints(), count, transform);
 
-			for (int j = 0; j < polygon.getNumberOfPoints(); j++) {
-				p.addPoint(new PointGeometry(points[j][1], points[j][0]));
+			for (int j = 0; j < count; j++) {
+				p.addPoint(new PointGeometry(points[j * 2 + 1], points[j * 2]));
 
 			}
 			gl.addGeometry(p);
@@ -91,7 +179,7 @@ public final class ShpImport {
 	}
 
 	private static GeometryLayer getLayerFromPointShp(ShapeFile shp,
-			Context context, String fileName) {
+			Context context, String fileName, CoordinateTransform transform) {
 
 		GeometryLayer gl = new GeometryLayer(context);
 
@@ -99,19 +187,25 @@ public final class ShpImport {
 		gl.setName(fileName);
 		gl.setSymbology(new PointSymbology());
 
-		for (int i = 0; i < shp.getSHP_shapeCount(); i++) {
+		// all the points are reprojected at once
+		int count = shp.getSHP_shapeCount();
+		double[][] coordinates = new double[count][];
+		for (int i = 0; i < count; i++) {
 			ShpPoint point = shp.getSHP_shape(i);
-			double lat = point.getPoint()[1];
-			double lon = point.getPoint()[0];
+			coordinates[i] = point.getPoint();
+		}
+		double[] points = toLonLat(coordinates, count, transform);
+
+		for (int i = 0; i < count; i++) {
 			gl.addGeometry(new fr.umlv.lastproject.smart.layers.PointGeometry(
-					lat, lon));
+					points[i * 2 + 1], points[i * 2]));
 		}
 
 		return gl;
 	}
 
 	private static GeometryLayer getLayerFromPolylineShp(ShapeFile shp,
-			Context context, String fileName) {
+			Context context, String fileName, CoordinateTransform transform) {
 
 		GeometryLayer gl = new GeometryLayer(context);
 		gl.setType(GeometryType.LINE);
@@ -120,10 +214,11 @@ public final class ShpImport {
 		for (int i = 0; i < shp.getSHP_shapeCount(); i++) {
 			LineGeometry line = new LineGeometry();
 			ShpPolyLine shpline = shp.getSHP_shape(i);
-			double[][] points = shpline.getPoints();
+			int count = shpline.getNumberOfPoints();
+			double[] points = toLonLat(shpline.getPoints(), count, transform);
 
-			for (int j = 0; j < shpline.getNumberOfPoints(); j++) {
-				line.addPoint(new PointGeometry(points[j][1], points[j][0]));
+			for (int j = 0; j < count; j++) {
+				line.addPoint(new PointGeometry(points[j * 2 + 1], points[j * 2]));
 			}
 			gl.addGeometry(line);
 		}
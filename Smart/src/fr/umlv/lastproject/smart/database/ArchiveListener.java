@@ -0,0 +1,29 @@
+package fr.umlv.lastproject.smart.database;
+
+import java.io.File;
+
+import fr.umlv.lastproject.smart.utils.SmartException;
+
+/**
+ * Listener of an archive submitted to the {@link SurveyWriteQueue}. The
+ * methods are called on the UI thread.
+ *
+ */
+public interface ArchiveListener {
+
+	/**
+	 * The mission is archived and deleted from the database
+	 *
+	 * @param archive
+	 *            the file of the archive
+	 */
+	void missionArchived(File archive);
+
+	/**
+	 * The mission can't be archived, it is still in the database
+	 *
+	 * @param e
+	 *            the cause
+	 */
+	void archiveFailed(SmartException e);
+}
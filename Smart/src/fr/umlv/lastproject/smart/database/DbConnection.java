@@ -0,0 +1,108 @@
+package fr.umlv.lastproject.smart.database;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.os.Build;
+import fr.umlv.lastproject.smart.utils.SmartConstants;
+import fr.umlv.lastproject.smart.utils.SmartException;
+import fr.umlv.lastproject.smart.utils.SmartLogger;
+
+/**
+ * Connection to the database shared by the whole application. The database is
+ * opened and upgraded (see {@link DbMigrations}) once, then every
+ * {@link DbManager} works on the same connection. The write-ahead log is
+ * enabled when the device supports it, so the exports can read while a survey
+ * is saved.
+ *
+ */
+public final class DbConnection {
+
+	private static final Logger LOGGER = SmartLogger.getLocator().getLogger();
+
+	private static DbConnection connection;
+
+	private SQLiteDatabase db;
+	private boolean rtree;
+
+	private DbConnection() {
+	}
+
+	/**
+	 *
+	 * @return the unique instance of the connection
+	 */
+	public static synchronized DbConnection getInstance() {
+		if (connection == null) {
+			connection = new DbConnection();
+		}
+		return connection;
+	}
+
+	/**
+	 * Open the database on the first call and create it if it's not exist
+	 *
+	 * @return an access to database (read and write mode)
+	 * @throws SmartException
+	 */
+	public synchronized SQLiteDatabase getDatabase() throws SmartException {
+		if (db != null && db.isOpen()) {
+			return db;
+		}
+
+		new File(SmartConstants.APP_PATH).mkdir();
+		new File(SmartConstants.BDD_PATH).mkdir();
+
+		SQLiteDatabase database = null;
+		try {
+			database = SQLiteDatabase.openOrCreateDatabase(
+					SmartConstants.BDD_PATH + DbManager.DB_NAME, null);
+			DbMigrations.migrate(database);
+			rtree = DbMigrations.hasTable(database,
+					DbManager.TABLE_GEOMETRIES_RTREE);
+			enableWriteAheadLogging(database);
+			// a committed survey must survive a power loss, not only a crash
+			database.execSQL("PRAGMA synchronous = FULL;");
+		} catch (SQLiteException e) {
+			if (database != null) {
+				database.close();
+			}
+			LOGGER.log(Level.SEVERE, "Open database error : " + e.getMessage());
+			throw new SmartException(e, "Open database error");
+		}
+
+		db = database;
+		LOGGER.log(Level.INFO, "Database opened");
+		return db;
+	}
+
+	private static void enableWriteAheadLogging(SQLiteDatabase database) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+				&& !database.enableWriteAheadLogging()) {
+			LOGGER.log(Level.WARNING, "Write-ahead logging not enabled");
+		}
+	}
+
+	/**
+	 *
+	 * @return true if the database has the R*Tree index of the geometries,
+	 *         valid once the database is opened
+	 */
+	public synchronized boolean hasRtree() {
+		return rtree;
+	}
+
+	/**
+	 * Close the shared connection, the next {@link #getDatabase()} opens it
+	 * again
+	 */
+	public synchronized void close() {
+		if (db != null) {
+			db.close();
+			db = null;
+		}
+	}
+}
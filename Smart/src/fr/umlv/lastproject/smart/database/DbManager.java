@@ -1,12 +1,17 @@
 package fr.umlv.lastproject.smart.database;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,8 +20,10 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteException;
-import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
 import android.util.Log;
 import fr.umlv.lastproject.smart.form.BooleanField;
 import fr.umlv.lastproject.smart.form.Field;
@@ -30,7 +37,8 @@ import fr.umlv.lastproject.smart.form.TextField;
 import fr.umlv.lastproject.smart.utils.SmartConstants;
 import fr.umlv.lastproject.smart.utils.SmartException;
 import fr.umlv.lastproject.smart.utils.SmartLogger;
-import fr.umlv.lastproject.smart.layers.GeometryType;;
+import fr.umlv.lastproject.smart.layers.GeometryType;
+import fr.umlv.lastproject.smart.layers.PackedCoordinates;
 
 /**
  * Class to manage the database and the static tables (missions, geometries,
@@ -60,25 +68,53 @@ public class DbManager {
 
 	public static final String TABLE_GEOMETRIES = "geometries";
 	private static final String GEOMETRIES_COL_ID = "id";
-	private static final int GEOMETRIES_NUM_COL_ID = 0;
+	static final int GEOMETRIES_NUM_COL_ID = 0;
 	private static final String GEOMETRIES_COL_TYPE = "type";
-	private static final int GEOMETRIES_NUM_COL_TYPE = 1;
+	static final int GEOMETRIES_NUM_COL_TYPE = 1;
 	private static final String GEOMETRIES_COL_ID_FORM_RECORD = "idFormRecord";
-	private static final int GEOMETRIES_NUM_COL_ID_FORM_RECORD = 2;
+	static final int GEOMETRIES_NUM_COL_ID_FORM_RECORD = 2;
 	private static final String GEOMETRIES_COL_ID_MISSION = "idMission";
-	private static final int GEOMETRIES_NUM_COL_ID_MISSION = 3;
+	static final int GEOMETRIES_NUM_COL_ID_MISSION = 3;
+	private static final String GEOMETRIES_COL_MIN_LAT = "minLat";
+	private static final String GEOMETRIES_COL_MIN_LON = "minLon";
+	private static final String GEOMETRIES_COL_MAX_LAT = "maxLat";
+	private static final String GEOMETRIES_COL_MAX_LON = "maxLon";
+	private static final String GEOMETRIES_COL_VERTEX_COUNT = "vertexCount";
+	private static final String GEOMETRIES_COL_WKB = "wkb";
+	static final int GEOMETRIES_NUM_COL_WKB = 4;
+
+	public static final String TABLE_GEOMETRIES_RTREE = "geometries_rtree";
+
+	public static final String TABLE_MISSION_STATS = "mission_stats";
+	private static final String MISSION_STATS_COL_ID_MISSION = "idMission";
+	private static final String MISSION_STATS_COL_POINTS = "points";
+	private static final String MISSION_STATS_COL_LINES = "lines";
+	private static final String MISSION_STATS_COL_POLYGONS = "polygons";
+	private static final String MISSION_STATS_COL_VERTICES = "vertices";
+	private static final String MISSION_STATS_COL_LENGTH = "length";
+	private static final String MISSION_STATS_COL_AREA = "area";
+	private static final String[] MISSION_STATS_COLUMNS = {
+			MISSION_STATS_COL_ID_MISSION, MISSION_STATS_COL_POINTS,
+			MISSION_STATS_COL_LINES, MISSION_STATS_COL_POLYGONS,
+			MISSION_STATS_COL_VERTICES, MISSION_STATS_COL_LENGTH,
+			MISSION_STATS_COL_AREA, GEOMETRIES_COL_MIN_LAT,
+			GEOMETRIES_COL_MIN_LON, GEOMETRIES_COL_MAX_LAT,
+			GEOMETRIES_COL_MAX_LON };
+
+	public static final String TABLE_FORM_SEARCH = "form_search";
+	private static final String FORM_SEARCH_COL_FORM = "form";
+	private static final String FORM_SEARCH_COL_ID_FORM_RECORD = "idFormRecord";
+	private static final String FORM_SEARCH_COL_CONTENT = "content";
 
 	public static final String TABLE_POINTS = "points";
-	private static final String POINTS_COL_ID = "id";
-	private static final int POINTS_NUM_COL_ID = 0;
 	private static final String POINTS_COL_X = "x";
-	private static final int POINTS_NUM_COL_X = 1;
 	private static final String POINTS_COL_Y = "y";
-	private static final int POINTS_NUM_COL_Y = 2;
 	private static final String POINTS_COL_Z = "z";
-	private static final int POINTS_NUM_COL_Z = 3;
 	private static final String POINTS_COL_ID_GEOMETRY = "idGeometry";
-	private static final int POINTS_NUM_COL_ID_GEOMETRY = 4;
+
+	static final String[] GEOMETRIES_COLUMNS = { GEOMETRIES_COL_ID,
+			GEOMETRIES_COL_TYPE, GEOMETRIES_COL_ID_FORM_RECORD,
+			GEOMETRIES_COL_ID_MISSION, GEOMETRIES_COL_WKB };
 
 	private static final String TEXT = "TEXT";
 	private static final String SELECT = "SELECT ";
@@ -89,106 +125,93 @@ public class DbManager {
 
 
 	private SQLiteDatabase mDb;
-
-	private static final String CREATE_TABLE_MISSIONS = "CREATE TABLE IF NOT EXISTS missions ( "
-			+ "id INTEGER PRIMARY KEY,"
-			+ "title TEXT UNIQUE,"
-			+ "status INTEGER NOT NULL,"
-			+ "date TEXT NOT NULL, "
-			+ "form TEXT NOT NULL);";
-
-	private static final String CREATE_TABLE_GEOMETRIES = "CREATE TABLE IF NOT EXISTS geometries ("
-			+ "id INTEGER PRIMARY KEY, "
-			+ "type INTEGER NOT NULL, "
-			+ GEOMETRIES_COL_ID_FORM_RECORD
-			+ " INTEGER NOT NULL, "
-			+ GEOMETRIES_COL_ID_MISSION
-			+ " INTEGER NOT NULL, "
-			+ "FOREIGN KEY ("
-			+ GEOMETRIES_COL_ID_MISSION
-			+ ") REFERENCES "
-			+ TABLE_MISSIONS + "(" + MISSIONS_COL_ID + "));";
-
-	private static final String CREATE_TABLE_POINTS = "CREATE TABLE IF NOT EXISTS points ( "
-			+ "id INTEGER PRIMARY KEY,"
-			+ "x REAL NOT NULL,"
-			+ "y REAL NOT NULL,"
-			+ "z REAL,"
-			+ "idGeometry INTEGER NOT NULL,"
-			+ "FOREIGN KEY (idGeometry) REFERENCES "
-			+ TABLE_GEOMETRIES
-			+ "("
-			+ GEOMETRIES_COL_ID + "));";
-
-	/**
-	 * Create the database and the statics tables
-	 * 
-	 * @author Maelle Cabot
-	 * 
-	 */
-	private final class DbHelper extends SQLiteOpenHelper {
-
-		public DbHelper(Context context) {
-			super(context, DB_NAME, null, 1);
-			File folder = new File(SmartConstants.APP_PATH);
-			folder.mkdir();
-
-			File ssfolder = new File(SmartConstants.BDD_PATH);
-			ssfolder.mkdir();
-
-		}
-
-		@Override
-		public void onCreate(SQLiteDatabase db) {
-		}
-
-		@Override
-		public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-		}
-
-		/**
-		 * Open the database and create it if it's not exist
-		 * 
-		 * @return an access to database (read and write mode)
-		 * @throws SmartException
-		 */
-		public SQLiteDatabase openDataBase() throws SmartException {
-			SQLiteDatabase dbRetour = null;
-
-			try {
-				dbRetour = SQLiteDatabase.openOrCreateDatabase(SmartConstants.BDD_PATH
-						+ DB_NAME, null);
-				dbRetour.execSQL(CREATE_TABLE_MISSIONS);
-				dbRetour.execSQL(CREATE_TABLE_GEOMETRIES);
-				dbRetour.execSQL(CREATE_TABLE_POINTS);
-			} catch (SQLiteException e) {
-				dbRetour.close();
-				LOGGER.log(Level.SEVERE, "Open database error : "+e.getMessage());
-				throw new SmartException(e, "Open database error");
-			}
-
-			return dbRetour;
-		}
-	}
+	private StatementCache mStatements;
+	private boolean mArchive;
+	private boolean mRtree;
+	private RecordCache.Removals mRemovals = new RecordCache.Removals();
+
+	private static final String SELECT_MISSION_ID = SELECT + MISSIONS_COL_ID
+			+ FROM + TABLE_MISSIONS + WHERE + MISSIONS_COL_TITLE + " = ?;";
+
+	private static final String COUNT_MISSIONS_BY_TITLE = SELECT + "COUNT(*)"
+			+ FROM + TABLE_MISSIONS + WHERE + MISSIONS_COL_TITLE + " = ?;";
+
+	private static final String SELECT_ID_FORM_RECORD = SELECT
+			+ GEOMETRIES_COL_ID_FORM_RECORD + FROM + TABLE_GEOMETRIES + WHERE
+			+ GEOMETRIES_COL_ID + " = ?;";
+
+	private static final String SELECT_GEOMETRY = SELECT
+			+ TextUtils.join(",", GEOMETRIES_COLUMNS) + FROM + TABLE_GEOMETRIES
+			+ WHERE + GEOMETRIES_COL_ID + " = ?;";
+
+	private static final String ADD_MISSION_STATS = "UPDATE "
+			+ TABLE_MISSION_STATS + " SET " + MISSION_STATS_COL_POINTS + " = "
+			+ MISSION_STATS_COL_POINTS + " + ?, " + MISSION_STATS_COL_LINES
+			+ " = " + MISSION_STATS_COL_LINES + " + ?, "
+			+ MISSION_STATS_COL_POLYGONS + " = " + MISSION_STATS_COL_POLYGONS
+			+ " + ?, " + MISSION_STATS_COL_VERTICES + " = "
+			+ MISSION_STATS_COL_VERTICES + " + ?, " + MISSION_STATS_COL_LENGTH
+			+ " = " + MISSION_STATS_COL_LENGTH + " + ?, "
+			+ MISSION_STATS_COL_AREA + " = " + MISSION_STATS_COL_AREA
+			+ " + ? WHERE " + MISSION_STATS_COL_ID_MISSION + " = ?;";
 
 	/**
-	 * Open the database and instanciate the point of entry
+	 * Get the database shared by the application, see {@link DbConnection}
 	 * 
 	 * @param context
 	 *            of application
 	 * @throws SmartException
 	 */
 	public void open(Context context) throws SmartException {
-		DbHelper mDbHelper = new DbHelper(context);
-		mDb = mDbHelper.openDataBase();
+		DbConnection connection = DbConnection.getInstance();
+		mDb = connection.getDatabase();
+		mRtree = connection.hasRtree();
+		mStatements = new StatementCache(mDb);
+	}
 
+	/**
+	 * Open an archive made by {@link #archiveMission(long)} in read only mode
+	 * instead of the shared database : the readers of this manager then read
+	 * the archived mission.
+	 * 
+	 * @param archive
+	 *            file of the archive
+	 * @throws SmartException
+	 *             if the file can't be opened or is newer than the application
+	 */
+	public void openArchive(File archive) throws SmartException {
+		SQLiteDatabase db;
+		try {
+			db = SQLiteDatabase.openDatabase(archive.getPath(), null,
+					SQLiteDatabase.OPEN_READONLY);
+		} catch (SQLiteException e) {
+			LOGGER.log(Level.SEVERE, "Open archive error : " + e.getMessage());
+			throw new SmartException(e, "Open archive error");
+		}
+		if (db.getVersion() > DbMigrations.VERSION) {
+			db.close();
+			throw new SmartException("Archive " + archive.getName()
+					+ " made by a newer version");
+		}
+		mDb = db;
+		mArchive = true;
+		mRtree = false;
+		mStatements = new StatementCache(mDb);
 	}
 
 	/**
-	 * Close the database
+	 * Release the statements of this manager, the shared database stays open
+	 * but an archive is closed
 	 */
 	public void close() {
-		mDb.close();
+		if (mStatements != null) {
+			mStatements.close();
+			mStatements = null;
+		}
+		if (mArchive) {
+			mDb.close();
+			mArchive = false;
+		}
 	}
 
 	/**
@@ -200,9 +223,8 @@ public class DbManager {
 	 * @throws SmartException
 	 */
 	public int createTableForm(Form f) throws SmartException {
-		SQLiteDatabase db = null;
 		StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS ");
-		sql.append(f.getTitle());
+		sql.append(quote(f.getTitle()));
 		sql.append("( id INTEGER PRIMARY KEY, date TEXT NOT NULL, ");
 
 		List<Field> listFields = f.getFieldsList();
@@ -250,11 +272,8 @@ public class DbManager {
 		Log.d("Cmd SQL", sql.toString());
 
 		try {
-			db = SQLiteDatabase.openDatabase(SmartConstants.BDD_PATH + DB_NAME, null,
-					SQLiteDatabase.OPEN_READWRITE);
-			db.execSQL(sql.toString());
+			mDb.execSQL(sql.toString());
 			LOGGER.log(Level.INFO,"Table form "+f.getTitle()+" created successfull");
-			db.close();
 		} catch (SQLException e) {
 			LOGGER.log(Level.SEVERE,"Table form "+f.getTitle()+" not created "+e.getMessage());
 			throw new SmartException(e, "Database Error");
@@ -317,13 +336,19 @@ public class DbManager {
 				"dd/MM/yyyy HH:mm:ss", Locale.FRENCH);
 		values.put("date", dateFormat.format(new Date()));
 
+		mDb.beginTransaction();
 		try {
-			long id = mDb.insertOrThrow(formRecord.getName(), null, values);
+			long id = mDb.insertOrThrow(quote(formRecord.getName()), null,
+					values);
+			indexFormRecord(formRecord, id);
+			mDb.setTransactionSuccessful();
 			LOGGER.log(Level.INFO,"Form record inserted in database");
 			return id;
 		} catch (SQLException e) {
 			LOGGER.log(Level.SEVERE, "Form record insert database error "+e.getMessage());
 			throw new SmartException(e, INSERT_ERROR );
+		} finally {
+			mDb.endTransaction();
 		}
 	}
 
@@ -377,10 +402,138 @@ public class DbManager {
 			}
 		}
 
-		mDb.update(nameTableForm, values, "id=" + idForm, null);
+		mDb.beginTransaction();
+		try {
+			mDb.update(quote(nameTableForm), values, "id=" + idForm, null);
+			unindexFormRecord(nameTableForm, idForm);
+			indexFormRecord(formRecord, idForm);
+			mDb.setTransactionSuccessful();
+		} finally {
+			mDb.endTransaction();
+			mRemovals.addFormRecord(nameTableForm, idForm);
+			removeChangedRecords();
+		}
 		LOGGER.log(Level.INFO, "Database update successfull");
 	}
 
+	/**
+	 * Add the text and list fields of a form record in the table
+	 * "form_search"
+	 * 
+	 * @param formRecord
+	 * @param idFormRecord
+	 *            id of the row of the form record
+	 */
+	private void indexFormRecord(FormRecord formRecord, long idFormRecord) {
+		StringBuilder content = new StringBuilder();
+		for (FieldRecord field : formRecord.getFields()) {
+			String value = null;
+			switch (field.getField().getType()) {
+			case TEXT:
+				value = ((TextFieldRecord) field).getValue();
+				break;
+
+			case LIST:
+				value = ((ListFieldRecord) field).getValue();
+				break;
+
+			default:
+				break;
+			}
+			if (value != null && value.length() > 0) {
+				content.append(value).append('\n');
+			}
+		}
+		if (content.length() == 0) {
+			return;
+		}
+
+		ContentValues values = new ContentValues();
+		values.put(FORM_SEARCH_COL_FORM, formRecord.getName());
+		values.put(FORM_SEARCH_COL_ID_FORM_RECORD, idFormRecord);
+		values.put(FORM_SEARCH_COL_CONTENT, content.toString());
+		mDb.insert(TABLE_FORM_SEARCH, null, values);
+	}
+
+	/**
+	 * Remove a form record from the table "form_search", the row is found
+	 * with the full-text index of the column "idFormRecord"
+	 * 
+	 * @param formName
+	 * @param idFormRecord
+	 */
+	private void unindexFormRecord(String formName, long idFormRecord) {
+		mDb.execSQL("DELETE" + FROM + TABLE_FORM_SEARCH + WHERE
+				+ "docid IN (" + SELECT + "docid" + FROM + TABLE_FORM_SEARCH
+				+ WHERE + TABLE_FORM_SEARCH + " MATCH ? AND "
+				+ FORM_SEARCH_COL_FORM + " = ?)", new Object[] {
+				FORM_SEARCH_COL_ID_FORM_RECORD + ":" + idFormRecord, formName });
+	}
+
+	/**
+	 * Search the surveys of all the missions whose text or list fields
+	 * contain the words of a text. The words are searched as prefixes, so
+	 * "roo" finds "roof".
+	 * 
+	 * @param text
+	 *            words separated by spaces
+	 * @return the ids of the geometries, the ones with the most occurrences of
+	 *         the words first
+	 */
+	public List<Long> searchGeometries(String text) {
+		String match = toMatchQuery(text);
+		if (match.length() == 0) {
+			return new ArrayList<Long>();
+		}
+
+		Cursor c = mDb.rawQuery(SELECT + "g." + GEOMETRIES_COL_ID
+				+ ", offsets(" + TABLE_FORM_SEARCH + ")" + FROM
+				+ TABLE_FORM_SEARCH + " s JOIN " + TABLE_MISSIONS + " m ON m."
+				+ MISSIONS_COL_FORM + " = s." + FORM_SEARCH_COL_FORM + " JOIN "
+				+ TABLE_GEOMETRIES + " g ON g." + GEOMETRIES_COL_ID_MISSION
+				+ " = m." + MISSIONS_COL_ID + " AND g."
+				+ GEOMETRIES_COL_ID_FORM_RECORD + " = s."
+				+ FORM_SEARCH_COL_ID_FORM_RECORD + WHERE + "s."
+				+ FORM_SEARCH_COL_CONTENT + " MATCH ?", new String[] { match });
+
+		final Map<Long, Integer> ranks = new HashMap<Long, Integer>();
+		List<Long> ids = new ArrayList<Long>(c.getCount());
+		while (c.moveToNext()) {
+			// offsets() gives 4 integers by occurrence of a word
+			ranks.put(c.getLong(0), c.getString(1).split(" ").length / 4);
+			ids.add(c.getLong(0));
+		}
+		c.close();
+
+		Collections.sort(ids, new Comparator<Long>() {
+			@Override
+			public int compare(Long id1, Long id2) {
+				return ranks.get(id2).compareTo(ranks.get(id1));
+			}
+		});
+		return ids;
+	}
+
+	/**
+	 * 
+	 * @param text
+	 *            typed by the user
+	 * @return the full-text query searching all the words of the text as
+	 *         prefixes, without the operators of the query syntax
+	 */
+	private static String toMatchQuery(String text) {
+		StringBuilder match = new StringBuilder();
+		for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+			if (word.length() > 0) {
+				if (match.length() > 0) {
+					match.append(' ');
+				}
+				match.append(word).append('*');
+			}
+		}
+		return match.toString();
+	}
+
 	/**
 	 * Insert a new mission in the table "missions"
 	 * 
@@ -422,44 +575,232 @@ public class DbManager {
 	 * @param idMission
 	 */
 	public void deleteMission(long idMission) {
+		deleteMissions(Collections.singletonList(idMission));
+	}
+
+	/**
+	 * Delete missions and the geometries, points and form records associated,
+	 * in one transaction : nothing is deleted if a deletion fails
+	 * 
+	 * @param idMissions
+	 */
+	public void deleteMissions(List<Long> idMissions) {
+		mDb.beginTransaction();
+		try {
+			for (long idMission : idMissions) {
+				deleteMissionRows(idMission);
+			}
+			mDb.setTransactionSuccessful();
+		} finally {
+			mDb.endTransaction();
+			mRemovals.addAll();
+			removeChangedRecords();
+		}
+		LOGGER.log(Level.INFO, idMissions.size() + " mission(s) deleted");
+	}
+
+	/**
+	 * Delete the rows of a mission with one statement by table, the children
+	 * before their parent
+	 */
+	private void deleteMissionRows(long idMission) {
 		Cursor cNomForm = mDb.rawQuery(SELECT + MISSIONS_COL_FORM + FROM
 				+ TABLE_MISSIONS + WHERE + MISSIONS_COL_ID + "=" + idMission,
 				null);
-		cNomForm.moveToNext();
-		String nomForm = cNomForm.getString(0);
+		String nomForm = cNomForm.moveToNext() ? cNomForm.getString(0) : null;
+		cNomForm.close();
+		if (nomForm == null) {
+			return;
+		}
 
-		Cursor cGeometries = mDb.rawQuery(SELECT + GEOMETRIES_COL_ID + ","
+		Object[] args = new Object[] { idMission };
+		String geometriesOfMission = SELECT + GEOMETRIES_COL_ID + FROM
+				+ TABLE_GEOMETRIES + WHERE + GEOMETRIES_COL_ID_MISSION + "=?";
+
+		mDb.execSQL("DELETE" + FROM + quote(nomForm) + WHERE + "id IN ("
+				+ SELECT + GEOMETRIES_COL_ID_FORM_RECORD + FROM
+				+ TABLE_GEOMETRIES + WHERE + GEOMETRIES_COL_ID_MISSION
+				+ "=?)", args);
+		if (mRtree) {
+			mDb.execSQL("DELETE" + FROM + TABLE_GEOMETRIES_RTREE + WHERE
+					+ GEOMETRIES_COL_ID + " IN (" + geometriesOfMission + ")",
+					args);
+		}
+		mDb.execSQL("DELETE" + FROM + TABLE_FORM_SEARCH + WHERE
+				+ FORM_SEARCH_COL_FORM + " = ? AND "
+				+ FORM_SEARCH_COL_ID_FORM_RECORD + " IN (" + SELECT
 				+ GEOMETRIES_COL_ID_FORM_RECORD + FROM + TABLE_GEOMETRIES
-				+ WHERE + GEOMETRIES_COL_ID_MISSION + "=" + idMission, null);
+				+ WHERE + GEOMETRIES_COL_ID_MISSION + "=?)", new Object[] {
+				nomForm, idMission });
+		mDb.execSQL("DELETE" + FROM + TABLE_POINTS + WHERE
+				+ POINTS_COL_ID_GEOMETRY + " IN (" + geometriesOfMission + ")",
+				args);
+		mDb.execSQL("DELETE" + FROM + TABLE_GEOMETRIES + WHERE
+				+ GEOMETRIES_COL_ID_MISSION + "=?", args);
+		mDb.execSQL("DELETE" + FROM + TABLE_MISSION_STATS + WHERE
+				+ MISSION_STATS_COL_ID_MISSION + "=?", args);
+		mDb.execSQL("DELETE" + FROM + TABLE_MISSIONS + WHERE + MISSIONS_COL_ID
+				+ "=?", args);
+	}
 
-		List<Long> idGeometries = new LinkedList<Long>();
-		List<Long> idForms = new LinkedList<Long>();
-		while (cGeometries.moveToNext()) {
-			idGeometries.add(cGeometries.getLong(0));
-			idForms.add(cGeometries.getLong(1));
+	/**
+	 * Move a stopped mission to its own database file in
+	 * {@link SmartConstants#ARCHIVE_PATH}, then delete it from the shared
+	 * database and vacuum it to give back the space. The archive is written
+	 * by its own connection, which attaches the shared database : attaching
+	 * a database to the shared connection would disable its write-ahead log.
+	 * 
+	 * The archive is committed before the mission is deleted, so a failure
+	 * never loses the mission, at worst it is in both databases.
+	 * 
+	 * The copy and the vacuum are long : they are run by the writer thread,
+	 * see {@link SurveyWriteQueue#archiveMission(long, ArchiveListener)}.
+	 * 
+	 * @param idMission
+	 *            of a stopped mission
+	 * @return the archive, to open with {@link #openArchive(File)}
+	 * @throws SmartException
+	 *             if the mission is active or the archive can't be written
+	 */
+	File archiveMission(long idMission) throws SmartException {
+		MissionRecord mission = getMission(idMission);
+		if (mission == null || mission.isStatus()) {
+			throw new SmartException("Mission " + idMission
+					+ " not found or not stopped");
+		}
+		String formName = mission.getForm().getTitle();
+
+		new File(SmartConstants.ARCHIVE_PATH).mkdirs();
+		String name = mission.getTitle().replaceAll("[^\\w-]", "_");
+		File archive = new File(SmartConstants.ARCHIVE_PATH, name + ".db");
+		for (int i = 2; archive.exists(); i++) {
+			archive = new File(SmartConstants.ARCHIVE_PATH, name + "_" + i
+					+ ".db");
 		}
 
-		for (long l : idGeometries) {
-			mDb.delete(TABLE_POINTS, POINTS_COL_ID_GEOMETRY + "=" + l, null);
-			mDb.delete(TABLE_GEOMETRIES, "id=" + l, null);
+		SQLiteDatabase archiveDb = null;
+		try {
+			archiveDb = SQLiteDatabase.openOrCreateDatabase(archive, null);
+			archiveDb.execSQL("ATTACH DATABASE ? AS smart",
+					new Object[] { mDb.getPath() });
+			copyMission(archiveDb, idMission, formName);
+			archiveDb.execSQL("DETACH DATABASE smart");
+		} catch (SQLException e) {
+			LOGGER.log(Level.SEVERE, "Mission not archived : " + e.getMessage());
+			if (archiveDb != null) {
+				archiveDb.close();
+				archiveDb = null;
+			}
+			archive.delete();
+			throw new SmartException(e, "Archive error");
+		} finally {
+			if (archiveDb != null) {
+				archiveDb.close();
+			}
 		}
-		for (long l : idForms) {
-			mDb.delete(nomForm, "id=" + l, null);
+
+		deleteMission(idMission);
+		mDb.execSQL("VACUUM");
+		LOGGER.log(Level.INFO, "Mission " + mission.getTitle()
+				+ " archived in " + archive.getName());
+		return archive;
+	}
+
+	/**
+	 * Copy the schema and the rows of a mission from the attached database
+	 * "smart" to an archive, in one transaction. The points are stored in
+	 * the geometries since the version 4, the table "points" is not copied.
+	 */
+	private static void copyMission(SQLiteDatabase archiveDb, long idMission,
+			String formName) {
+		Object[] args = new Object[] { idMission };
+		archiveDb.beginTransaction();
+		try {
+			Cursor c = archiveDb.rawQuery(SELECT + "sql" + FROM
+					+ "smart.sqlite_master" + WHERE
+					+ "type = 'table' AND name IN (?, ?, ?, ?)", new String[] {
+					TABLE_MISSIONS, TABLE_GEOMETRIES, TABLE_MISSION_STATS,
+					formName });
+			while (c.moveToNext()) {
+				archiveDb.execSQL(c.getString(0));
+			}
+			c.close();
+
+			archiveDb.execSQL("INSERT INTO " + TABLE_MISSIONS + " SELECT *"
+					+ FROM + "smart." + TABLE_MISSIONS + WHERE
+					+ MISSIONS_COL_ID + " = ?", args);
+			archiveDb.execSQL("INSERT INTO " + TABLE_GEOMETRIES + " SELECT *"
+					+ FROM + "smart." + TABLE_GEOMETRIES + WHERE
+					+ GEOMETRIES_COL_ID_MISSION + " = ?", args);
+			archiveDb.execSQL("INSERT INTO " + TABLE_MISSION_STATS
+					+ " SELECT *" + FROM + "smart." + TABLE_MISSION_STATS
+					+ WHERE + MISSION_STATS_COL_ID_MISSION + " = ?", args);
+			archiveDb.execSQL("INSERT INTO " + quote(formName) + " SELECT *"
+					+ FROM + "smart." + quote(formName) + WHERE + "id IN ("
+					+ SELECT + GEOMETRIES_COL_ID_FORM_RECORD + FROM
+					+ TABLE_GEOMETRIES + ")");
+			archiveDb.setVersion(DbMigrations.VERSION);
+			archiveDb.setTransactionSuccessful();
+		} finally {
+			archiveDb.endTransaction();
 		}
-		mDb.delete(TABLE_MISSIONS, "id=" + idMission, null);
-		LOGGER.log(Level.INFO,"Mission "+idMission+" deleted");
 	}
 
 	/**
-	 * Delete a mission and the geometries, points and form record associated
 	 * 
-	 * @param idMission
+	 * @return the archives made by {@link #archiveMission(long)}
 	 */
-	public void deleteRecord(long idGeometry, int idForm, String nameForm) {
+	public static File[] getArchives() {
+		File[] archives = new File(SmartConstants.ARCHIVE_PATH)
+				.listFiles(new FileFilter() {
+					@Override
+					public boolean accept(File file) {
+						return file.getName().endsWith(".db");
+					}
+				});
+		return archives == null ? new File[0] : archives;
+	}
 
-		mDb.delete(TABLE_POINTS, POINTS_COL_ID_GEOMETRY + "=" + idGeometry, null);
-		mDb.delete(TABLE_GEOMETRIES, "id=" + idGeometry, null);
-		mDb.delete(nameForm, "id=" + idForm, null);
+	/**
+	 * Delete a geometry and its form record, the statistics of its mission are
+	 * updated in the same transaction
+	 * 
+	 * @param idGeometry
+	 * @param idForm
+	 * @param nameForm
+	 */
+	public void deleteRecord(long idGeometry, int idForm, String nameForm) {
+		mDb.beginTransaction();
+		try {
+			long idMission = -1;
+			GeometryType type = null;
+			PackedCoordinates coordinates = new PackedCoordinates();
+			Cursor c = mDb.query(TABLE_GEOMETRIES, GEOMETRIES_COLUMNS,
+					GEOMETRIES_COL_ID + "=" + idGeometry, null, null, null, null);
+			if (c.moveToNext() && !c.isNull(GEOMETRIES_NUM_COL_WKB)) {
+				idMission = c.getLong(GEOMETRIES_NUM_COL_ID_MISSION);
+				type = Wkb.decode(c.getBlob(GEOMETRIES_NUM_COL_WKB),
+						coordinates);
+			}
+			c.close();
+
+			mDb.delete(TABLE_POINTS, POINTS_COL_ID_GEOMETRY + "=" + idGeometry,
+					null);
+			mDb.delete(TABLE_GEOMETRIES, "id=" + idGeometry, null);
+			deleteFromRtree(idGeometry);
+			mDb.delete(quote(nameForm), "id=" + idForm, null);
+			unindexFormRecord(nameForm, idForm);
+			if (type != null) {
+				addToMissionStats(idMission, type, coordinates, -1);
+				updateMissionExtent(idMission);
+			}
+			mDb.setTransactionSuccessful();
+		} finally {
+			mDb.endTransaction();
+			mRemovals.addGeometry(idGeometry);
+			mRemovals.addFormRecord(nameForm, idForm);
+			removeChangedRecords();
+		}
 	}
 
 
@@ -467,18 +808,16 @@ public class DbManager {
 	 * Request the table "missions" with a criterion of name
 	 * 
 	 * @param name
-	 * @return the id of the mission
+	 * @return the id of the mission, -1 if there is no mission with this name
 	 */
 	public int getMissionId(String name) {
-		Cursor c = mDb.rawQuery(SELECT + MISSIONS_COL_ID + FROM
-				+ TABLE_MISSIONS + WHERE + MISSIONS_COL_TITLE + " = '" + name
-				+ "'", null);
-
-		c.moveToNext();
-		int id = c.getInt(MISSIONS_NUM_COL_ID);
-
-		c.close();
-		return id;
+		SQLiteStatement statement = mStatements.get(SELECT_MISSION_ID);
+		statement.bindString(1, name);
+		try {
+			return (int) statement.simpleQueryForLong();
+		} catch (SQLiteDoneException e) {
+			return -1;
+		}
 	}
 
 	/**
@@ -533,15 +872,9 @@ public class DbManager {
 	 * @return id of the activated mission, -1 if no one is activated
 	 */
 	public boolean existsMission(String name) {
-		Cursor c = null;
-		c = mDb.rawQuery(SELECT + MISSIONS_COL_ID + FROM + TABLE_MISSIONS
-				+ WHERE + MISSIONS_COL_TITLE + "='" + name + "'", null);
-
-		if (c.getCount() == 0) {
-			return false;
-		} else {
-			return true;
-		}
+		SQLiteStatement statement = mStatements.get(COUNT_MISSIONS_BY_TITLE);
+		statement.bindString(1, name);
+		return statement.simpleQueryForLong() > 0;
 	}
 
 	/**
@@ -611,7 +944,8 @@ public class DbManager {
 	}
 
 	/**
-	 * Insert a new geometry in the table "geometries"
+	 * Insert a new geometry in the table "geometries", its points are encoded
+	 * in the column "wkb" (see {@link Wkb})
 	 * 
 	 * @param geometry
 	 *            to insert
@@ -624,31 +958,280 @@ public class DbManager {
 		values.put(GEOMETRIES_COL_TYPE, geometry.getType().getId());
 		values.put(GEOMETRIES_COL_ID_MISSION, geometry.getIdMission());
 		values.put(GEOMETRIES_COL_ID_FORM_RECORD, geometry.getIdFormRecord());
+		putBoundingBox(values, geometry.getPointsRecord());
+		values.put(GEOMETRIES_COL_WKB,
+				Wkb.encode(geometry.getType(), geometry.getPointsRecord()));
 
+		mDb.beginTransaction();
 		try {
 			long id = mDb.insertOrThrow(TABLE_GEOMETRIES, null, values);
 			for (PointRecord pr : geometry.getPointsRecord()) {
 				pr.setIdGeometry(id);
-				insertPoint(pr);
 			}
-			LOGGER.log(Level.INFO,"Geometry inserted in database");
+			PackedCoordinates coordinates = new PackedCoordinates(geometry
+					.getPointsRecord().size());
+			for (PointRecord pr : geometry.getPointsRecord()) {
+				coordinates.add(pr.getX(), pr.getY());
+			}
+			addToMissionStats(geometry.getIdMission(), geometry.getType(),
+					coordinates, 1);
+			if (values.containsKey(GEOMETRIES_COL_MIN_LAT)) {
+				extendMissionExtent(geometry.getIdMission(), values);
+			}
+			if (mRtree && values.containsKey(GEOMETRIES_COL_MIN_LAT)) {
+				ContentValues bounds = new ContentValues();
+				bounds.put(GEOMETRIES_COL_ID, id);
+				bounds.put(GEOMETRIES_COL_MIN_LAT,
+						values.getAsDouble(GEOMETRIES_COL_MIN_LAT));
+				bounds.put(GEOMETRIES_COL_MAX_LAT,
+						values.getAsDouble(GEOMETRIES_COL_MAX_LAT));
+				bounds.put(GEOMETRIES_COL_MIN_LON,
+						values.getAsDouble(GEOMETRIES_COL_MIN_LON));
+				bounds.put(GEOMETRIES_COL_MAX_LON,
+						values.getAsDouble(GEOMETRIES_COL_MAX_LON));
+				mDb.insertOrThrow(TABLE_GEOMETRIES_RTREE, null, bounds);
+			}
+			mDb.setTransactionSuccessful();
+			LOGGER.log(Level.INFO, "Geometry inserted in database with "
+					+ geometry.getPointsRecord().size() + " points");
 			return id;
 		} catch (SQLException e) {
 			LOGGER.log(Level.SEVERE, "Geometry not inserted in database "+e.getMessage());
 			throw new SmartException(e, INSERT_ERROR);
+		} finally {
+			mDb.endTransaction();
 		}
 	}
 
+	/**
+	 * Add or remove a geometry in the statistics of its mission
+	 * 
+	 * @param idMission
+	 * @param type
+	 *            of the geometry
+	 * @param coordinates
+	 *            of the geometry
+	 * @param sign
+	 *            1 to add the geometry, -1 to remove it
+	 */
+	private void addToMissionStats(long idMission, GeometryType type,
+			PackedCoordinates coordinates, int sign) {
+		mDb.execSQL("INSERT OR IGNORE INTO " + TABLE_MISSION_STATS + " ("
+				+ MISSION_STATS_COL_ID_MISSION + ") VALUES (?);",
+				new Object[] { idMission });
+		mDb.execSQL(
+				ADD_MISSION_STATS,
+				new Object[] { type == GeometryType.POINT ? sign : 0,
+						type == GeometryType.LINE ? sign : 0,
+						type == GeometryType.POLYGON ? sign : 0,
+						sign * coordinates.size(),
+						sign * MissionStats.length(type, coordinates),
+						sign * MissionStats.area(type, coordinates), idMission });
+	}
+
+	/**
+	 * Extend the extent of a mission to the bounding box of a new geometry
+	 */
+	private void extendMissionExtent(long idMission, ContentValues bounds) {
+		Double minLat = bounds.getAsDouble(GEOMETRIES_COL_MIN_LAT);
+		Double minLon = bounds.getAsDouble(GEOMETRIES_COL_MIN_LON);
+		Double maxLat = bounds.getAsDouble(GEOMETRIES_COL_MAX_LAT);
+		Double maxLon = bounds.getAsDouble(GEOMETRIES_COL_MAX_LON);
+		mDb.execSQL("UPDATE " + TABLE_MISSION_STATS + " SET "
+				+ GEOMETRIES_COL_MIN_LAT + " = MIN(IFNULL("
+				+ GEOMETRIES_COL_MIN_LAT + ", ?), ?), "
+				+ GEOMETRIES_COL_MIN_LON + " = MIN(IFNULL("
+				+ GEOMETRIES_COL_MIN_LON + ", ?), ?), "
+				+ GEOMETRIES_COL_MAX_LAT + " = MAX(IFNULL("
+				+ GEOMETRIES_COL_MAX_LAT + ", ?), ?), "
+				+ GEOMETRIES_COL_MAX_LON + " = MAX(IFNULL("
+				+ GEOMETRIES_COL_MAX_LON + ", ?), ?)" + WHERE
+				+ MISSION_STATS_COL_ID_MISSION + " = ?;", new Object[] {
+				minLat, minLat, minLon, minLon, maxLat, maxLat, maxLon, maxLon,
+				idMission });
+	}
+
+	/**
+	 * Compute again the extent of a mission from the bounding boxes of its
+	 * geometries, after a geometry is removed
+	 */
+	private void updateMissionExtent(long idMission) {
+		String geometriesOfMission = FROM + TABLE_GEOMETRIES + WHERE
+				+ GEOMETRIES_COL_ID_MISSION + " = ?)";
+		mDb.execSQL("UPDATE " + TABLE_MISSION_STATS + " SET "
+				+ GEOMETRIES_COL_MIN_LAT + " = (SELECT MIN("
+				+ GEOMETRIES_COL_MIN_LAT + ")" + geometriesOfMission + ", "
+				+ GEOMETRIES_COL_MIN_LON + " = (SELECT MIN("
+				+ GEOMETRIES_COL_MIN_LON + ")" + geometriesOfMission + ", "
+				+ GEOMETRIES_COL_MAX_LAT + " = (SELECT MAX("
+				+ GEOMETRIES_COL_MAX_LAT + ")" + geometriesOfMission + ", "
+				+ GEOMETRIES_COL_MAX_LON + " = (SELECT MAX("
+				+ GEOMETRIES_COL_MAX_LON + ")" + geometriesOfMission + WHERE
+				+ MISSION_STATS_COL_ID_MISSION + " = ?;", new Object[] {
+				idMission, idMission, idMission, idMission, idMission });
+	}
+
+	/**
+	 * Get the summary of a mission from the table "mission_stats"
+	 * 
+	 * @param idMission
+	 * @return the summary, empty if the mission has no geometry
+	 */
+	public MissionStats getMissionStats(long idMission) {
+		Cursor c = mDb.query(TABLE_MISSION_STATS, MISSION_STATS_COLUMNS,
+				MISSION_STATS_COL_ID_MISSION + "=" + idMission, null, null,
+				null, null);
+		try {
+			return c.moveToNext() ? cursorToMissionStats(c) : new MissionStats(
+					idMission);
+		} finally {
+			c.close();
+		}
+	}
+
+	/**
+	 * Get the summaries of all the missions with one query
+	 * 
+	 * @return the summaries by id of mission, a mission without geometry may
+	 *         be missing
+	 */
+	public Map<Long, MissionStats> getAllMissionStats() {
+		Cursor c = mDb.query(TABLE_MISSION_STATS, MISSION_STATS_COLUMNS, null,
+				null, null, null, null);
+		try {
+			Map<Long, MissionStats> stats = new HashMap<Long, MissionStats>();
+			while (c.moveToNext()) {
+				MissionStats s = cursorToMissionStats(c);
+				stats.put(s.getIdMission(), s);
+			}
+			return stats;
+		} finally {
+			c.close();
+		}
+	}
+
+	private static MissionStats cursorToMissionStats(Cursor c) {
+		double[] extent = null;
+		if (!c.isNull(7)) {
+			extent = new double[] { c.getDouble(7), c.getDouble(8),
+					c.getDouble(9), c.getDouble(10) };
+		}
+		return new MissionStats(c.getLong(0), c.getInt(1), c.getInt(2),
+				c.getInt(3), c.getInt(4), c.getDouble(5), c.getDouble(6), extent);
+	}
+
+	private void deleteFromRtree(long idGeometry) {
+		if (mRtree) {
+			mDb.delete(TABLE_GEOMETRIES_RTREE, GEOMETRIES_COL_ID + "="
+					+ idGeometry, null);
+		}
+	}
+
+	/**
+	 * Search the geometries whose bounding box intersects an area, with the
+	 * R*Tree index when the SQLite of the device supports it. The R*Tree
+	 * stores rounded bounds, so the result may contain some geometries just
+	 * outside the area.
+	 * 
+	 * @param south
+	 *            minimum latitude of the area
+	 * @param west
+	 *            minimum longitude of the area
+	 * @param north
+	 *            maximum latitude of the area
+	 * @param east
+	 *            maximum longitude of the area
+	 * @return the ids of the geometries
+	 */
+	public List<Long> getGeometriesInArea(double south, double west,
+			double north, double east) {
+		return getGeometriesInArea(-1, south, west, north, east);
+	}
+
+	/**
+	 * Search the geometries of a mission whose bounding box intersects an
+	 * area, see {@link #getGeometriesInArea(double, double, double, double)}
+	 * 
+	 * @param idMission
+	 *            of the geometries, -1 for all the missions
+	 * @param south
+	 * @param west
+	 * @param north
+	 * @param east
+	 * @return the ids of the geometries
+	 */
+	public List<Long> getGeometriesInArea(long idMission, double south,
+			double west, double north, double east) {
+		StringBuilder sql = new StringBuilder(SELECT);
+		if (mRtree) {
+			sql.append("r.id").append(FROM).append(TABLE_GEOMETRIES_RTREE)
+			.append(" r");
+			if (idMission != -1) {
+				sql.append(" JOIN ").append(TABLE_GEOMETRIES)
+				.append(" g ON g.id = r.id");
+			}
+		} else {
+			sql.append("r.id").append(FROM).append(TABLE_GEOMETRIES)
+			.append(" r");
+		}
+		sql.append(WHERE).append("r.maxLat >= ? AND r.minLat <= ?")
+		.append(" AND r.maxLon >= ? AND r.minLon <= ?");
+		if (idMission != -1) {
+			sql.append(" AND ").append(mRtree ? "g." : "r.")
+			.append(GEOMETRIES_COL_ID_MISSION).append(" = ")
+			.append(idMission);
+		}
+
+		Cursor c = mDb.rawQuery(
+				sql.toString(),
+				new String[] { String.valueOf(south), String.valueOf(north),
+						String.valueOf(west), String.valueOf(east) });
+		List<Long> ids = new ArrayList<Long>(c.getCount());
+		while (c.moveToNext()) {
+			ids.add(c.getLong(0));
+		}
+
+		c.close();
+		return ids;
+	}
+
+	/**
+	 * Put the bounding box and the number of vertices of a geometry
+	 * 
+	 * @param values
+	 * @param points
+	 *            of the geometry
+	 */
+	private static void putBoundingBox(ContentValues values,
+			List<PointRecord> points) {
+		values.put(GEOMETRIES_COL_VERTEX_COUNT, points.size());
+		if (points.isEmpty()) {
+			return;
+		}
+		double minLat = Double.MAX_VALUE;
+		double minLon = Double.MAX_VALUE;
+		double maxLat = -Double.MAX_VALUE;
+		double maxLon = -Double.MAX_VALUE;
+		for (PointRecord point : points) {
+			minLat = Math.min(minLat, point.getX());
+			minLon = Math.min(minLon, point.getY());
+			maxLat = Math.max(maxLat, point.getX());
+			maxLon = Math.max(maxLon, point.getY());
+		}
+		values.put(GEOMETRIES_COL_MIN_LAT, minLat);
+		values.put(GEOMETRIES_COL_MIN_LON, minLon);
+		values.put(GEOMETRIES_COL_MAX_LAT, maxLat);
+		values.put(GEOMETRIES_COL_MAX_LON, maxLon);
+	}
+
 	/**
 	 * Request the table "geometries" to get all rows
 	 * 
 	 * @return a list of Geometry
 	 */
 	public List<GeometryRecord> getAllGeometries() {
-		Cursor c = mDb.query(TABLE_GEOMETRIES, new String[] {
-				GEOMETRIES_COL_ID, GEOMETRIES_COL_TYPE,
-				GEOMETRIES_COL_ID_MISSION, GEOMETRIES_COL_ID_FORM_RECORD },
-				null, null, null, null, null);
+		Cursor c = mDb.query(TABLE_GEOMETRIES, GEOMETRIES_COLUMNS, null, null,
+				null, null, null);
 
 		LinkedList<GeometryRecord> geometries = new LinkedList<GeometryRecord>();
 		while (c.moveToNext()) {
@@ -660,22 +1243,86 @@ public class DbManager {
 	}
 
 	/**
+	 * Get the geometries of a mission with their points, in one query
 	 * 
 	 * @param idMission
 	 * @return list of GeometryRecord for a mission
 	 */
 	public List<GeometryRecord> getGeometriesFromMission(long idMission) {
 		ArrayList<GeometryRecord> geometries = new ArrayList<GeometryRecord>();
-		Cursor c = mDb.rawQuery(SELECT + " * " + FROM + TABLE_GEOMETRIES
-				+ WHERE + GEOMETRIES_COL_ID_MISSION + "=" + idMission, null);
+		Cursor c = mDb.query(TABLE_GEOMETRIES, GEOMETRIES_COLUMNS,
+				GEOMETRIES_COL_ID_MISSION + "=?",
+				new String[] { String.valueOf(idMission) }, null, null,
+				GEOMETRIES_COL_ID);
 
 		while (c.moveToNext()) {
 			geometries.add(cursorToGeometry(c));
 		}
 
+		c.close();
 		return geometries;
 	}
 
+	/**
+	 * Iterate lazily on the geometries of a mission, ordered by id
+	 * 
+	 * @param idMission
+	 * @return the iterator, to close if the iteration is not complete
+	 */
+	public GeometryIterator iterateGeometriesFromMission(long idMission) {
+		return new GeometryIterator(mDb.query(TABLE_GEOMETRIES,
+				GEOMETRIES_COLUMNS, GEOMETRIES_COL_ID_MISSION + "=?",
+				new String[] { String.valueOf(idMission) }, null, null,
+				GEOMETRIES_COL_ID));
+	}
+
+	/**
+	 * Iterate lazily on the form records of the geometries of a mission, in
+	 * the order of {@link #iterateGeometriesFromMission(long)}
+	 * 
+	 * @param idMission
+	 * @param formName
+	 *            name of the form of the mission
+	 * @return the iterator, to close if the iteration is not complete
+	 */
+	public FormRowIterator iterateFormRowsFromMission(long idMission,
+			String formName) {
+		return new FormRowIterator(mDb.rawQuery(SELECT + " f.* " + FROM
+				+ TABLE_GEOMETRIES + " g LEFT JOIN " + quote(formName)
+				+ " f ON f.id = g." + GEOMETRIES_COL_ID_FORM_RECORD + WHERE
+				+ "g." + GEOMETRIES_COL_ID_MISSION + "=? ORDER BY g."
+				+ GEOMETRIES_COL_ID, new String[] { String.valueOf(idMission) }));
+	}
+
+	/**
+	 * Iterate lazily on all the geometries, ordered by id
+	 * 
+	 * @return the iterator, to close if the iteration is not complete
+	 */
+	public GeometryIterator iterateAllGeometries() {
+		return new GeometryIterator(mDb.query(TABLE_GEOMETRIES,
+				GEOMETRIES_COLUMNS, null, null, null, null, GEOMETRIES_COL_ID));
+	}
+
+	/**
+	 * Visit the geometries of a mission, ordered by id, one row in memory at a
+	 * time
+	 * 
+	 * @param idMission
+	 * @param visitor
+	 */
+	public void visitGeometriesFromMission(long idMission,
+			GeometryVisitor visitor) {
+		GeometryIterator iterator = iterateGeometriesFromMission(idMission);
+		try {
+			while (iterator.hasNext()) {
+				visitor.visit(iterator.next());
+			}
+		} finally {
+			iterator.close();
+		}
+	}
+
 	/**
 	 * Convert a cursor to a Geometry object
 	 * 
@@ -692,9 +1339,9 @@ public class DbManager {
 				c.getLong(GEOMETRIES_NUM_COL_ID_MISSION),
 				c.getLong(GEOMETRIES_NUM_COL_ID_FORM_RECORD),
 				GeometryType.getFromId(c.getInt(GEOMETRIES_NUM_COL_TYPE)));
-		geometry.setId(c.getInt(GEOMETRIES_NUM_COL_ID));
+		geometry.setId(c.getLong(GEOMETRIES_NUM_COL_ID));
 
-		for (PointRecord point : getPointsFromGeometry(geometry.getId())) {
+		for (PointRecord point : cursorToPoints(c)) {
 			geometry.addPoint(point);
 		}
 
@@ -711,55 +1358,76 @@ public class DbManager {
 	public List<PointRecord> getPointsFromGeometry(long idGeometry) {
 		ArrayList<PointRecord> points = new ArrayList<PointRecord>();
 
-		Cursor c = mDb.rawQuery(SELECT + " * " + FROM + TABLE_POINTS + WHERE
-				+ POINTS_COL_ID_GEOMETRY + "=" + idGeometry, null);
+		Cursor c = mDb.rawQuery(SELECT_GEOMETRY,
+				new String[] { String.valueOf(idGeometry) });
 
 		while (c.moveToNext()) {
-			points.add(cursorToPoint(c));
+			points.addAll(cursorToPoints(c));
 		}
 
+		c.close();
 		return points;
 	}
 
 	/**
-	 * Insert a new point in the table "points"
+	 * Remove from the cache the records changed by the writes of this manager
+	 * if no transaction is pending : a write in the transaction of a caller
+	 * (see {@link SurveyWriteQueue}) is not committed yet, the caller removes
+	 * the records once it has ended its transaction, so that no reader caches
+	 * a row read before the commit.
+	 */
+	void removeChangedRecords() {
+		if (!mRemovals.isEmpty() && !mDb.inTransaction()) {
+			RecordCache.getInstance().remove(mRemovals);
+			mRemovals = new RecordCache.Removals();
+		}
+	}
+
+	/**
 	 * 
-	 * @param point
-	 *            to insert
-	 * @return the id of the inserted point if the insertion ok, -1 if it's not
-	 * @throws SmartException
+	 * @param key
+	 * @return the record read before by the application, null if it's not in
+	 *         the cache or if this manager reads an archive
 	 */
-	public long insertPoint(PointRecord point) throws SmartException {
-		ContentValues values = new ContentValues();
+	private Object getCached(String key) {
+		return mArchive ? null : RecordCache.getInstance().get(key);
+	}
 
-		values.put(POINTS_COL_X, point.getX());
-		values.put(POINTS_COL_Y, point.getY());
-		values.put(POINTS_COL_Z, point.getZ());
-		values.put(POINTS_COL_ID_GEOMETRY, point.getIdGeometry());
+	/**
+	 * 
+	 * @return the generation of the cache, to read before the database
+	 */
+	private long getCacheGeneration() {
+		return RecordCache.getInstance().getGeneration();
+	}
 
-		try {
-			long id= mDb.insertOrThrow(TABLE_POINTS, null, values);
-			LOGGER.log(Level.INFO, "Point inserted in database");
-			return id;
-		} catch (SQLException e) {
-			LOGGER.log(Level.SEVERE, "Point not inserted in database "+e.getMessage());
-			throw new SmartException(e, INSERT_ERROR);
+	/**
+	 * Cache a record read from the database, unless a write has invalidated
+	 * the cache since the read began
+	 * 
+	 * @param key
+	 * @param record
+	 * @param generation
+	 *            of the cache before the read
+	 */
+	private void putCached(String key, Object record, long generation) {
+		if (!mArchive && record != null) {
+			RecordCache.getInstance().put(key, record, generation);
 		}
 	}
 
 	/**
-	 * Request the table "points" to get all rows
+	 * Request the table "geometries" to get all points
 	 * 
-	 * @return a list of Geometry
+	 * @return a list of PointRecord
 	 */
 	public List<PointRecord> getAllPoints() {
-		Cursor c = mDb.query(TABLE_POINTS, new String[] { POINTS_COL_ID,
-				POINTS_COL_X, POINTS_COL_Y, POINTS_COL_Z,
-				POINTS_COL_ID_GEOMETRY }, null, null, null, null, null);
+		Cursor c = mDb.query(TABLE_GEOMETRIES, GEOMETRIES_COLUMNS, null, null,
+				null, null, null);
 
 		LinkedList<PointRecord> points = new LinkedList<PointRecord>();
 		while (c.moveToNext()) {
-			points.add(cursorToPoint(c));
+			points.addAll(cursorToPoints(c));
 		}
 
 		c.close();
@@ -767,7 +1435,7 @@ public class DbManager {
 	}
 
 	/**
-	 * Request the table "points" in terms of the mission id
+	 * Request the points of the geometries of type point of a mission
 	 * 
 	 * @param idMission
 	 * @return a list of PointRecord
@@ -775,18 +1443,12 @@ public class DbManager {
 	public List<PointRecord> getGeometriesPointsOfMission(long idMission) {
 		LinkedList<PointRecord> points = new LinkedList<PointRecord>();
 
-		Cursor c = mDb
-				.rawQuery(
-						SELECT
-						+ " * "
-						+ FROM
-						+ TABLE_POINTS
-						+ " JOIN "
-						+ TABLE_GEOMETRIES
-						+ " ON geometries.id=points.idGeometry WHERE geometries.type=0 and geometries.idMission = "
-						+ idMission, null);
+		Cursor c = mDb.query(TABLE_GEOMETRIES, GEOMETRIES_COLUMNS,
+				GEOMETRIES_COL_TYPE + "=" + GeometryType.POINT.getId() + " AND "
+						+ GEOMETRIES_COL_ID_MISSION + "=" + idMission, null,
+				null, null, null);
 		while (c.moveToNext()) {
-			points.add(cursorToPoint(c));
+			points.addAll(cursorToPoints(c));
 		}
 
 		c.close();
@@ -794,25 +1456,19 @@ public class DbManager {
 	}
 
 	/**
-	 * Convert a cursor to a Point object
+	 * Decode the points of the geometry of a cursor on
+	 * {@link #GEOMETRIES_COLUMNS}
 	 * 
 	 * @param c
 	 *            the cursor
-	 * @return a Point object
+	 * @return the points
 	 */
-	private PointRecord cursorToPoint(Cursor c) {
-		if (c.getCount() == 0) {
-			return null;
+	private static List<PointRecord> cursorToPoints(Cursor c) {
+		if (c.isNull(GEOMETRIES_NUM_COL_WKB)) {
+			return new ArrayList<PointRecord>();
 		}
-
-		PointRecord point = new PointRecord();
-		point.setId(c.getInt(POINTS_NUM_COL_ID));
-		point.setX(c.getDouble(POINTS_NUM_COL_X));
-		point.setY(c.getDouble(POINTS_NUM_COL_Y));
-		point.setZ(c.getDouble(POINTS_NUM_COL_Z));
-		point.setIdGeometry(c.getInt(POINTS_NUM_COL_ID_GEOMETRY));
-
-		return point;
+		return Wkb.decodePoints(c.getBlob(GEOMETRIES_NUM_COL_WKB),
+				c.getLong(GEOMETRIES_NUM_COL_ID));
 	}
 
 	/**
@@ -822,30 +1478,90 @@ public class DbManager {
 	 * @throws SmartException 
 	 */
 	public int getIdForm(long idGeometry) throws SmartException{
+		String key = RecordCache.idFormKey(idGeometry);
+		Integer idForm = (Integer) getCached(key);
+		if (idForm != null) {
+			return idForm;
+		}
 
-		Cursor c = mDb.rawQuery(SELECT + GEOMETRIES_COL_ID_FORM_RECORD + FROM + TABLE_GEOMETRIES + WHERE + GEOMETRIES_COL_ID+"="+idGeometry, null);
-		c.moveToNext();
-		int idForm=0;
-		try{
-			idForm = c.getInt(0);
-		} catch (Exception e){
+		long generation = getCacheGeneration();
+		SQLiteStatement statement = mStatements.get(SELECT_ID_FORM_RECORD);
+		statement.bindLong(1, idGeometry);
+		try {
+			idForm = (int) statement.simpleQueryForLong();
+			putCached(key, idForm, generation);
+			return idForm;
+		} catch (SQLiteDoneException e) {
 			throw new SmartException(e, "No geometry in database");
 		}
-		return idForm;
 	}
 
 	/**
 	 * 
 	 * @param idFormRecord
 	 * @param formName
-	 * @return FormRecord
+	 * @return FormRecord, shared with the other readers : not to be modified
 	 */
 	public FormRecord getFormRecord(long idFormRecord, String formName) {
-		Cursor c = mDb.rawQuery(SELECT + " * " + FROM + formName + WHERE
-				+ " id" + "=" + idFormRecord, null);
+		String key = RecordCache.formRecordKey(formName, idFormRecord, false);
+		FormRecord formRecord = (FormRecord) getCached(key);
+		if (formRecord != null) {
+			return formRecord;
+		}
+
+		long generation = getCacheGeneration();
+		Cursor c = mDb.rawQuery(selectFormRecord(formName),
+				new String[] { String.valueOf(idFormRecord) });
 
 		c.moveToNext();
-		return fillFormRecordFromCursor(new FormRecord(formName), c);
+		formRecord = fillFormRecordFromCursor(new FormRecord(formName), c);
+
+		c.close();
+		putCached(key, formRecord, generation);
+		return formRecord;
+	}
+
+	/**
+	 * 
+	 * @param formName
+	 * @return the query of a form record by id, the same sql for a form so
+	 *         that SQLite reuses the compiled query
+	 */
+	private static String selectFormRecord(String formName) {
+		return SELECT + " * " + FROM + quote(formName) + WHERE + " id = ?;";
+	}
+
+	/**
+	 * 
+	 * @param identifier
+	 *            name of a table, as the ones of the forms
+	 * @return the identifier quoted for SQLite, so that any character can be
+	 *         used in the name
+	 */
+	static String quote(String identifier) {
+		return "\"" + identifier.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * Get the form records of all the geometries of a mission in one query
+	 * 
+	 * @param idMission
+	 * @param formName
+	 *            the form of the mission
+	 * @return the form records, by id
+	 */
+	public FormRecordSet getFormRecordsFromMission(long idMission,
+			String formName) {
+		Cursor c = mDb.rawQuery(SELECT + " * " + FROM + quote(formName)
+				+ WHERE + " id IN (" + SELECT + GEOMETRIES_COL_ID_FORM_RECORD + FROM
+				+ TABLE_GEOMETRIES + WHERE + GEOMETRIES_COL_ID_MISSION + "=?)",
+				new String[] { String.valueOf(idMission) });
+
+		try {
+			return new FormRecordSet(formName, c);
+		} finally {
+			c.close();
+		}
 	}
 
 
@@ -874,14 +1590,25 @@ public class DbManager {
 	 * Return a formRecord with each FieldRecord typed
 	 * @param idFormRecord
 	 * @param formName
-	 * @return formRecord
+	 * @return formRecord, shared with the other readers : not to be modified
 	 */
 	public FormRecord getFormRecordTyped(long idFormRecord, String formName) {
-		Cursor c = mDb.rawQuery(SELECT + " * " + FROM + formName + WHERE
-				+ " id" + "=" + idFormRecord, null);
+		String key = RecordCache.formRecordKey(formName, idFormRecord, true);
+		FormRecord formRecord = (FormRecord) getCached(key);
+		if (formRecord != null) {
+			return formRecord;
+		}
+
+		long generation = getCacheGeneration();
+		Cursor c = mDb.rawQuery(selectFormRecord(formName),
+				new String[] { String.valueOf(idFormRecord) });
 
 		c.moveToNext();
-		return fillFormRecordTypedFromCursor(new FormRecord(formName), c);
+		formRecord = fillFormRecordTypedFromCursor(new FormRecord(formName), c);
+
+		c.close();
+		putCached(key, formRecord, generation);
+		return formRecord;
 	}
 
 	/**
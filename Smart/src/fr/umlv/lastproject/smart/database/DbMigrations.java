@@ -0,0 +1,363 @@
+package fr.umlv.lastproject.smart.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import fr.umlv.lastproject.smart.layers.GeometryType;
+import fr.umlv.lastproject.smart.layers.PackedCoordinates;
+import fr.umlv.lastproject.smart.utils.SmartLogger;
+
+/**
+ * Numbered steps of the schema of the database. The version of the schema is
+ * stored in the database (PRAGMA user_version), and each step not yet applied
+ * is run in its own transaction when the database is opened, so the database
+ * of a device is upgraded in place.
+ *
+ * The steps are never modified once released : a change of schema is a new
+ * step at the end of the list. That's why they use the names of the tables
+ * and columns as they were at this version, not the constants of
+ * {@link DbManager}.
+ *
+ */
+final class DbMigrations {
+
+	private static final Logger LOGGER = SmartLogger.getLocator().getLogger();
+
+	/**
+	 * One step of the schema
+	 */
+	interface Migration {
+		/**
+		 * Apply the step, called in a transaction
+		 *
+		 * @param db
+		 */
+		void apply(SQLiteDatabase db);
+	}
+
+	/**
+	 * Step made of sql statements only
+	 */
+	private static final class SqlMigration implements Migration {
+		private final String[] statements;
+
+		SqlMigration(String... statements) {
+			this.statements = statements;
+		}
+
+		@Override
+		public void apply(SQLiteDatabase db) {
+			for (String sql : statements) {
+				db.execSQL(sql);
+			}
+		}
+	}
+
+	/**
+	 * The steps, the step i upgrades the database from the version i to the
+	 * version i + 1
+	 */
+	private static final Migration[] MIGRATIONS = {
+			// 1 : static tables
+			new SqlMigration(
+					"CREATE TABLE IF NOT EXISTS missions ( "
+							+ "id INTEGER PRIMARY KEY,"
+							+ "title TEXT UNIQUE,"
+							+ "status INTEGER NOT NULL,"
+							+ "date TEXT NOT NULL, "
+							+ "form TEXT NOT NULL);",
+					"CREATE TABLE IF NOT EXISTS geometries ("
+							+ "id INTEGER PRIMARY KEY, "
+							+ "type INTEGER NOT NULL, "
+							+ "idFormRecord INTEGER NOT NULL, "
+							+ "idMission INTEGER NOT NULL, "
+							+ "FOREIGN KEY (idMission) REFERENCES missions(id));",
+					"CREATE TABLE IF NOT EXISTS points ( "
+							+ "id INTEGER PRIMARY KEY,"
+							+ "x REAL NOT NULL,"
+							+ "y REAL NOT NULL,"
+							+ "z REAL,"
+							+ "idGeometry INTEGER NOT NULL,"
+							+ "FOREIGN KEY (idGeometry) REFERENCES geometries(id));"),
+			// 2 : indexes of the lookups by mission and by geometry
+			new SqlMigration(
+					"CREATE INDEX IF NOT EXISTS points_idGeometry ON points (idGeometry);",
+					"CREATE INDEX IF NOT EXISTS geometries_idMission ON geometries (idMission);",
+					"CREATE INDEX IF NOT EXISTS missions_status ON missions (status);"),
+			// 3 : bounding box and number of vertices of the geometries
+			new SqlMigration(
+					"ALTER TABLE geometries ADD COLUMN minLat REAL;",
+					"ALTER TABLE geometries ADD COLUMN minLon REAL;",
+					"ALTER TABLE geometries ADD COLUMN maxLat REAL;",
+					"ALTER TABLE geometries ADD COLUMN maxLon REAL;",
+					"ALTER TABLE geometries ADD COLUMN vertexCount INTEGER NOT NULL DEFAULT 0;",
+					"UPDATE geometries SET "
+							+ "minLat = (SELECT MIN(x) FROM points WHERE idGeometry = geometries.id), "
+							+ "minLon = (SELECT MIN(y) FROM points WHERE idGeometry = geometries.id), "
+							+ "maxLat = (SELECT MAX(x) FROM points WHERE idGeometry = geometries.id), "
+							+ "maxLon = (SELECT MAX(y) FROM points WHERE idGeometry = geometries.id), "
+							+ "vertexCount = (SELECT COUNT(*) FROM points WHERE idGeometry = geometries.id);"),
+			// 4 : points encoded in a blob of the geometry
+			new Migration() {
+				@Override
+				public void apply(SQLiteDatabase db) {
+					db.execSQL("ALTER TABLE geometries ADD COLUMN wkb BLOB;");
+					encodePoints(db);
+					db.execSQL("DELETE FROM points;");
+				}
+			},
+			// 5 : spatial index, the SQLite of some devices is built without
+			// the R*Tree module, the bounds of the geometries are used instead
+			new Migration() {
+				@Override
+				public void apply(SQLiteDatabase db) {
+					try {
+						db.execSQL("CREATE VIRTUAL TABLE geometries_rtree USING rtree("
+								+ "id, minLat, maxLat, minLon, maxLon);");
+					} catch (SQLiteException e) {
+						LOGGER.log(Level.WARNING, "No R*Tree support : "
+								+ e.getMessage());
+						return;
+					}
+					db.execSQL("INSERT INTO geometries_rtree "
+							+ "SELECT id, minLat, maxLat, minLon, maxLon FROM geometries "
+							+ "WHERE minLat IS NOT NULL;");
+				}
+			},
+			// 6 : summary of the missions, the lengths and the areas are
+			// computed from the wkb
+			new Migration() {
+				@Override
+				public void apply(SQLiteDatabase db) {
+					db.execSQL("CREATE TABLE IF NOT EXISTS mission_stats ("
+							+ "idMission INTEGER PRIMARY KEY, "
+							+ "points INTEGER NOT NULL DEFAULT 0, "
+							+ "lines INTEGER NOT NULL DEFAULT 0, "
+							+ "polygons INTEGER NOT NULL DEFAULT 0, "
+							+ "vertices INTEGER NOT NULL DEFAULT 0, "
+							+ "length REAL NOT NULL DEFAULT 0, "
+							+ "area REAL NOT NULL DEFAULT 0, "
+							+ "minLat REAL, minLon REAL, maxLat REAL, maxLon REAL, "
+							+ "FOREIGN KEY (idMission) REFERENCES missions(id));");
+					db.execSQL("INSERT INTO mission_stats (idMission, points, lines, "
+							+ "polygons, vertices, minLat, minLon, maxLat, maxLon) "
+							+ "SELECT m.id, COUNT(CASE WHEN g.type = 0 THEN 1 END), "
+							+ "COUNT(CASE WHEN g.type = 1 THEN 1 END), "
+							+ "COUNT(CASE WHEN g.type = 2 THEN 1 END), "
+							+ "IFNULL(SUM(g.vertexCount), 0), MIN(g.minLat), "
+							+ "MIN(g.minLon), MAX(g.maxLat), MAX(g.maxLon) "
+							+ "FROM missions m LEFT JOIN geometries g ON g.idMission = m.id "
+							+ "GROUP BY m.id;");
+					measureGeometries(db);
+				}
+			},
+			// 7 : full-text index of the text and list fields of the forms
+			new Migration() {
+				@Override
+				public void apply(SQLiteDatabase db) {
+					db.execSQL("CREATE VIRTUAL TABLE form_search USING fts3("
+							+ "form, idFormRecord, content);");
+					db.execSQL("CREATE INDEX IF NOT EXISTS geometries_idFormRecord "
+							+ "ON geometries (idFormRecord);");
+					indexForms(db);
+				}
+			} };
+
+	/**
+	 * Version of the schema after all the steps
+	 */
+	static final int VERSION = MIGRATIONS.length;
+
+	private DbMigrations() {
+	}
+
+	/**
+	 * Encode the rows of the table "points" in the column "wkb" of their
+	 * geometry, the rows are read ordered by geometry so that only the points
+	 * of one geometry are in memory
+	 */
+	private static void encodePoints(SQLiteDatabase db) {
+		final SQLiteStatement update = db
+				.compileStatement("UPDATE geometries SET wkb = ? WHERE id = ?;");
+		final Cursor c = db.rawQuery(
+				"SELECT g.id, g.type, p.x, p.y, p.z FROM geometries g "
+						+ "LEFT JOIN points p ON p.idGeometry = g.id "
+						+ "ORDER BY g.id, p.id;", null);
+		try {
+			final List<PointRecord> points = new ArrayList<PointRecord>();
+			long id = -1;
+			GeometryType type = null;
+			while (c.moveToNext()) {
+				if (c.getLong(0) != id) {
+					if (type != null) {
+						updateWkb(update, id, type, points);
+					}
+					id = c.getLong(0);
+					type = GeometryType.getFromId(c.getInt(1));
+					points.clear();
+				}
+				if (!c.isNull(2)) {
+					points.add(new PointRecord(c.getDouble(2), c.getDouble(3), c
+							.getDouble(4)));
+				}
+			}
+			if (type != null) {
+				updateWkb(update, id, type, points);
+			}
+		} finally {
+			c.close();
+			update.close();
+		}
+	}
+
+	/**
+	 * Add the lengths of the lines and the areas of the polygons to the
+	 * summaries of their missions
+	 */
+	private static void measureGeometries(SQLiteDatabase db) {
+		final SQLiteStatement update = db
+				.compileStatement("UPDATE mission_stats SET length = length + ?, "
+						+ "area = area + ? WHERE idMission = ?;");
+		final Cursor c = db.rawQuery("SELECT idMission, wkb FROM geometries "
+				+ "WHERE type <> 0 AND wkb IS NOT NULL;", null);
+		try {
+			final PackedCoordinates coordinates = new PackedCoordinates();
+			while (c.moveToNext()) {
+				coordinates.clear();
+				final GeometryType type = Wkb.decode(c.getBlob(1), coordinates);
+				update.bindDouble(1, MissionStats.length(type, coordinates));
+				update.bindDouble(2, MissionStats.area(type, coordinates));
+				update.bindLong(3, c.getLong(0));
+				update.execute();
+			}
+		} finally {
+			c.close();
+			update.close();
+		}
+	}
+
+	/**
+	 * Index the form records already in the database. The type of the fields
+	 * is not stored, so all the text columns are indexed : the pictures and
+	 * the heights are indexed with the texts and the lists.
+	 */
+	private static void indexForms(SQLiteDatabase db) {
+		final List<String> forms = new ArrayList<String>();
+		final Cursor c = db.rawQuery("SELECT DISTINCT form FROM missions;",
+				null);
+		while (c.moveToNext()) {
+			if (hasTable(db, c.getString(0))) {
+				forms.add(c.getString(0));
+			}
+		}
+		c.close();
+
+		final SQLiteStatement insert = db
+				.compileStatement("INSERT INTO form_search (form, idFormRecord, content) "
+						+ "VALUES (?, ?, ?);");
+		try {
+			for (String form : forms) {
+				indexForm(db, insert, form);
+			}
+		} finally {
+			insert.close();
+		}
+	}
+
+	private static void indexForm(SQLiteDatabase db, SQLiteStatement insert,
+			String form) {
+		final StringBuilder sql = new StringBuilder("SELECT id");
+		final Cursor info = db.rawQuery("PRAGMA table_info("
+				+ DbManager.quote(form) + ");", null);
+		while (info.moveToNext()) {
+			final String column = info.getString(1);
+			if ("TEXT".equalsIgnoreCase(info.getString(2))
+					&& !"date".equalsIgnoreCase(column)) {
+				sql.append(", ").append(column);
+			}
+		}
+		info.close();
+
+		final Cursor c = db.rawQuery(
+				sql.append(" FROM ").append(DbManager.quote(form)).toString(),
+				null);
+		try {
+			final StringBuilder content = new StringBuilder();
+			while (c.moveToNext()) {
+				content.setLength(0);
+				for (int i = 1; i < c.getColumnCount(); i++) {
+					if (!c.isNull(i)) {
+						content.append(c.getString(i)).append('\n');
+					}
+				}
+				if (content.length() > 0) {
+					insert.bindString(1, form);
+					insert.bindLong(2, c.getLong(0));
+					insert.bindString(3, content.toString());
+					insert.executeInsert();
+				}
+			}
+		} finally {
+			c.close();
+		}
+	}
+
+	private static void updateWkb(SQLiteStatement update, long id,
+			GeometryType type, List<PointRecord> points) {
+		update.bindBlob(1, Wkb.encode(type, points));
+		update.bindLong(2, id);
+		update.execute();
+	}
+
+	/**
+	 * 
+	 * @param db
+	 * @param name
+	 * @return true if the table exists in the database
+	 */
+	static boolean hasTable(SQLiteDatabase db, String name) {
+		final Cursor c = db.rawQuery(
+				"SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?;",
+				new String[] { name });
+		try {
+			return c.moveToNext();
+		} finally {
+			c.close();
+		}
+	}
+
+	/**
+	 * Apply the steps not yet applied to the database
+	 *
+	 * @param db
+	 *            opened in read and write mode
+	 * @throws android.database.SQLException
+	 *             if a step fails, the steps before are kept
+	 */
+	static void migrate(SQLiteDatabase db) {
+		int version = db.getVersion();
+		if (version > VERSION) {
+			LOGGER.log(Level.WARNING, "Database version " + version
+					+ " newer than " + VERSION);
+			return;
+		}
+		while (version < VERSION) {
+			db.beginTransaction();
+			try {
+				MIGRATIONS[version].apply(db);
+				db.setVersion(version + 1);
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+			version++;
+			LOGGER.log(Level.INFO, "Database upgraded to version " + version);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package fr.umlv.lastproject.smart.database;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.database.Cursor;
+import fr.umlv.lastproject.smart.form.TextField;
+
+/**
+ * Form records of a mission read with one query, see
+ * {@link DbManager#getFormRecordsFromMission(long, String)}. The columns of
+ * the form table are read once and their {@link TextField} are shared by all
+ * the records.
+ *
+ */
+public final class FormRecordSet {
+
+	private final String formName;
+	private final String[] columns;
+	private final TextField[] fields;
+	private final Map<Long, String[]> rows;
+
+	/**
+	 * Read all the rows of a cursor on a form table, the cursor is not closed
+	 *
+	 * @param formName
+	 *            name of the form table
+	 * @param c
+	 *            the cursor, the first column is the id
+	 */
+	FormRecordSet(String formName, Cursor c) {
+		this.formName = formName;
+		this.columns = c.getColumnNames();
+		this.fields = new TextField[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			fields[i] = new TextField(columns[i]);
+		}
+		this.rows = new HashMap<Long, String[]>(c.getCount() * 4 / 3 + 1);
+		while (c.moveToNext()) {
+			final String[] values = new String[columns.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = c.getString(i);
+			}
+			rows.put(c.getLong(0), values);
+		}
+	}
+
+	/**
+	 *
+	 * @return the number of form records
+	 */
+	public int size() {
+		return rows.size();
+	}
+
+	/**
+	 *
+	 * @return the names of the columns of the form table
+	 */
+	public String[] getColumnNames() {
+		return columns.clone();
+	}
+
+	/**
+	 *
+	 * @param name
+	 *            of a column
+	 * @return the index of the column or -1
+	 */
+	public int getColumnIndex(String name) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].equalsIgnoreCase(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 *
+	 * @param idFormRecord
+	 * @return true if the form record is in the set
+	 */
+	public boolean contains(long idFormRecord) {
+		return rows.containsKey(idFormRecord);
+	}
+
+	/**
+	 *
+	 * @param idFormRecord
+	 * @param column
+	 *            index of the column
+	 * @return the value, or null
+	 */
+	public String getString(long idFormRecord, int column) {
+		final String[] values = rows.get(idFormRecord);
+		return values == null ? null : values[column];
+	}
+
+	/**
+	 *
+	 * @param idFormRecord
+	 * @param column
+	 *            index of the column
+	 * @return the value, or 0 if it is null or not a number
+	 */
+	public double getDouble(long idFormRecord, int column) {
+		final String value = getString(idFormRecord, column);
+		if (value == null) {
+			return 0;
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 *
+	 * @param idFormRecord
+	 * @param column
+	 *            index of the column
+	 * @return true if the value is 1, as stored for the boolean fields
+	 */
+	public boolean getBoolean(long idFormRecord, int column) {
+		return "1".equals(getString(idFormRecord, column));
+	}
+
+	/**
+	 * Same as {@link DbManager#getFormRecord(long, String)}
+	 *
+	 * @param idFormRecord
+	 * @return a FormRecord with a TextFieldRecord by column, or null if the
+	 *         form record is not in the set
+	 */
+	public FormRecord get(long idFormRecord) {
+		final String[] values = rows.get(idFormRecord);
+		if (values == null) {
+			return null;
+		}
+		final FormRecord formRecord = new FormRecord(formName);
+		for (int i = 0; i < values.length; i++) {
+			formRecord.addField(new TextFieldRecord(fields[i], values[i]));
+		}
+		return formRecord;
+	}
+}
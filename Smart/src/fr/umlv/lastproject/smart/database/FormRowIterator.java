@@ -0,0 +1,77 @@
+package fr.umlv.lastproject.smart.database;
+
+import java.io.Closeable;
+
+import android.database.Cursor;
+
+/**
+ * Rows of a form table read lazily from a cursor, in the order of the
+ * geometries of a mission : the n-th row is the form record of the n-th
+ * geometry of {@link DbManager#iterateGeometriesFromMission(long)}, with null
+ * values if the geometry has no form record. Only the current row is in
+ * memory.
+ *
+ */
+public final class FormRowIterator implements Closeable {
+
+	private final Cursor cursor;
+	private final String[] columns;
+
+	/**
+	 *
+	 * @param cursor
+	 *            on the columns of the form table
+	 */
+	FormRowIterator(Cursor cursor) {
+		this.cursor = cursor;
+		this.columns = cursor.getColumnNames();
+	}
+
+	/**
+	 *
+	 * @return the names of the columns of the form table
+	 */
+	public String[] getColumnNames() {
+		return columns.clone();
+	}
+
+	/**
+	 * Move to the next row
+	 *
+	 * @return false if there is no more row, the cursor is then closed
+	 */
+	public boolean moveToNext() {
+		if (cursor.isClosed()) {
+			return false;
+		}
+		if (cursor.moveToNext()) {
+			return true;
+		}
+		cursor.close();
+		return false;
+	}
+
+	/**
+	 *
+	 * @return false if the geometry of the current row has no form record
+	 */
+	public boolean hasFormRecord() {
+		// the first column is the id of the form record
+		return !cursor.isNull(0);
+	}
+
+	/**
+	 *
+	 * @param column
+	 *            index of the column
+	 * @return the value of the current row, or null
+	 */
+	public String getString(int column) {
+		return cursor.getString(column);
+	}
+
+	@Override
+	public void close() {
+		cursor.close();
+	}
+}
@@ -0,0 +1,69 @@
+package fr.umlv.lastproject.smart.database;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import android.database.Cursor;
+import fr.umlv.lastproject.smart.layers.GeometryType;
+
+/**
+ * Iterator reading the geometries lazily from a cursor : only the current row
+ * is in memory, and {@link #next()} returns the same {@link GeometryRow}
+ * filled with the next row. The cursor is closed at the end of the iteration,
+ * {@link #close()} must be called if the iteration is stopped before.
+ *
+ */
+public final class GeometryIterator implements Iterator<GeometryRow>,
+		Closeable {
+
+	private final Cursor cursor;
+	private final GeometryRow row = new GeometryRow();
+
+	/**
+	 *
+	 * @param cursor
+	 *            on the columns {@link DbManager#GEOMETRIES_COLUMNS}
+	 */
+	GeometryIterator(Cursor cursor) {
+		this.cursor = cursor;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (cursor.isClosed()) {
+			return false;
+		}
+		if (cursor.getPosition() + 1 < cursor.getCount()) {
+			return true;
+		}
+		cursor.close();
+		return false;
+	}
+
+	@Override
+	public GeometryRow next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		cursor.moveToNext();
+		row.set(cursor.getLong(DbManager.GEOMETRIES_NUM_COL_ID),
+				GeometryType.getFromId(cursor
+						.getInt(DbManager.GEOMETRIES_NUM_COL_TYPE)),
+				cursor.getLong(DbManager.GEOMETRIES_NUM_COL_ID_MISSION),
+				cursor.getLong(DbManager.GEOMETRIES_NUM_COL_ID_FORM_RECORD),
+				cursor.isNull(DbManager.GEOMETRIES_NUM_COL_WKB) ? null : cursor
+						.getBlob(DbManager.GEOMETRIES_NUM_COL_WKB));
+		return row;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() {
+		cursor.close();
+	}
+}
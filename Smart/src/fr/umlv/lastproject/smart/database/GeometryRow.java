@@ -0,0 +1,97 @@
+package fr.umlv.lastproject.smart.database;
+
+import fr.umlv.lastproject.smart.layers.GeometryType;
+import fr.umlv.lastproject.smart.layers.PackedCoordinates;
+
+/**
+ * Row of the table "geometries" read by a {@link GeometryIterator}. The same
+ * instance is filled with each row, so a row must not be kept after the next
+ * one is read : copy it with {@link #toGeometryRecord()}.
+ *
+ */
+public final class GeometryRow {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private long id;
+	private GeometryType type;
+	private long idMission;
+	private long idFormRecord;
+	private final PackedCoordinates coordinates = new PackedCoordinates();
+	private double[] altitudes = new double[DEFAULT_CAPACITY];
+
+	GeometryRow() {
+	}
+
+	/**
+	 * Fill the row, the points are decoded in the reused arrays
+	 */
+	void set(long id, GeometryType type, long idMission, long idFormRecord,
+			byte[] wkb) {
+		this.id = id;
+		this.type = type;
+		this.idMission = idMission;
+		this.idFormRecord = idFormRecord;
+		if (wkb == null) {
+			coordinates.clear();
+		} else {
+			altitudes = Wkb.decode(wkb, coordinates, altitudes);
+		}
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public GeometryType getType() {
+		return type;
+	}
+
+	public long getIdMission() {
+		return idMission;
+	}
+
+	public long getIdFormRecord() {
+		return idFormRecord;
+	}
+
+	/**
+	 *
+	 * @return the latitudes/longitudes of the points, valid until the next
+	 *         row
+	 */
+	public PackedCoordinates getCoordinates() {
+		return coordinates;
+	}
+
+	/**
+	 *
+	 * @param i
+	 *            index of the point
+	 * @return the altitude of the point, -1 if unknown
+	 */
+	public double getAltitude(int i) {
+		if (i < 0 || i >= coordinates.size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		return altitudes[i];
+	}
+
+	/**
+	 *
+	 * @return a copy of the row, which can be kept
+	 */
+	public GeometryRecord toGeometryRecord() {
+		final GeometryRecord geometry = new GeometryRecord(idMission,
+				idFormRecord, type);
+		geometry.setId(id);
+		for (int i = 0; i < coordinates.size(); i++) {
+			final PointRecord point = new PointRecord(
+					coordinates.getLatitude(i), coordinates.getLongitude(i),
+					altitudes[i]);
+			point.setIdGeometry(id);
+			geometry.addPoint(point);
+		}
+		return geometry;
+	}
+}
@@ -0,0 +1,18 @@
+package fr.umlv.lastproject.smart.database;
+
+/**
+ * Visitor of the geometries read by
+ * {@link DbManager#visitGeometriesFromMission(long, GeometryVisitor)}
+ *
+ */
+public interface GeometryVisitor {
+
+	/**
+	 * Visit a geometry
+	 *
+	 * @param row
+	 *            reused for the next geometry, copy it with
+	 *            {@link GeometryRow#toGeometryRecord()} to keep it
+	 */
+	void visit(GeometryRow row);
+}
@@ -0,0 +1,212 @@
+package fr.umlv.lastproject.smart.database;
+
+import fr.umlv.lastproject.smart.layers.GeometryType;
+import fr.umlv.lastproject.smart.layers.PackedCoordinates;
+
+/**
+ * Summary of a mission read from the table "mission_stats" : number of
+ * geometries by type, number of vertices, length of the lines, area of the
+ * polygons and extent. The table is updated with the geometries, so the
+ * summary is read without loading the geometries of the mission.
+ *
+ */
+public final class MissionStats {
+
+	private static final double EARTH_RADIUS = 6378137.0;
+
+	private final long idMission;
+	private final int points;
+	private final int lines;
+	private final int polygons;
+	private final int vertices;
+	private final double length;
+	private final double area;
+	private final double[] extent;
+
+	/**
+	 * Summary of a mission without geometry
+	 *
+	 * @param idMission
+	 */
+	MissionStats(long idMission) {
+		this(idMission, 0, 0, 0, 0, 0, 0, null);
+	}
+
+	/**
+	 *
+	 * @param idMission
+	 * @param points
+	 * @param lines
+	 * @param polygons
+	 * @param vertices
+	 * @param length
+	 *            in meters
+	 * @param area
+	 *            in square meters
+	 * @param extent
+	 *            south, west, north, east, or null
+	 */
+	MissionStats(long idMission, int points, int lines, int polygons,
+			int vertices, double length, double area, double[] extent) {
+		this.idMission = idMission;
+		this.points = points;
+		this.lines = lines;
+		this.polygons = polygons;
+		this.vertices = vertices;
+		this.length = length;
+		this.area = area;
+		this.extent = extent;
+	}
+
+	public long getIdMission() {
+		return idMission;
+	}
+
+	/**
+	 *
+	 * @return the number of points of the mission
+	 */
+	public int getPoints() {
+		return points;
+	}
+
+	/**
+	 *
+	 * @return the number of lines of the mission
+	 */
+	public int getLines() {
+		return lines;
+	}
+
+	/**
+	 *
+	 * @return the number of polygons of the mission
+	 */
+	public int getPolygons() {
+		return polygons;
+	}
+
+	/**
+	 *
+	 * @return the number of geometries of the mission
+	 */
+	public int getGeometries() {
+		return points + lines + polygons;
+	}
+
+	/**
+	 *
+	 * @return the number of vertices of all the geometries
+	 */
+	public int getVertices() {
+		return vertices;
+	}
+
+	/**
+	 *
+	 * @return the total length of the lines in meters
+	 */
+	public double getLength() {
+		return length;
+	}
+
+	/**
+	 *
+	 * @return the total area of the polygons in square meters
+	 */
+	public double getArea() {
+		return area;
+	}
+
+	/**
+	 *
+	 * @return true if the mission has at least one vertex
+	 */
+	public boolean hasExtent() {
+		return extent != null;
+	}
+
+	public double getSouth() {
+		return extent == null ? Double.NaN : extent[0];
+	}
+
+	public double getWest() {
+		return extent == null ? Double.NaN : extent[1];
+	}
+
+	public double getNorth() {
+		return extent == null ? Double.NaN : extent[2];
+	}
+
+	public double getEast() {
+		return extent == null ? Double.NaN : extent[3];
+	}
+
+	/**
+	 *
+	 * @param type
+	 * @param coordinates
+	 *            of a geometry
+	 * @return the length of a line in meters, 0 for the other types
+	 */
+	static double length(GeometryType type, PackedCoordinates coordinates) {
+		if (type != GeometryType.LINE) {
+			return 0;
+		}
+		double length = 0;
+		for (int i = 1; i < coordinates.size(); i++) {
+			length += distance(coordinates.getLatitude(i - 1),
+					coordinates.getLongitude(i - 1),
+					coordinates.getLatitude(i), coordinates.getLongitude(i));
+		}
+		return length;
+	}
+
+	/**
+	 * Great circle distance (haversine) between two points
+	 */
+	private static double distance(double lat1, double lon1, double lat2,
+			double lon2) {
+		final double sinLat = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+		final double sinLon = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+		final double a = sinLat * sinLat
+				+ Math.cos(Math.toRadians(lat1))
+				* Math.cos(Math.toRadians(lat2)) * sinLon * sinLon;
+		return 2 * EARTH_RADIUS
+				* Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+	}
+
+	/**
+	 * Area of the ring projected on the plane tangent at its first point,
+	 * precise enough for the size of a survey
+	 *
+	 * @param type
+	 * @param coordinates
+	 *            of a geometry, the ring of a polygon is not closed
+	 * @return the area of a polygon in square meters, 0 for the other types
+	 */
+	static double area(GeometryType type, PackedCoordinates coordinates) {
+		final int size = coordinates.size();
+		if (type != GeometryType.POLYGON || size < 3) {
+			return 0;
+		}
+		final double lat0 = coordinates.getLatitude(0);
+		final double lon0 = coordinates.getLongitude(0);
+		final double cosLat0 = Math.cos(Math.toRadians(lat0));
+		double area = 0;
+		double x1 = 0;
+		double y1 = 0;
+		for (int i = 1; i <= size; i++) {
+			final int j = i % size;
+			final double x2 = Math.toRadians(coordinates.getLongitude(j)
+					- lon0)
+					* cosLat0 * EARTH_RADIUS;
+			final double y2 = Math.toRadians(coordinates.getLatitude(j) - lat0)
+					* EARTH_RADIUS;
+			area += x1 * y2 - x2 * y1;
+			x1 = x2;
+			y1 = y2;
+		}
+		return Math.abs(area / 2);
+	}
+}
@@ -0,0 +1,155 @@
+package fr.umlv.lastproject.smart.database;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Least recently used cache of the records read by id in the database, shared
+ * by all the {@link DbManager} of the application. The writes of the
+ * {@link DbManager} remove the records they change, so a record of the cache
+ * is always the one in the database.
+ *
+ * The writes are committed by another thread than the reads (see
+ * {@link SurveyWriteQueue}) : the records are removed once the outermost
+ * transaction of the write is committed, and a reader takes the generation of
+ * the cache before reading the database, its record is not cached if a record
+ * has been removed since, as it may have been read before the commit.
+ *
+ * The cached records are shared by the readers, they must not be modified.
+ *
+ */
+final class RecordCache {
+
+	private static final int MAX_ENTRIES = 256;
+
+	private static final RecordCache CACHE = new RecordCache();
+
+	/**
+	 * Incremented by each removal
+	 */
+	private long generation;
+
+	private final Map<String, Object> entries = new LinkedHashMap<String, Object>(
+			MAX_ENTRIES, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	private RecordCache() {
+	}
+
+	/**
+	 *
+	 * @return the cache of the application
+	 */
+	static RecordCache getInstance() {
+		return CACHE;
+	}
+
+	static String idFormKey(long idGeometry) {
+		return "idForm:" + idGeometry;
+	}
+
+	static String formRecordKey(String formName, long idFormRecord,
+			boolean typed) {
+		return (typed ? "typed:" : "form:") + formName + ":" + idFormRecord;
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @return the record, or null if it's not in the cache
+	 */
+	synchronized Object get(String key) {
+		return entries.get(key);
+	}
+
+	/**
+	 *
+	 * @return the generation to give to {@link #put(String, Object, long)},
+	 *         taken before reading the record in the database
+	 */
+	synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @param record
+	 *            not null
+	 * @param readGeneration
+	 *            the generation of the cache before the record was read, the
+	 *            record is not cached if a removal happened since
+	 */
+	synchronized void put(String key, Object record, long readGeneration) {
+		if (readGeneration == generation) {
+			entries.put(key, record);
+		}
+	}
+
+	/**
+	 * Remove the records changed by a committed write
+	 *
+	 * @param removals
+	 */
+	synchronized void remove(Removals removals) {
+		if (removals.isEmpty()) {
+			return;
+		}
+		generation++;
+		if (removals.all) {
+			entries.clear();
+		} else {
+			for (String key : removals.keys) {
+				entries.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Records changed by the writes of a transaction, to remove from the cache
+	 * once it is committed
+	 */
+	static final class Removals {
+		private final Set<String> keys = new HashSet<String>();
+		private boolean all;
+
+		/**
+		 * Remove the records read from a geometry
+		 *
+		 * @param idGeometry
+		 */
+		void addGeometry(long idGeometry) {
+			keys.add(idFormKey(idGeometry));
+		}
+
+		/**
+		 * Remove the typed and untyped versions of a form record
+		 *
+		 * @param formName
+		 * @param idFormRecord
+		 */
+		void addFormRecord(String formName, long idFormRecord) {
+			keys.add(formRecordKey(formName, idFormRecord, false));
+			keys.add(formRecordKey(formName, idFormRecord, true));
+		}
+
+		/**
+		 * Remove all the records, after a write on many rows
+		 */
+		void addAll() {
+			all = true;
+		}
+
+		boolean isEmpty() {
+			return !all && keys.isEmpty();
+		}
+	}
+}
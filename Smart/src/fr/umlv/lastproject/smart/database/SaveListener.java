@@ -0,0 +1,27 @@
+package fr.umlv.lastproject.smart.database;
+
+import fr.umlv.lastproject.smart.utils.SmartException;
+
+/**
+ * Listener of a write submitted to the {@link SurveyWriteQueue}. The methods
+ * are called on the UI thread.
+ *
+ */
+public interface SaveListener {
+
+	/**
+	 * The write is committed in the database
+	 *
+	 * @param id
+	 *            of the saved geometry, or of the updated form record
+	 */
+	void saved(long id);
+
+	/**
+	 * The write has been rolled back
+	 *
+	 * @param e
+	 *            the cause
+	 */
+	void saveFailed(SmartException e);
+}
@@ -0,0 +1,53 @@
+package fr.umlv.lastproject.smart.database;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Compiled statements of a {@link DbManager}, compiled on their first use and
+ * kept until the manager is closed. The values are always bound, so the sql
+ * of a statement is a constant and is parsed once.
+ *
+ * A statement is not thread safe : the cache belongs to one manager, used by
+ * one thread at a time.
+ *
+ */
+final class StatementCache {
+
+	private final SQLiteDatabase db;
+	private final Map<String, SQLiteStatement> statements = new HashMap<String, SQLiteStatement>();
+
+	StatementCache(SQLiteDatabase db) {
+		this.db = db;
+	}
+
+	/**
+	 *
+	 * @param sql
+	 *            with ? for the values
+	 * @return the compiled statement, its previous bindings are cleared
+	 */
+	SQLiteStatement get(String sql) {
+		SQLiteStatement statement = statements.get(sql);
+		if (statement == null) {
+			statement = db.compileStatement(sql);
+			statements.put(sql, statement);
+		} else {
+			statement.clearBindings();
+		}
+		return statement;
+	}
+
+	/**
+	 * Close all the statements
+	 */
+	void close() {
+		for (SQLiteStatement statement : statements.values()) {
+			statement.close();
+		}
+		statements.clear();
+	}
+}
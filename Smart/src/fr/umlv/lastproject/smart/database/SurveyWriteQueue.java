@@ -0,0 +1,385 @@
+package fr.umlv.lastproject.smart.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import java.io.File;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import fr.umlv.lastproject.smart.layers.Geometry;
+import fr.umlv.lastproject.smart.utils.SmartException;
+import fr.umlv.lastproject.smart.utils.SmartLogger;
+
+/**
+ * Write-behind queue of the surveys : the saves and updates of the forms are
+ * written by a background thread, so the UI never waits on the database.
+ *
+ * The writes waiting in the queue are committed together in one transaction.
+ * The {@link SaveListener} is called only once the transaction is committed,
+ * so an acknowledged save is in the database even if the application is
+ * killed just after. If a batch fails, its writes are committed again one by
+ * one so that only the faulty write is reported as failed. Any exception of a
+ * write is reported to its listener, so a write is never left unanswered.
+ *
+ * The UI waits for the queue with {@link #flush()} only when a pending write
+ * must be known : before the activity is paused or saved, so that no write is
+ * lost if the process is killed and the saved geometries have their id.
+ *
+ * The archives of the missions are written by the same thread, in order with
+ * the surveys, as they delete the mission from the database.
+ *
+ */
+public final class SurveyWriteQueue {
+
+	private static final Logger LOGGER = SmartLogger.getLocator().getLogger();
+	private static final int MAX_BATCH = 64;
+
+	private static SurveyWriteQueue queue;
+
+	private final Context context;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final BlockingQueue<WriteCommand> commands = new LinkedBlockingQueue<WriteCommand>();
+	private final Queue<Runnable> results = new ConcurrentLinkedQueue<Runnable>();
+	private final Object lock = new Object();
+	private int unfinished = 0;
+
+	private final Runnable deliver = new Runnable() {
+
+		@Override
+		public void run() {
+			deliver();
+		}
+	};
+
+	/**
+	 * A write of the queue
+	 */
+	private abstract static class WriteCommand {
+		private final SaveListener listener;
+
+		WriteCommand(SaveListener listener) {
+			this.listener = listener;
+		}
+
+		/**
+		 * Write in the database, called in a transaction if the command is
+		 * batched
+		 *
+		 * @return the id given to the listener
+		 */
+		abstract long execute(DbManager dbm) throws SmartException;
+
+		/**
+		 *
+		 * @return false if the command manages its own transactions
+		 */
+		boolean isBatched() {
+			return true;
+		}
+
+		/**
+		 * Called on the UI thread once the write is committed
+		 */
+		void saved(long id) {
+			if (listener != null) {
+				listener.saved(id);
+			}
+		}
+
+		/**
+		 * Called on the UI thread if the write is rolled back
+		 */
+		void saveFailed(SmartException e) {
+			if (listener != null) {
+				listener.saveFailed(e);
+			}
+		}
+	}
+
+	private SurveyWriteQueue(Context context) {
+		this.context = context;
+		Thread worker = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				List<WriteCommand> batch = new ArrayList<WriteCommand>();
+				while (true) {
+					try {
+						batch.add(commands.take());
+					} catch (InterruptedException e) {
+						return;
+					}
+					commands.drainTo(batch, MAX_BATCH - 1);
+					try {
+						write(batch);
+					} finally {
+						done(batch.size());
+						batch.clear();
+					}
+				}
+			}
+		}, "SmartWriter");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 *
+	 * @param context
+	 * @return the unique instance of the queue
+	 */
+	public static synchronized SurveyWriteQueue getInstance(Context context) {
+		if (queue == null) {
+			queue = new SurveyWriteQueue(context.getApplicationContext());
+		}
+		return queue;
+	}
+
+	/**
+	 * Save a new survey : the form record then the geometry
+	 *
+	 * @param formRecord
+	 *            filled by the user
+	 * @param geometry
+	 *            of the survey
+	 * @param idMission
+	 * @param listener
+	 *            receives the id of the geometry, may be null
+	 */
+	public void saveSurvey(final FormRecord formRecord,
+			final Geometry geometry, final long idMission,
+			SaveListener listener) {
+		submit(new WriteCommand(listener) {
+
+			@Override
+			long execute(DbManager dbm) throws SmartException {
+				long idForm = dbm.insertFormRecord(formRecord);
+				return dbm.insertGeometry(new GeometryRecord(geometry,
+						idMission, idForm));
+			}
+		});
+	}
+
+	/**
+	 * Update the values of the form record of a survey
+	 *
+	 * @param formRecord
+	 *            with the new values
+	 * @param idForm
+	 *            id of the row of the form record
+	 * @param listener
+	 *            receives the id of the form record, may be null
+	 */
+	public void updateSurvey(final FormRecord formRecord, final int idForm,
+			SaveListener listener) {
+		submit(new WriteCommand(listener) {
+
+			@Override
+			long execute(DbManager dbm) throws SmartException {
+				dbm.updateFormRecord(formRecord, idForm);
+				return idForm;
+			}
+		});
+	}
+
+	/**
+	 * Archive a stopped mission, see {@link DbManager#archiveMission(long)}
+	 *
+	 * @param idMission
+	 *            of a stopped mission
+	 * @param listener
+	 *            receives the file of the archive, may be null
+	 */
+	public void archiveMission(final long idMission,
+			final ArchiveListener listener) {
+		submit(new WriteCommand(null) {
+			private File archive;
+
+			@Override
+			long execute(DbManager dbm) throws SmartException {
+				archive = dbm.archiveMission(idMission);
+				return idMission;
+			}
+
+			@Override
+			boolean isBatched() {
+				// VACUUM can't run in a transaction
+				return false;
+			}
+
+			@Override
+			void saved(long id) {
+				if (listener != null) {
+					listener.missionArchived(archive);
+				}
+			}
+
+			@Override
+			void saveFailed(SmartException e) {
+				if (listener != null) {
+					listener.archiveFailed(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Wait until all the submitted writes are committed or failed, and call
+	 * their listeners. Must be called on the UI thread.
+	 */
+	public void flush() {
+		synchronized (lock) {
+			while (unfinished > 0) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		deliver();
+	}
+
+	private void submit(WriteCommand command) {
+		synchronized (lock) {
+			unfinished++;
+		}
+		commands.add(command);
+	}
+
+	private void done(int count) {
+		synchronized (lock) {
+			unfinished -= count;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Call the listeners of the handled writes, on the UI thread
+	 */
+	private void deliver() {
+		Runnable result;
+		while ((result = results.poll()) != null) {
+			result.run();
+		}
+	}
+
+	private void write(List<WriteCommand> batch) {
+		// The commands out of a transaction split the batch
+		int from = 0;
+		for (int i = 0; i < batch.size(); i++) {
+			if (!batch.get(i).isBatched()) {
+				writeBatch(batch.subList(from, i));
+				writeAlone(batch.get(i));
+				from = i + 1;
+			}
+		}
+		writeBatch(batch.subList(from, batch.size()));
+	}
+
+	/**
+	 * Execute a command which manages its own transactions
+	 */
+	private void writeAlone(WriteCommand command) {
+		final DbManager dbm = new DbManager();
+		try {
+			dbm.open(context);
+			saved(command, command.execute(dbm));
+		} catch (SmartException e) {
+			failed(command, e);
+		} catch (RuntimeException e) {
+			failed(command, new SmartException(e, "Write database error"));
+		} finally {
+			dbm.close();
+		}
+	}
+
+	private void writeBatch(List<WriteCommand> batch) {
+		if (batch.size() > 1) {
+			try {
+				commit(batch);
+				return;
+			} catch (SmartException e) {
+				LOGGER.log(Level.WARNING, "Batch of " + batch.size()
+						+ " writes rolled back, written one by one");
+			}
+		}
+		for (WriteCommand command : batch) {
+			try {
+				commit(Collections.singletonList(command));
+			} catch (SmartException e) {
+				failed(command, e);
+			}
+		}
+	}
+
+	/**
+	 * Execute the commands in one transaction and notify the listeners once
+	 * it's committed
+	 */
+	private void commit(List<WriteCommand> batch) throws SmartException {
+		final long[] ids = new long[batch.size()];
+		final DbManager dbm = new DbManager();
+		try {
+			dbm.open(context);
+			final SQLiteDatabase db = DbConnection.getInstance().getDatabase();
+			db.beginTransaction();
+			try {
+				for (int i = 0; i < ids.length; i++) {
+					ids[i] = batch.get(i).execute(dbm);
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+				// The readers must not cache the rows read before the commit
+				dbm.removeChangedRecords();
+			}
+		} catch (RuntimeException e) {
+			// An SQLException, or an invalid survey (Wkb.encode) : reported
+			// as a failed write so that the writer thread keeps running
+			throw new SmartException(e, "Write database error");
+		} finally {
+			dbm.close();
+		}
+
+		for (int i = 0; i < ids.length; i++) {
+			saved(batch.get(i), ids[i]);
+		}
+	}
+
+	private void saved(final WriteCommand command, final long id) {
+		results.add(new Runnable() {
+
+			@Override
+			public void run() {
+				command.saved(id);
+			}
+		});
+		handler.post(deliver);
+	}
+
+	private void failed(final WriteCommand command, final SmartException e) {
+		LOGGER.log(Level.SEVERE, "Survey not written : " + e.getMessage());
+		results.add(new Runnable() {
+
+			@Override
+			public void run() {
+				command.saveFailed(e);
+			}
+		});
+		handler.post(deliver);
+	}
+}
@@ -0,0 +1,230 @@
+package fr.umlv.lastproject.smart.database;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.umlv.lastproject.smart.layers.GeometryType;
+import fr.umlv.lastproject.smart.layers.PackedCoordinates;
+
+/**
+ * Well Known Binary encoding of the geometries stored in the column "wkb" of
+ * the table "geometries" : Point Z, LineString Z or Polygon Z with one ring,
+ * little endian, x is the longitude and y the latitude. The altitude of the
+ * {@link PointRecord} is kept in z.
+ *
+ */
+public final class Wkb {
+
+	private static final byte LITTLE_ENDIAN = 1;
+	private static final int WKB_POINT_Z = 1001;
+	private static final int WKB_LINE_Z = 1002;
+	private static final int WKB_POLYGON_Z = 1003;
+
+	private static final int HEADER_SIZE = 5;
+	private static final int COUNT_SIZE = 4;
+	private static final int POINT_SIZE = 24;
+	private static final int DOUBLE_SIZE = 8;
+
+	private Wkb() {
+	}
+
+	/**
+	 * Encode the points of a geometry. The ring of a polygon is closed by a
+	 * copy of its first point, even if the points are already closed, so that
+	 * the decoders give back the same points.
+	 *
+	 * @param type
+	 * @param points
+	 * @return the wkb
+	 */
+	public static byte[] encode(GeometryType type, List<PointRecord> points) {
+		final int size = points.size();
+		final ByteBuffer buffer;
+		switch (type) {
+		case POINT:
+			buffer = allocate(HEADER_SIZE + POINT_SIZE);
+			buffer.putInt(WKB_POINT_Z);
+			if (size == 0) {
+				// empty point
+				buffer.putDouble(Double.NaN).putDouble(Double.NaN)
+						.putDouble(Double.NaN);
+			} else {
+				putPoint(buffer, points.get(0));
+			}
+			break;
+
+		case LINE:
+			buffer = allocate(HEADER_SIZE + COUNT_SIZE + size * POINT_SIZE);
+			buffer.putInt(WKB_LINE_Z).putInt(size);
+			for (PointRecord point : points) {
+				putPoint(buffer, point);
+			}
+			break;
+
+		case POLYGON:
+			if (size == 0) {
+				buffer = allocate(HEADER_SIZE + COUNT_SIZE);
+				buffer.putInt(WKB_POLYGON_Z).putInt(0);
+				break;
+			}
+			buffer = allocate(HEADER_SIZE + 2 * COUNT_SIZE + (size + 1)
+					* POINT_SIZE);
+			buffer.putInt(WKB_POLYGON_Z).putInt(1).putInt(size + 1);
+			for (PointRecord point : points) {
+				putPoint(buffer, point);
+			}
+			putPoint(buffer, points.get(0));
+			break;
+
+		default:
+			throw new IllegalArgumentException("Unknown geometry type " + type);
+		}
+		return buffer.array();
+	}
+
+	private static ByteBuffer allocate(int size) {
+		final ByteBuffer buffer = ByteBuffer.allocate(size).order(
+				ByteOrder.LITTLE_ENDIAN);
+		buffer.put(LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	private static void putPoint(ByteBuffer buffer, PointRecord point) {
+		buffer.putDouble(point.getY()).putDouble(point.getX())
+				.putDouble(point.getZ());
+	}
+
+	/**
+	 * Decode the latitudes/longitudes of a geometry at the end of packed
+	 * coordinates, without the closing point of a polygon
+	 *
+	 * @param wkb
+	 * @param coordinates
+	 *            where the points are added
+	 * @return the type of the geometry
+	 */
+	public static GeometryType decode(byte[] wkb, PackedCoordinates coordinates) {
+		final ByteBuffer buffer = wrap(wkb);
+		final GeometryType type = readType(buffer);
+		readCoordinates(buffer, readCount(buffer, type), coordinates, null);
+		return type;
+	}
+
+	/**
+	 * Decode the latitudes/longitudes and the altitudes of a geometry in
+	 * reused arrays
+	 *
+	 * @param wkb
+	 * @param coordinates
+	 *            cleared then filled with the points
+	 * @param altitudes
+	 *            where the altitudes are written
+	 * @return the altitudes, a new array if the given one is too small
+	 */
+	static double[] decode(byte[] wkb, PackedCoordinates coordinates,
+			double[] altitudes) {
+		final ByteBuffer buffer = wrap(wkb);
+		final int count = readCount(buffer, readType(buffer));
+		final double[] z = altitudes.length < count ? new double[count]
+				: altitudes;
+		coordinates.clear();
+		readCoordinates(buffer, count, coordinates, z);
+		return z;
+	}
+
+	private static void readCoordinates(ByteBuffer buffer, int count,
+			PackedCoordinates coordinates, double[] altitudes) {
+		for (int i = 0; i < count; i++) {
+			final double lon = buffer.getDouble();
+			final double lat = buffer.getDouble();
+			final double z = buffer.getDouble();
+			coordinates.add(lat, lon);
+			if (altitudes != null) {
+				altitudes[i] = z;
+			}
+		}
+	}
+
+	/**
+	 * Decode the points of a geometry, without the closing point of a polygon
+	 *
+	 * @param wkb
+	 * @param idGeometry
+	 *            of the points
+	 * @return the points
+	 */
+	public static List<PointRecord> decodePoints(byte[] wkb, long idGeometry) {
+		final ByteBuffer buffer = wrap(wkb);
+		final int count = readCount(buffer, readType(buffer));
+		final List<PointRecord> points = new ArrayList<PointRecord>(count);
+		for (int i = 0; i < count; i++) {
+			final double lon = buffer.getDouble();
+			final double lat = buffer.getDouble();
+			final PointRecord point = new PointRecord(lat, lon,
+					buffer.getDouble());
+			point.setIdGeometry(idGeometry);
+			points.add(point);
+		}
+		return points;
+	}
+
+	private static ByteBuffer wrap(byte[] wkb) {
+		final ByteBuffer buffer = ByteBuffer.wrap(wkb);
+		buffer.order(buffer.get() == LITTLE_ENDIAN ? ByteOrder.LITTLE_ENDIAN
+				: ByteOrder.BIG_ENDIAN);
+		return buffer;
+	}
+
+	private static GeometryType readType(ByteBuffer buffer) {
+		final int type = buffer.getInt();
+		switch (type) {
+		case WKB_POINT_Z:
+			return GeometryType.POINT;
+		case WKB_LINE_Z:
+			return GeometryType.LINE;
+		case WKB_POLYGON_Z:
+			return GeometryType.POLYGON;
+		default:
+			throw new IllegalArgumentException("Unsupported wkb type " + type);
+		}
+	}
+
+	/**
+	 * Read the number of points to decode and leave the buffer on the first
+	 * point
+	 */
+	private static int readCount(ByteBuffer buffer, GeometryType type) {
+		switch (type) {
+		case POINT:
+			return Double.isNaN(buffer.getDouble(buffer.position())) ? 0 : 1;
+		case LINE:
+			return buffer.getInt();
+		default:
+			if (buffer.getInt() == 0) {
+				return 0;
+			}
+			final int ring = buffer.getInt();
+			// the closing point is not returned, a ring which is not closed
+			// (degenerate or written by another encoder) is kept whole
+			return isClosed(buffer, ring) ? ring - 1 : ring;
+		}
+	}
+
+	/**
+	 *
+	 * @return true if the last point of the ring starting at the position of
+	 *         the buffer is its first point
+	 */
+	private static boolean isClosed(ByteBuffer buffer, int ring) {
+		if (ring < 2) {
+			return false;
+		}
+		final int first = buffer.position();
+		final int last = first + (ring - 1) * POINT_SIZE;
+		return buffer.getDouble(first) == buffer.getDouble(last)
+				&& buffer.getDouble(first + DOUBLE_SIZE) == buffer
+						.getDouble(last + DOUBLE_SIZE);
+	}
+}
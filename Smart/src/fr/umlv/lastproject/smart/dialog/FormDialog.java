@@ -33,13 +33,13 @@ import android.widget.Toast;
 import fr.umlv.lastproject.smart.MenuActivity;
 import fr.umlv.lastproject.smart.R;
 import fr.umlv.lastproject.smart.database.BooleanFieldRecord;
-import fr.umlv.lastproject.smart.database.DbManager;
 import fr.umlv.lastproject.smart.database.FormRecord;
-import fr.umlv.lastproject.smart.database.GeometryRecord;
 import fr.umlv.lastproject.smart.database.HeightFieldRecord;
 import fr.umlv.lastproject.smart.database.ListFieldRecord;
 import fr.umlv.lastproject.smart.database.NumericFieldRecord;
 import fr.umlv.lastproject.smart.database.PictureFieldRecord;
+import fr.umlv.lastproject.smart.database.SaveListener;
+import fr.umlv.lastproject.smart.database.SurveyWriteQueue;
 import fr.umlv.lastproject.smart.database.TextFieldRecord;
 import fr.umlv.lastproject.smart.form.BooleanField;
 import fr.umlv.lastproject.smart.form.Field;
@@ -111,7 +111,6 @@ public class FormDialog extends AlertDialog.Builder {
 		setPositiveButton(R.string.validate,
 				new DialogInterface.OnClickListener() {
 					public void onClick(DialogInterface dialog, int which) {
-						DbManager dbManager = new DbManager();
 						FormRecord formRecord = new FormRecord(form);
 
 						for (int i = 0; i < formRecord.getFields().size(); i++) {
@@ -176,22 +175,23 @@ public class FormDialog extends AlertDialog.Builder {
 							}
 						}
 
-						try {
-							dbManager.open(context);
-							long idForm = dbManager
-									.insertFormRecord(formRecord);
-							long idGeom = dbManager
-									.insertGeometry(new GeometryRecord(g,
-											Mission.getInstance().getId(),
-											idForm));
-							g.setId(idGeom);
-						} catch (SmartException e) {
-							mission.removeGeometry(g);
-							Toast.makeText(context, e.getMessage(),
-									Toast.LENGTH_LONG).show();
-							Log.e("", e.getMessage());
-						}
-						dbManager.close();
+						SurveyWriteQueue.getInstance(context).saveSurvey(
+								formRecord, g, Mission.getInstance().getId(),
+								new SaveListener() {
+
+									@Override
+									public void saved(long idGeom) {
+										g.setId(idGeom);
+									}
+
+									@Override
+									public void saveFailed(SmartException e) {
+										mission.removeGeometry(g);
+										Toast.makeText(context, e.getMessage(),
+												Toast.LENGTH_LONG).show();
+										Log.e("", e.getMessage());
+									}
+								});
 						dialog.dismiss();
 						if (Mission.getInstance() != null) {
 							Mission.getInstance().setSelectable(true);
@@ -240,7 +240,6 @@ public class FormDialog extends AlertDialog.Builder {
 		setPositiveButton(R.string.validate,
 				new DialogInterface.OnClickListener() {
 					public void onClick(DialogInterface dialog, int which) {
-						DbManager dbManager = new DbManager();
 						FormRecord formRecord = new FormRecord(form);
 
 						for (int i = 0; i < formRecord.getFields().size(); i++) {
@@ -310,21 +309,23 @@ public class FormDialog extends AlertDialog.Builder {
 							}
 						}
 
-						try {
-							dbManager.open(menuActivity);
-							long idForm = dbManager
-									.insertFormRecord(formRecord);
-							long idGeom = dbManager
-									.insertGeometry(new GeometryRecord(geom,
-											Mission.getInstance().getId(),
-											idForm));
-							geom.setId(idGeom);
-						} catch (SmartException e) {
-							Toast.makeText(menuActivity, e.getMessage(),
-									Toast.LENGTH_LONG).show();
-							Log.e("", e.getMessage());
-						}
-						dbManager.close();
+						SurveyWriteQueue.getInstance(menuActivity).saveSurvey(
+								formRecord, geom, Mission.getInstance().getId(),
+								new SaveListener() {
+
+									@Override
+									public void saved(long idGeom) {
+										geom.setId(idGeom);
+									}
+
+									@Override
+									public void saveFailed(SmartException e) {
+										Toast.makeText(menuActivity,
+												e.getMessage(),
+												Toast.LENGTH_LONG).show();
+										Log.e("", e.getMessage());
+									}
+								});
 						dialog.dismiss();
 					}
 				});
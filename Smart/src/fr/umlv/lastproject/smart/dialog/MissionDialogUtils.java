@@ -1,15 +1,14 @@
 package fr.umlv.lastproject.smart.dialog;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
 import android.content.Intent;
-import android.net.Uri;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.Log;
@@ -27,12 +26,11 @@ import fr.umlv.lastproject.smart.ListOverlay;
 import fr.umlv.lastproject.smart.MenuActivity;
 import fr.umlv.lastproject.smart.R;
 import fr.umlv.lastproject.smart.browser.utils.FileUtils;
-import fr.umlv.lastproject.smart.data.CsvExportException;
-import fr.umlv.lastproject.smart.data.DataExport;
-import fr.umlv.lastproject.smart.data.KmlExportException;
+import fr.umlv.lastproject.smart.data.ExportFormat;
+import fr.umlv.lastproject.smart.data.ExportJobService;
 import fr.umlv.lastproject.smart.database.DbManager;
 import fr.umlv.lastproject.smart.database.MissionRecord;
-import fr.umlv.lastproject.smart.layers.GeometryType;
+import fr.umlv.lastproject.smart.database.MissionStats;
 import fr.umlv.lastproject.smart.utils.SmartConstants;
 import fr.umlv.lastproject.smart.utils.SmartException;
 
@@ -44,6 +42,9 @@ import fr.umlv.lastproject.smart.utils.SmartException;
  */
 public final class MissionDialogUtils {
 
+	private static final double METERS_IN_KM = 1000;
+	private static final double SQUARE_METERS_IN_HA = 10000;
+
 	private MissionDialogUtils() {
 	}
 
@@ -221,6 +222,7 @@ public final class MissionDialogUtils {
 		alertDialog.getButton(AlertDialog.BUTTON_POSITIVE).setEnabled(false);
 
 		List<MissionRecord> missionRecords = getAllMissions(context);
+		Map<Long, MissionStats> missionStats = getAllMissionStats(context);
 
 		if (missionRecords.size() == 0) {
 			TextView noMissionText = new TextView(context);
@@ -230,7 +232,8 @@ public final class MissionDialogUtils {
 
 		for (MissionRecord m : missionRecords) {
 			CheckBox checkBox = new CheckBox(context);
-			checkBox.setText(m.getTitle());
+			checkBox.setText(getMissionSummary(context, m,
+					missionStats.get(m.getId())));
 			checkBox.setHint(String.valueOf(m.getId()));
 			checkBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
 
@@ -268,50 +271,39 @@ public final class MissionDialogUtils {
 			return;
 		}
 
-		ArrayList<Uri> files = new ArrayList<Uri>();
-		for (Long idMission : missionsToExport) {
-			try {
-				switch (formatSelector.getCheckedRadioButtonId()) {
-				case R.id.csvExport:
-					// Export CSV
-
-					// files.add(Uri.fromFile(new File()));
-					String path = DataExport.exportCsv(SmartConstants.APP_PATH,
-							idMission, context);
-					for (GeometryType t : GeometryType.values()) {
-						files.add(Uri.fromFile(new File(path + t.toString()
-								+ FileUtils.CSV_TYPE[0])));
-					}
-					break;
+		final ExportFormat format;
+		switch (formatSelector.getCheckedRadioButtonId()) {
+		case R.id.csvExport:
+			format = ExportFormat.CSV;
+			break;
 
-				case R.id.kmlExport:
-					// Export KML
-					files.add(Uri.fromFile(new File(DataExport.exportKml(
-							SmartConstants.APP_PATH, idMission, context))));
-					break;
+		case R.id.kmlExport:
+			format = ExportFormat.KML;
+			break;
 
-				default:
-					throw new IllegalStateException(
-							"Id of the radiobutton unkown");
-				}
-			} catch (KmlExportException e) {
-				Toast.makeText(context, e.getMessage(), Toast.LENGTH_LONG)
-						.show();
-				return;
-			} catch (CsvExportException e) {
-				Toast.makeText(context, e.getMessage(), Toast.LENGTH_LONG)
-						.show();
-				return;
-			}
-		}
+		case R.id.geojsonExport:
+			format = ExportFormat.GEOJSON;
+			break;
 
-		Toast.makeText(context, context.getString(R.string.missionExported)+" : "+SmartConstants.APP_PATH, Toast.LENGTH_LONG)
-				.show();
+		case R.id.shpExport:
+			format = ExportFormat.SHP;
+			break;
+
+		default:
+			throw new IllegalStateException("Id of the radiobutton unkown");
+		}
 
-		if (checkBoxEmail.isChecked()) {
-			Intent intent = FileUtils.createEmailIntent(files);
-			context.startActivity(intent);
+		// The missions are exported in parallel, the results are published
+		// to the export listener of the activity
+		if (ExportJobService.getInstance().export(context,
+				SmartConstants.APP_PATH, missionsToExport, format,
+				checkBoxEmail.isChecked()) == null) {
+			Toast.makeText(context, R.string.exportAlreadyRunning,
+					Toast.LENGTH_LONG).show();
+			return;
 		}
+		Toast.makeText(context, R.string.exportStarted, Toast.LENGTH_SHORT)
+				.show();
 	}
 
 	public static void showDeleteDialog(final Context context)
@@ -353,6 +345,7 @@ public final class MissionDialogUtils {
 		alertDialog.getButton(AlertDialog.BUTTON_POSITIVE).setEnabled(false);
 
 		List<MissionRecord> missionRecords = getAllMissions(context);
+		Map<Long, MissionStats> missionStats = getAllMissionStats(context);
 
 		if (missionRecords.size() == 0) {
 			TextView noMissionText = new TextView(context);
@@ -362,7 +355,8 @@ public final class MissionDialogUtils {
 
 		for (MissionRecord m : missionRecords) {
 			CheckBox checkBox = new CheckBox(context);
-			checkBox.setText(m.getTitle());
+			checkBox.setText(getMissionSummary(context, m,
+					missionStats.get(m.getId())));
 			checkBox.setHint(String.valueOf(m.getId()));
 			checkBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
 
@@ -401,4 +395,36 @@ public final class MissionDialogUtils {
 			dbm.close();
 		}
 	}
+
+	private static Map<Long, MissionStats> getAllMissionStats(Context c)
+			throws SmartException {
+		DbManager dbm = new DbManager();
+		dbm.open(c);
+
+		try {
+			return dbm.getAllMissionStats();
+		} finally {
+			dbm.close();
+		}
+	}
+
+	/**
+	 * 
+	 * @param context
+	 * @param mission
+	 * @param stats
+	 *            of the mission, may be null
+	 * @return the title of the mission and its number of geometries, its
+	 *         length and its area
+	 */
+	private static String getMissionSummary(Context context,
+			MissionRecord mission, MissionStats stats) {
+		if (stats == null) {
+			return mission.getTitle();
+		}
+		return context.getString(R.string.missionSummary, mission.getTitle(),
+				stats.getPoints(), stats.getLines(), stats.getPolygons(),
+				stats.getLength() / METERS_IN_KM, stats.getArea()
+						/ SQUARE_METERS_IN_HA);
+	}
 }
@@ -43,6 +43,8 @@ import fr.umlv.lastproject.smart.database.HeightFieldRecord;
 import fr.umlv.lastproject.smart.database.ListFieldRecord;
 import fr.umlv.lastproject.smart.database.NumericFieldRecord;
 import fr.umlv.lastproject.smart.database.PictureFieldRecord;
+import fr.umlv.lastproject.smart.database.SaveListener;
+import fr.umlv.lastproject.smart.database.SurveyWriteQueue;
 import fr.umlv.lastproject.smart.database.TextFieldRecord;
 import fr.umlv.lastproject.smart.form.Field;
 import fr.umlv.lastproject.smart.form.Form;
@@ -128,7 +130,6 @@ public class ModifFormDialog extends AlertDialog.Builder {
 		setPositiveButton(R.string.validate,
 				new DialogInterface.OnClickListener() {
 					public void onClick(DialogInterface dialog, int which) {
-						DbManager dbManager = new DbManager();
 						FormRecord formRecord = new FormRecord(form);
 
 						for (int i = 0; i < formRecord.getFields().size(); i++) {
@@ -190,19 +191,23 @@ public class ModifFormDialog extends AlertDialog.Builder {
 							}
 						}
 
-						try {
-							dbManager.open(context);
-							dbManager.updateFormRecord(formRecord, idRowForm);
-
-						} catch (SmartException e) {
-							Toast.makeText(context, e.getMessage(),
-									Toast.LENGTH_LONG).show();
-							Log.e("", e.getMessage());
-						}
-						dbManager.close();
-						for (FormEditedListener l : listeners) {
-							l.actionPerformed(g);
-						}
+						SurveyWriteQueue.getInstance(context).updateSurvey(
+								formRecord, idRowForm, new SaveListener() {
+
+									@Override
+									public void saved(long id) {
+										for (FormEditedListener l : listeners) {
+											l.actionPerformed(g);
+										}
+									}
+
+									@Override
+									public void saveFailed(SmartException e) {
+										Toast.makeText(context, e.getMessage(),
+												Toast.LENGTH_LONG).show();
+										Log.e("", e.getMessage());
+									}
+								});
 					}
 				});
 
@@ -54,10 +54,9 @@ public class ValidationDeleteMissionDialog extends AlertDialog.Builder {
 				} catch (SmartException e) {
 					Toast.makeText(c, e.getMessage(), Toast.LENGTH_LONG).show();
 					Log.e("", e.getMessage());
+					return;
 				}
-				for (Long l : missionsToDelete) {
-					dbm.deleteMission(l);
-				}
+				dbm.deleteMissions(missionsToDelete);
 				dbm.close();
 				Toast.makeText(c, R.string.missionDelete, Toast.LENGTH_SHORT)
 						.show();
@@ -14,6 +14,7 @@ import fr.umlv.lastproject.smart.R;
 import fr.umlv.lastproject.smart.SmartMapView;
 import fr.umlv.lastproject.smart.database.DbManager;
 import fr.umlv.lastproject.smart.database.MissionRecord;
+import fr.umlv.lastproject.smart.database.SurveyWriteQueue;
 import fr.umlv.lastproject.smart.layers.Geometry;
 import fr.umlv.lastproject.smart.layers.GeometryLayer;
 import fr.umlv.lastproject.smart.layers.GeometryType;
@@ -77,6 +78,10 @@ public final class Mission {
 
 			@Override
 			public void actionPerformed(Geometry g, GeometryLayer l) {
+				if (!isSaved(g)) {
+					g.setSelected(false);
+					return;
+				}
 				setSelectable(false);
 				mapview.invalidate();
 				activity.createModifFormDialog(getForm(), g, l);
@@ -120,6 +125,10 @@ public final class Mission {
 
 			@Override
 			public void actionPerformed(Geometry g, GeometryLayer l) {
+				if (!isSaved(g)) {
+					g.setSelected(false);
+					return;
+				}
 				setSelectable(false);
 				Mission.this.mapView.invalidate();
 				context.createModifFormDialog(getForm(), g, l);
@@ -454,6 +463,25 @@ public final class Mission {
 		}
 	}
 
+	/**
+	 * Wait for the write of the survey of a geometry just validated, so that
+	 * its form record can be read
+	 * 
+	 * @param g
+	 * @return false if the geometry is not in the database
+	 */
+	private boolean isSaved(Geometry g) {
+		if (g.getId() == -1) {
+			SurveyWriteQueue.getInstance(context).flush();
+		}
+		if (g.getId() == -1) {
+			Toast.makeText(context, R.string.survayError, Toast.LENGTH_LONG)
+					.show();
+			return false;
+		}
+		return true;
+	}
+
 	private void removeGeometryNotSave(GeometryLayer layer) {
 		for (Geometry g : layer.getGeometries()) {
 			if (g.getId() == -1) {
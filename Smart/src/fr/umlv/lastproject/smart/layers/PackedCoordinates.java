@@ -0,0 +1,119 @@
+package fr.umlv.lastproject.smart.layers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Growable array of coordinates stored as latitude/longitude pairs in a single
+ * double array. Used by the importers to read the coordinates without
+ * allocating an object per vertex.
+ *
+ */
+public class PackedCoordinates {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private double[] values;
+	private int size;
+
+	public PackedCoordinates() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 *
+	 * @param capacity
+	 *            initial number of points
+	 */
+	public PackedCoordinates(int capacity) {
+		this.values = new double[Math.max(1, capacity) * 2];
+	}
+
+	/**
+	 * Add a point at the end of the array
+	 *
+	 * @param latitude
+	 * @param longitude
+	 */
+	public void add(double latitude, double longitude) {
+		if (size * 2 == values.length) {
+			final double[] grown = new double[values.length * 2];
+			System.arraycopy(values, 0, grown, 0, values.length);
+			values = grown;
+		}
+		values[size * 2] = latitude;
+		values[size * 2 + 1] = longitude;
+		size++;
+	}
+
+	/**
+	 *
+	 * @return the number of points
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 *
+	 * @param index
+	 *            of the point
+	 * @return the latitude of the point
+	 */
+	public double getLatitude(int index) {
+		checkIndex(index);
+		return values[index * 2];
+	}
+
+	/**
+	 *
+	 * @param index
+	 *            of the point
+	 * @return the longitude of the point
+	 */
+	public double getLongitude(int index) {
+		checkIndex(index);
+		return values[index * 2 + 1];
+	}
+
+	/**
+	 * Remove all the points, the memory is kept to be reused
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 *
+	 * @return all the points as {@link PointGeometry}
+	 */
+	public List<PointGeometry> toPoints() {
+		return toPoints(0, size);
+	}
+
+	/**
+	 *
+	 * @param from
+	 *            index of the first point, inclusive
+	 * @param to
+	 *            index of the last point, exclusive
+	 * @return the points of the range as {@link PointGeometry}
+	 */
+	public List<PointGeometry> toPoints(int from, int to) {
+		if (from < 0 || to > size || from > to) {
+			throw new IndexOutOfBoundsException();
+		}
+		final List<PointGeometry> points = new ArrayList<PointGeometry>(to
+				- from);
+		for (int i = from; i < to; i++) {
+			points.add(new PointGeometry(values[i * 2], values[i * 2 + 1]));
+		}
+		return points;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException();
+		}
+	}
+}
@@ -0,0 +1,500 @@
+package fr.umlv.lastproject.smart.projection;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fr.umlv.lastproject.smart.utils.SmartLogger;
+
+/**
+ * Create the {@link CoordinateTransform} of a coordinate reference system
+ * from its EPSG code or from the WKT of a .prj file
+ *
+ */
+public final class CoordinateSystems {
+
+	private static final Logger LOGGER = SmartLogger.getLocator().getLogger();
+
+	/* Paris meridian from Greenwich, in degrees */
+	private static final double PARIS_MERIDIAN = 2.33722917;
+
+	/* Ellipsoids closer than this are considered the same, in meters */
+	private static final double ELLIPSOID_TOLERANCE = 1E-3;
+
+	private static final double[][] NTF_LAMBERT_ZONES = {
+			// latitude of origin, scale factor, false easting, false northing
+			{ 49.5, 0.99987734, 600000, 200000 },
+			{ 46.8, 0.99987742, 600000, 200000 },
+			{ 44.1, 0.99987750, 600000, 200000 },
+			{ 42.165, 0.99994471, 234.358, 185861.369 } };
+
+	private CoordinateSystems() {
+	}
+
+	/**
+	 *
+	 * @param code
+	 *            of the coordinate reference system
+	 * @return the transform of the system, or null if it is not supported
+	 */
+	public static CoordinateTransform fromEpsg(int code) {
+		switch (code) {
+		case 4326: // WGS84
+		case 4171: // RGF93
+		case 4258: // ETRS89
+			return GeographicTransform.WGS84;
+		case 4275: // NTF
+			return new GeographicTransform(Ellipsoid.CLARKE_1880_IGN,
+					ntfShift(), 0, CoordinateTransform.TO_RADIANS);
+		case 3857:
+		case 3785:
+		case 900913:
+		case 102100:
+		case 102113:
+			return new WebMercator();
+		case 2154: // RGF93 / Lambert-93
+			return new LambertConformalConic(Ellipsoid.GRS80, null, 0, 46.5,
+					3, 49, 44, 1, 700000, 6600000, 1);
+		case 2972: // RGFG95 / UTM 22N
+			return TransverseMercator.utm(Ellipsoid.GRS80, null, 22, false);
+		case 2975: // RGR92 / UTM 40S
+			return TransverseMercator.utm(Ellipsoid.GRS80, null, 40, true);
+		case 4471: // RGM04 / UTM 38S
+			return TransverseMercator.utm(Ellipsoid.GRS80, null, 38, true);
+		case 5490: // RGAF09 / UTM 20N
+			return TransverseMercator.utm(Ellipsoid.GRS80, null, 20, false);
+		default:
+			break;
+		}
+
+		if (code >= 3942 && code <= 3950) {
+			// RGF93 / CC42 to CC50
+			final int latitude = code - 3900;
+			return new LambertConformalConic(Ellipsoid.GRS80, null, 0,
+					latitude, 3, latitude - 0.75, latitude + 0.75, 1, 1700000,
+					(latitude - 41) * 1000000 + 200000, 1);
+		}
+		if (code >= 27561 && code <= 27564) {
+			// NTF (Paris) / Lambert Nord, Centre, Sud, Corse
+			return ntfLambert(code - 27561, 0);
+		}
+		if (code >= 27571 && code <= 27574) {
+			// NTF (Paris) / Lambert zone I to IV, carto
+			return ntfLambert(code - 27571, (code - 27570) * 1000000);
+		}
+		if (code >= 32601 && code <= 32660) {
+			return TransverseMercator.utm(Ellipsoid.WGS84, null, code - 32600,
+					false);
+		}
+		if (code >= 32701 && code <= 32760) {
+			return TransverseMercator.utm(Ellipsoid.WGS84, null, code - 32700,
+					true);
+		}
+		if (code >= 25828 && code <= 25838) {
+			// ETRS89 / UTM
+			return TransverseMercator.utm(Ellipsoid.GRS80, null, code - 25800,
+					false);
+		}
+
+		LOGGER.log(Level.WARNING, "EPSG code not supported : " + code);
+		return null;
+	}
+
+	private static DatumShift ntfShift() {
+		return new DatumShift(Ellipsoid.CLARKE_1880_IGN, -168, -60, 320);
+	}
+
+	private static CoordinateTransform ntfLambert(int zone,
+			double cartoNorthing) {
+		final double[] parameters = NTF_LAMBERT_ZONES[zone];
+		return new LambertConformalConic(Ellipsoid.CLARKE_1880_IGN,
+				ntfShift(), PARIS_MERIDIAN, parameters[0], 0, parameters[0],
+				parameters[0], parameters[1], parameters[2], parameters[3]
+						+ cartoNorthing, 1);
+	}
+
+	/**
+	 * Read the coordinate reference system of a .prj file
+	 *
+	 * @param prj
+	 *            the file
+	 * @return the transform of the system, or null if it is not supported
+	 * @throws IOException
+	 */
+	public static CoordinateTransform fromPrj(File prj) throws IOException {
+		final StringBuilder wkt = new StringBuilder();
+		final BufferedReader reader = new BufferedReader(new FileReader(prj));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				wkt.append(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return fromWkt(wkt.toString());
+	}
+
+	/**
+	 * Read the coordinate reference system of a WKT, as found in the .prj
+	 * files
+	 *
+	 * @param wkt
+	 * @return the transform of the system, or null if it is not supported
+	 */
+	public static CoordinateTransform fromWkt(String wkt) {
+		final WktNode root;
+		try {
+			root = new WktParser(wkt).parse();
+		} catch (IllegalArgumentException e) {
+			LOGGER.log(Level.WARNING, "Invalid WKT : " + e.getMessage());
+			return null;
+		}
+
+		final WktNode authority = root.getChild("AUTHORITY");
+		if (authority != null && "EPSG".equalsIgnoreCase(authority.getString(0))) {
+			try {
+				final CoordinateTransform transform = fromEpsg(Integer
+						.parseInt(authority.getString(1).trim()));
+				if (transform != null) {
+					return transform;
+				}
+			} catch (NumberFormatException e) {
+				LOGGER.log(Level.WARNING, "Invalid EPSG code in the WKT");
+			}
+		}
+
+		final WktNode geographic = "GEOGCS".equals(root.getName()) ? root
+				: root.getChild("GEOGCS");
+		if (geographic == null) {
+			LOGGER.log(Level.WARNING, "WKT not supported : " + root.getName());
+			return null;
+		}
+		final WktNode datum = geographic.getChild("DATUM");
+		final WktNode spheroid = datum == null ? null : datum
+				.getChild("SPHEROID");
+		final Ellipsoid ellipsoid = spheroid == null ? Ellipsoid.WGS84
+				: new Ellipsoid(spheroid.getNumber(1), spheroid.getNumber(2));
+		final DatumShift shift = readShift(datum, ellipsoid);
+
+		final WktNode angularUnitNode = geographic.getChild("UNIT");
+		final double angularUnit = angularUnitNode == null ? CoordinateTransform.TO_RADIANS
+				: angularUnitNode.getNumber(1);
+		final double toDegrees = angularUnit / CoordinateTransform.TO_RADIANS;
+
+		final WktNode primeMeridianNode = geographic.getChild("PRIMEM");
+		double primeMeridian = 0;
+		if (primeMeridianNode != null) {
+			// ESRI writes the Paris meridian in degrees whatever the unit
+			primeMeridian = normalize(primeMeridianNode.getString(0)).contains(
+					"paris") ? PARIS_MERIDIAN : primeMeridianNode.getNumber(1)
+					* toDegrees;
+		}
+
+		if (root == geographic) {
+			if (shift == null && primeMeridian == 0
+					&& isWgs84Compatible(ellipsoid)
+					&& Math.abs(toDegrees - 1) < 1E-9) {
+				return GeographicTransform.WGS84;
+			}
+			return new GeographicTransform(ellipsoid, shift, primeMeridian,
+					angularUnit);
+		}
+
+		return readProjection(root, ellipsoid, shift, primeMeridian, toDegrees);
+	}
+
+	private static CoordinateTransform readProjection(WktNode root,
+			Ellipsoid ellipsoid, DatumShift shift, double primeMeridian,
+			double toDegrees) {
+		final WktNode projectionNode = root.getChild("PROJECTION");
+		if (projectionNode == null) {
+			return null;
+		}
+		final String projection = normalize(projectionNode.getString(0));
+
+		final Map<String, Double> parameters = new HashMap<String, Double>();
+		for (WktNode parameter : root.getChildren("PARAMETER")) {
+			parameters.put(normalize(parameter.getString(0)),
+					parameter.getNumber(1));
+		}
+		final WktNode linearUnitNode = root.getChild("UNIT");
+		final double linearUnit = linearUnitNode == null ? 1 : linearUnitNode
+				.getNumber(1);
+		final double falseEasting = get(parameters, 0, "falseeasting")
+				* linearUnit;
+		final double falseNorthing = get(parameters, 0, "falsenorthing")
+				* linearUnit;
+		final double centralMeridian = get(parameters, 0, "centralmeridian",
+				"longitudeoforigin", "longitudeofcenter") * toDegrees;
+		final double latitudeOfOrigin = get(parameters, 0, "latitudeoforigin",
+				"latitudeofcenter") * toDegrees;
+		final double scaleFactor = get(parameters, 1, "scalefactor",
+				"scalefactoratnaturalorigin");
+
+		if (projection.startsWith("lambertconformalconic")) {
+			final double standardParallel1 = get(parameters,
+					latitudeOfOrigin / toDegrees, "standardparallel1")
+					* toDegrees;
+			if (!parameters.containsKey("standardparallel2")) {
+				// 1SP variant
+				return new LambertConformalConic(ellipsoid, shift,
+						primeMeridian, standardParallel1, centralMeridian,
+						standardParallel1, standardParallel1, scaleFactor,
+						falseEasting, falseNorthing, linearUnit);
+			}
+			final double standardParallel2 = parameters
+					.get("standardparallel2") * toDegrees;
+			return new LambertConformalConic(ellipsoid, shift, primeMeridian,
+					latitudeOfOrigin, centralMeridian, standardParallel1,
+					standardParallel2, scaleFactor, falseEasting,
+					falseNorthing, linearUnit);
+		}
+		if (projection.equals("transversemercator")) {
+			return new TransverseMercator(ellipsoid, shift, primeMeridian,
+					latitudeOfOrigin, centralMeridian, scaleFactor,
+					falseEasting, falseNorthing, linearUnit);
+		}
+		if (projection.equals("mercatorauxiliarysphere")
+				|| projection.contains("pseudomercator")) {
+			return new WebMercator(falseEasting, falseNorthing, linearUnit);
+		}
+
+		LOGGER.log(Level.WARNING, "Projection not supported : " + projection);
+		return null;
+	}
+
+	private static DatumShift readShift(WktNode datum, Ellipsoid ellipsoid) {
+		if (datum == null) {
+			return null;
+		}
+		final WktNode toWgs84 = datum.getChild("TOWGS84");
+		if (toWgs84 != null) {
+			final double[] values = new double[7];
+			boolean zero = true;
+			for (int i = 0; i < values.length && i < toWgs84.size(); i++) {
+				values[i] = toWgs84.getNumber(i);
+				zero &= values[i] == 0;
+			}
+			if (zero) {
+				return null;
+			}
+			return new DatumShift(ellipsoid, values[0], values[1], values[2],
+					values[3], values[4], values[5], values[6]);
+		}
+		// the .prj files of ESRI have no TOWGS84
+		if (normalize(datum.getString(0)).contains("ntf")) {
+			return ntfShift();
+		}
+		return null;
+	}
+
+	private static boolean isWgs84Compatible(Ellipsoid ellipsoid) {
+		return Math.abs(ellipsoid.getSemiMajorAxis()
+				- Ellipsoid.WGS84.getSemiMajorAxis()) < ELLIPSOID_TOLERANCE
+				&& Math.abs(ellipsoid.getFlattening()
+						- Ellipsoid.WGS84.getFlattening()) < 1E-9;
+	}
+
+	private static double get(Map<String, Double> parameters,
+			double defaultValue, String... names) {
+		for (String name : names) {
+			final Double value = parameters.get(name);
+			if (value != null) {
+				return value;
+			}
+		}
+		return defaultValue;
+	}
+
+	private static String normalize(String name) {
+		final StringBuilder builder = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			final char c = name.charAt(i);
+			if (Character.isLetterOrDigit(c)) {
+				builder.append(c);
+			}
+		}
+		return builder.toString().toLowerCase(Locale.US);
+	}
+
+	/**
+	 * Element of a WKT : a keyword and its values, strings, numbers or other
+	 * elements
+	 */
+	private static final class WktNode {
+
+		private final String name;
+		private final List<Object> values = new ArrayList<Object>();
+
+		WktNode(String name) {
+			this.name = name;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		int size() {
+			return values.size();
+		}
+
+		String getString(int index) {
+			return index < values.size() ? String.valueOf(values.get(index))
+					: "";
+		}
+
+		double getNumber(int index) {
+			if (index >= values.size() || !(values.get(index) instanceof Double)) {
+				throw new IllegalArgumentException("Number expected in " + name);
+			}
+			return (Double) values.get(index);
+		}
+
+		WktNode getChild(String childName) {
+			for (Object value : values) {
+				if (value instanceof WktNode
+						&& childName.equalsIgnoreCase(((WktNode) value).name)) {
+					return (WktNode) value;
+				}
+			}
+			return null;
+		}
+
+		List<WktNode> getChildren(String childName) {
+			final List<WktNode> children = new ArrayList<WktNode>();
+			for (Object value : values) {
+				if (value instanceof WktNode
+						&& childName.equalsIgnoreCase(((WktNode) value).name)) {
+					children.add((WktNode) value);
+				}
+			}
+			return children;
+		}
+	}
+
+	private static final class WktParser {
+
+		private final String wkt;
+		private int position;
+
+		WktParser(String wkt) {
+			this.wkt = wkt;
+		}
+
+		WktNode parse() {
+			skipSpaces();
+			final WktNode node = readNode(readKeyword());
+			return node;
+		}
+
+		private WktNode readNode(String name) {
+			final WktNode node = new WktNode(name.toUpperCase(Locale.US));
+			final char open = next();
+			if (open != '[' && open != '(') {
+				throw new IllegalArgumentException("'[' expected after "
+						+ name);
+			}
+			while (true) {
+				skipSpaces();
+				final char c = peek();
+				if (c == '"') {
+					node.values.add(readString());
+				} else if (Character.isLetter(c)) {
+					final String keyword = readKeyword();
+					skipSpaces();
+					if (position < wkt.length()
+							&& (peek() == '[' || peek() == '(')) {
+						node.values.add(readNode(keyword));
+					} else {
+						node.values.add(keyword);
+					}
+				} else {
+					node.values.add(readNumber());
+				}
+				skipSpaces();
+				final char separator = next();
+				if (separator == ']' || separator == ')') {
+					return node;
+				}
+				if (separator != ',') {
+					throw new IllegalArgumentException("',' expected in "
+							+ name);
+				}
+			}
+		}
+
+		private String readKeyword() {
+			final int start = position;
+			while (position < wkt.length()
+					&& (Character.isLetterOrDigit(wkt.charAt(position)) || wkt
+							.charAt(position) == '_')) {
+				position++;
+			}
+			if (start == position) {
+				throw new IllegalArgumentException("Keyword expected");
+			}
+			return wkt.substring(start, position);
+		}
+
+		private String readString() {
+			next();
+			final StringBuilder builder = new StringBuilder();
+			while (true) {
+				final char c = next();
+				if (c == '"') {
+					if (position < wkt.length() && peek() == '"') {
+						// doubled quote
+						builder.append(next());
+					} else {
+						return builder.toString();
+					}
+				} else {
+					builder.append(c);
+				}
+			}
+		}
+
+		private Double readNumber() {
+			final int start = position;
+			while (position < wkt.length()
+					&& "+-.0123456789eE".indexOf(wkt.charAt(position)) != -1) {
+				position++;
+			}
+			try {
+				return Double.valueOf(wkt.substring(start, position));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Number expected at "
+						+ start);
+			}
+		}
+
+		private void skipSpaces() {
+			while (position < wkt.length()
+					&& Character.isWhitespace(wkt.charAt(position))) {
+				position++;
+			}
+		}
+
+		private char peek() {
+			if (position >= wkt.length()) {
+				throw new IllegalArgumentException("Unexpected end");
+			}
+			return wkt.charAt(position);
+		}
+
+		private char next() {
+			final char c = peek();
+			position++;
+			return c;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package fr.umlv.lastproject.smart.projection;
+
+/**
+ * Transformation between a coordinate reference system and WGS84
+ * longitude/latitude. The coordinates are transformed by whole arrays of
+ * interleaved x and y values, modified in place, each step of the
+ * transformation being a loop over the array.
+ *
+ */
+public abstract class CoordinateTransform {
+
+	static final double TO_RADIANS = Math.PI / 180;
+	static final double TO_DEGREES = 180 / Math.PI;
+
+	private final Ellipsoid ellipsoid;
+	private final DatumShift shift;
+	private final double primeMeridian;
+
+	/**
+	 *
+	 * @param ellipsoid
+	 *            of the datum
+	 * @param shift
+	 *            from the datum to WGS84, or null if the datum is WGS84
+	 *            compatible
+	 * @param primeMeridian
+	 *            longitude of the prime meridian from Greenwich, in degrees
+	 */
+	protected CoordinateTransform(Ellipsoid ellipsoid, DatumShift shift,
+			double primeMeridian) {
+		this.ellipsoid = ellipsoid;
+		this.shift = shift;
+		this.primeMeridian = primeMeridian * TO_RADIANS;
+	}
+
+	public Ellipsoid getEllipsoid() {
+		return ellipsoid;
+	}
+
+	/**
+	 * Transform coordinates of the system to WGS84 longitude/latitude in
+	 * degrees
+	 *
+	 * @param xy
+	 *            interleaved x and y, replaced by the longitude and latitude
+	 * @param count
+	 *            number of points
+	 */
+	public void toWgs84(double[] xy, int count) {
+		checkSize(xy, count);
+		inverse(xy, count);
+		if (primeMeridian != 0) {
+			for (int i = 0; i < count * 2; i += 2) {
+				xy[i] += primeMeridian;
+			}
+		}
+		if (shift != null) {
+			shift.toWgs84(xy, count);
+		}
+		for (int i = 0; i < count * 2; i++) {
+			xy[i] *= TO_DEGREES;
+		}
+	}
+
+	/**
+	 * Transform WGS84 longitude/latitude in degrees to coordinates of the
+	 * system
+	 *
+	 * @param lonLat
+	 *            interleaved longitude and latitude, replaced by x and y
+	 * @param count
+	 *            number of points
+	 */
+	public void fromWgs84(double[] lonLat, int count) {
+		checkSize(lonLat, count);
+		for (int i = 0; i < count * 2; i++) {
+			lonLat[i] *= TO_RADIANS;
+		}
+		if (shift != null) {
+			shift.fromWgs84(lonLat, count);
+		}
+		if (primeMeridian != 0) {
+			for (int i = 0; i < count * 2; i += 2) {
+				lonLat[i] -= primeMeridian;
+			}
+		}
+		forward(lonLat, count);
+	}
+
+	/**
+	 * Convert coordinates of the system to longitude/latitude in radians on
+	 * the datum, from the prime meridian
+	 */
+	protected abstract void inverse(double[] xy, int count);
+
+	/**
+	 * Convert longitude/latitude in radians on the datum, from the prime
+	 * meridian, to coordinates of the system
+	 */
+	protected abstract void forward(double[] lonLat, int count);
+
+	private static void checkSize(double[] values, int count) {
+		if (count < 0 || values.length < count * 2) {
+			throw new IllegalArgumentException();
+		}
+	}
+}
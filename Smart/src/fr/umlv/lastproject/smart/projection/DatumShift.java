@@ -0,0 +1,138 @@
+package fr.umlv.lastproject.smart.projection;
+
+/**
+ * Helmert transformation from a datum to WGS84 (the TOWGS84 parameters of a
+ * .prj). The geographic coordinates are converted to geocentric coordinates,
+ * shifted, and converted back on the target ellipsoid.
+ *
+ */
+public final class DatumShift {
+
+	private static final double ARC_SECOND = Math.PI / (180 * 3600);
+	private static final int ITERATIONS = 4;
+
+	private final Ellipsoid source;
+	private final double tx;
+	private final double ty;
+	private final double tz;
+	private final double rx;
+	private final double ry;
+	private final double rz;
+	private final double scale;
+
+	/**
+	 * Geocentric translation
+	 *
+	 * @param source
+	 *            ellipsoid of the datum
+	 * @param tx
+	 *            in meters
+	 * @param ty
+	 *            in meters
+	 * @param tz
+	 *            in meters
+	 */
+	public DatumShift(Ellipsoid source, double tx, double ty, double tz) {
+		this(source, tx, ty, tz, 0, 0, 0, 0);
+	}
+
+	/**
+	 * Seven parameters transformation, position vector convention
+	 *
+	 * @param source
+	 *            ellipsoid of the datum
+	 * @param tx
+	 *            in meters
+	 * @param ty
+	 *            in meters
+	 * @param tz
+	 *            in meters
+	 * @param rx
+	 *            in arc seconds
+	 * @param ry
+	 *            in arc seconds
+	 * @param rz
+	 *            in arc seconds
+	 * @param ppm
+	 *            scale difference in parts per million
+	 */
+	public DatumShift(Ellipsoid source, double tx, double ty, double tz,
+			double rx, double ry, double rz, double ppm) {
+		this.source = source;
+		this.tx = tx;
+		this.ty = ty;
+		this.tz = tz;
+		this.rx = rx * ARC_SECOND;
+		this.ry = ry * ARC_SECOND;
+		this.rz = rz * ARC_SECOND;
+		this.scale = 1 + ppm * 1E-6;
+	}
+
+	/**
+	 * Shift longitude/latitude pairs in radians from the datum to WGS84
+	 *
+	 * @param lonLat
+	 *            interleaved longitude and latitude, modified in place
+	 * @param count
+	 *            number of points
+	 */
+	void toWgs84(double[] lonLat, int count) {
+		shift(lonLat, count, source, Ellipsoid.WGS84, 1);
+	}
+
+	/**
+	 * Shift longitude/latitude pairs in radians from WGS84 to the datum
+	 *
+	 * @param lonLat
+	 *            interleaved longitude and latitude, modified in place
+	 * @param count
+	 *            number of points
+	 */
+	void fromWgs84(double[] lonLat, int count) {
+		shift(lonLat, count, Ellipsoid.WGS84, source, -1);
+	}
+
+	private void shift(double[] lonLat, int count, Ellipsoid from,
+			Ellipsoid to, int direction) {
+		final double a = from.getSemiMajorAxis();
+		final double e2 = from.getEccentricitySquared();
+		final double a2 = to.getSemiMajorAxis();
+		final double e22 = to.getEccentricitySquared();
+		final double dx = direction * tx;
+		final double dy = direction * ty;
+		final double dz = direction * tz;
+		final double drx = direction * rx;
+		final double dry = direction * ry;
+		final double drz = direction * rz;
+		final double s = direction > 0 ? scale : 1 / scale;
+
+		for (int i = 0; i < count * 2; i += 2) {
+			final double lambda = lonLat[i];
+			final double phi = lonLat[i + 1];
+
+			// geodetic to geocentric, height 0
+			final double sinPhi = Math.sin(phi);
+			final double cosPhi = Math.cos(phi);
+			final double n = a / Math.sqrt(1 - e2 * sinPhi * sinPhi);
+			final double x = n * cosPhi * Math.cos(lambda);
+			final double y = n * cosPhi * Math.sin(lambda);
+			final double z = n * (1 - e2) * sinPhi;
+
+			// helmert
+			final double x2 = dx + s * (x - drz * y + dry * z);
+			final double y2 = dy + s * (drz * x + y - drx * z);
+			final double z2 = dz + s * (-dry * x + drx * y + z);
+
+			// geocentric to geodetic
+			final double p = Math.sqrt(x2 * x2 + y2 * y2);
+			double phi2 = Math.atan2(z2, p * (1 - e22));
+			for (int j = 0; j < ITERATIONS; j++) {
+				final double sin = Math.sin(phi2);
+				final double n2 = a2 / Math.sqrt(1 - e22 * sin * sin);
+				phi2 = Math.atan2(z2 + e22 * n2 * sin, p);
+			}
+			lonLat[i] = Math.atan2(y2, x2);
+			lonLat[i + 1] = phi2;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package fr.umlv.lastproject.smart.projection;
+
+/**
+ * Reference ellipsoid of a datum
+ *
+ */
+public final class Ellipsoid {
+
+	public static final Ellipsoid WGS84 = new Ellipsoid(6378137.0,
+			298.257223563);
+	public static final Ellipsoid GRS80 = new Ellipsoid(6378137.0,
+			298.257222101);
+	public static final Ellipsoid CLARKE_1880_IGN = new Ellipsoid(6378249.2,
+			293.4660212936269);
+	public static final Ellipsoid INTERNATIONAL_1924 = new Ellipsoid(
+			6378388.0, 297.0);
+
+	private final double semiMajorAxis;
+	private final double flattening;
+	private final double eccentricitySquared;
+
+	/**
+	 *
+	 * @param semiMajorAxis
+	 *            in meters
+	 * @param inverseFlattening
+	 *            or 0 for a sphere
+	 */
+	public Ellipsoid(double semiMajorAxis, double inverseFlattening) {
+		this.semiMajorAxis = semiMajorAxis;
+		this.flattening = inverseFlattening == 0 ? 0 : 1 / inverseFlattening;
+		this.eccentricitySquared = flattening * (2 - flattening);
+	}
+
+	public double getSemiMajorAxis() {
+		return semiMajorAxis;
+	}
+
+	public double getFlattening() {
+		return flattening;
+	}
+
+	public double getEccentricitySquared() {
+		return eccentricitySquared;
+	}
+
+	public double getEccentricity() {
+		return Math.sqrt(eccentricitySquared);
+	}
+}
@@ -0,0 +1,48 @@
+package fr.umlv.lastproject.smart.projection;
+
+/**
+ * Geographic coordinate system : the coordinates are longitude/latitude,
+ * possibly on another datum or from another prime meridian than WGS84
+ *
+ */
+public class GeographicTransform extends CoordinateTransform {
+
+	/**
+	 * WGS84 longitude/latitude in degrees
+	 */
+	public static final GeographicTransform WGS84 = new GeographicTransform(
+			Ellipsoid.WGS84, null, 0, TO_RADIANS);
+
+	private final double angularUnit;
+
+	/**
+	 *
+	 * @param ellipsoid
+	 *            of the datum
+	 * @param shift
+	 *            to WGS84, or null
+	 * @param primeMeridian
+	 *            in degrees
+	 * @param angularUnit
+	 *            radians per unit of the coordinates
+	 */
+	public GeographicTransform(Ellipsoid ellipsoid, DatumShift shift,
+			double primeMeridian, double angularUnit) {
+		super(ellipsoid, shift, primeMeridian);
+		this.angularUnit = angularUnit;
+	}
+
+	@Override
+	protected void inverse(double[] xy, int count) {
+		for (int i = 0; i < count * 2; i++) {
+			xy[i] *= angularUnit;
+		}
+	}
+
+	@Override
+	protected void forward(double[] lonLat, int count) {
+		for (int i = 0; i < count * 2; i++) {
+			lonLat[i] /= angularUnit;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package fr.umlv.lastproject.smart.projection;
+
+/**
+ * Lambert conformal conic projection on an ellipsoid, with one or two
+ * standard parallels (Lambert 93, the CC zones, the NTF Lambert zones...)
+ *
+ */
+public class LambertConformalConic extends ProjectedTransform {
+
+	private static final double EPSILON = 1E-12;
+	private static final int MAX_ITERATIONS = 15;
+
+	private final double e;
+	private final double n;
+	private final double aF;
+	private final double rF;
+	private final double centralMeridian;
+
+	/**
+	 * Projection with two standard parallels. For the variant with one
+	 * standard parallel, give the latitude of origin as both parallels and its
+	 * scale factor.
+	 *
+	 * @param ellipsoid
+	 *            of the datum
+	 * @param shift
+	 *            to WGS84, or null
+	 * @param primeMeridian
+	 *            in degrees
+	 * @param latitudeOfOrigin
+	 *            in degrees
+	 * @param centralMeridian
+	 *            in degrees
+	 * @param standardParallel1
+	 *            in degrees
+	 * @param standardParallel2
+	 *            in degrees
+	 * @param scaleFactor
+	 *            at the standard parallel, 1 with two standard parallels
+	 * @param falseEasting
+	 *            in meters
+	 * @param falseNorthing
+	 *            in meters
+	 * @param linearUnit
+	 *            meters per unit of the coordinates
+	 */
+	public LambertConformalConic(Ellipsoid ellipsoid, DatumShift shift,
+			double primeMeridian, double latitudeOfOrigin,
+			double centralMeridian, double standardParallel1,
+			double standardParallel2, double scaleFactor, double falseEasting,
+			double falseNorthing, double linearUnit) {
+		super(ellipsoid, shift, primeMeridian, falseEasting, falseNorthing,
+				linearUnit);
+		this.e = ellipsoid.getEccentricity();
+		this.centralMeridian = centralMeridian * TO_RADIANS;
+
+		final double phi0 = latitudeOfOrigin * TO_RADIANS;
+		final double phi1 = standardParallel1 * TO_RADIANS;
+		final double phi2 = standardParallel2 * TO_RADIANS;
+		final double m1 = m(phi1);
+		final double t1 = t(phi1);
+		if (Math.abs(phi1 - phi2) < EPSILON) {
+			this.n = Math.sin(phi1);
+		} else {
+			this.n = (Math.log(m1) - Math.log(m(phi2)))
+					/ (Math.log(t1) - Math.log(t(phi2)));
+		}
+		this.aF = ellipsoid.getSemiMajorAxis() * scaleFactor * m1
+				/ (n * Math.pow(t1, n));
+		this.rF = aF * Math.pow(t(phi0), n);
+	}
+
+	private double m(double phi) {
+		final double sin = Math.sin(phi);
+		return Math.cos(phi) / Math.sqrt(1 - e * e * sin * sin);
+	}
+
+	private double t(double phi) {
+		final double esin = e * Math.sin(phi);
+		return Math.tan(Math.PI / 4 - phi / 2)
+				/ Math.pow((1 - esin) / (1 + esin), e / 2);
+	}
+
+	@Override
+	protected void unproject(double[] xy, int count) {
+		final double sign = n < 0 ? -1 : 1;
+		final double halfE = e / 2;
+		final double inverseN = 1 / n;
+		for (int i = 0; i < count * 2; i += 2) {
+			final double x = xy[i];
+			final double y = rF - xy[i + 1];
+			final double r = sign * Math.sqrt(x * x + y * y);
+			final double t = Math.pow(r / aF, inverseN);
+			final double theta = Math.atan2(sign * x, sign * y);
+
+			double phi = Math.PI / 2 - 2 * Math.atan(t);
+			for (int j = 0; j < MAX_ITERATIONS; j++) {
+				final double esin = e * Math.sin(phi);
+				final double next = Math.PI / 2 - 2
+						* Math.atan(t * Math.pow((1 - esin) / (1 + esin), halfE));
+				if (Math.abs(next - phi) < EPSILON) {
+					phi = next;
+					break;
+				}
+				phi = next;
+			}
+			xy[i] = theta * inverseN + centralMeridian;
+			xy[i + 1] = phi;
+		}
+	}
+
+	@Override
+	protected void project(double[] lonLat, int count) {
+		for (int i = 0; i < count * 2; i += 2) {
+			final double r = aF * Math.pow(t(lonLat[i + 1]), n);
+			final double theta = n * (lonLat[i] - centralMeridian);
+			lonLat[i] = r * Math.sin(theta);
+			lonLat[i + 1] = rF - r * Math.cos(theta);
+		}
+	}
+}
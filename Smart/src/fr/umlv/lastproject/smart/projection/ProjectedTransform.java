@@ -0,0 +1,67 @@
+package fr.umlv.lastproject.smart.projection;
+
+/**
+ * Projected coordinate system : the coordinates are eastings/northings from a
+ * false origin, in a linear unit
+ *
+ */
+public abstract class ProjectedTransform extends CoordinateTransform {
+
+	private final double falseEasting;
+	private final double falseNorthing;
+	private final double linearUnit;
+
+	/**
+	 *
+	 * @param ellipsoid
+	 *            of the datum
+	 * @param shift
+	 *            to WGS84, or null
+	 * @param primeMeridian
+	 *            in degrees
+	 * @param falseEasting
+	 *            in meters
+	 * @param falseNorthing
+	 *            in meters
+	 * @param linearUnit
+	 *            meters per unit of the coordinates
+	 */
+	protected ProjectedTransform(Ellipsoid ellipsoid, DatumShift shift,
+			double primeMeridian, double falseEasting, double falseNorthing,
+			double linearUnit) {
+		super(ellipsoid, shift, primeMeridian);
+		this.falseEasting = falseEasting;
+		this.falseNorthing = falseNorthing;
+		this.linearUnit = linearUnit;
+	}
+
+	@Override
+	protected final void inverse(double[] xy, int count) {
+		for (int i = 0; i < count * 2; i += 2) {
+			xy[i] = xy[i] * linearUnit - falseEasting;
+			xy[i + 1] = xy[i + 1] * linearUnit - falseNorthing;
+		}
+		unproject(xy, count);
+	}
+
+	@Override
+	protected final void forward(double[] lonLat, int count) {
+		project(lonLat, count);
+		for (int i = 0; i < count * 2; i += 2) {
+			lonLat[i] = (lonLat[i] + falseEasting) / linearUnit;
+			lonLat[i + 1] = (lonLat[i + 1] + falseNorthing) / linearUnit;
+		}
+	}
+
+	/**
+	 * Convert eastings/northings in meters from the natural origin to
+	 * longitude/latitude in radians
+	 */
+	protected abstract void unproject(double[] xy, int count);
+
+	/**
+	 * Convert longitude/latitude in radians to eastings/northings in meters
+	 * from the natural origin
+	 */
+	protected abstract void project(double[] lonLat, int count);
+}
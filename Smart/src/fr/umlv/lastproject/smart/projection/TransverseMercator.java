@@ -0,0 +1,160 @@
+package fr.umlv.lastproject.smart.projection;
+
+/**
+ * Transverse Mercator projection on an ellipsoid (UTM zones), with the series
+ * of the USGS (Snyder), accurate to the millimeter inside a zone
+ *
+ */
+public class TransverseMercator extends ProjectedTransform {
+
+	private static final double UTM_SCALE_FACTOR = 0.9996;
+	private static final double UTM_FALSE_EASTING = 500000;
+	private static final double UTM_FALSE_NORTHING_SOUTH = 10000000;
+
+	private final double a;
+	private final double e2;
+	private final double ep2;
+	private final double k0;
+	private final double centralMeridian;
+	private final double m0;
+	private final double mu0;
+	private final double e1;
+
+	/**
+	 *
+	 * @param ellipsoid
+	 *            of the datum
+	 * @param shift
+	 *            to WGS84, or null
+	 * @param primeMeridian
+	 *            in degrees
+	 * @param latitudeOfOrigin
+	 *            in degrees
+	 * @param centralMeridian
+	 *            in degrees
+	 * @param scaleFactor
+	 *            on the central meridian
+	 * @param falseEasting
+	 *            in meters
+	 * @param falseNorthing
+	 *            in meters
+	 * @param linearUnit
+	 *            meters per unit of the coordinates
+	 */
+	public TransverseMercator(Ellipsoid ellipsoid, DatumShift shift,
+			double primeMeridian, double latitudeOfOrigin,
+			double centralMeridian, double scaleFactor, double falseEasting,
+			double falseNorthing, double linearUnit) {
+		super(ellipsoid, shift, primeMeridian, falseEasting, falseNorthing,
+				linearUnit);
+		this.a = ellipsoid.getSemiMajorAxis();
+		this.e2 = ellipsoid.getEccentricitySquared();
+		this.ep2 = e2 / (1 - e2);
+		this.k0 = scaleFactor;
+		this.centralMeridian = centralMeridian * TO_RADIANS;
+		this.m0 = meridianArc(latitudeOfOrigin * TO_RADIANS);
+		this.mu0 = a * (1 - e2 / 4 - 3 * e2 * e2 / 64 - 5 * e2 * e2 * e2 / 256);
+		final double sqrt = Math.sqrt(1 - e2);
+		this.e1 = (1 - sqrt) / (1 + sqrt);
+	}
+
+	/**
+	 * UTM zone on an ellipsoid
+	 *
+	 * @param ellipsoid
+	 *            of the datum
+	 * @param shift
+	 *            to WGS84, or null
+	 * @param zone
+	 *            number, from 1 to 60
+	 * @param south
+	 *            true for the southern hemisphere
+	 * @return the projection
+	 */
+	public static TransverseMercator utm(Ellipsoid ellipsoid, DatumShift shift,
+			int zone, boolean south) {
+		if (zone < 1 || zone > 60) {
+			throw new IllegalArgumentException("Invalid UTM zone " + zone);
+		}
+		return new TransverseMercator(ellipsoid, shift, 0, 0, zone * 6 - 183,
+				UTM_SCALE_FACTOR, UTM_FALSE_EASTING,
+				south ? UTM_FALSE_NORTHING_SOUTH : 0, 1);
+	}
+
+	private double meridianArc(double phi) {
+		final double e4 = e2 * e2;
+		final double e6 = e4 * e2;
+		return a
+				* ((1 - e2 / 4 - 3 * e4 / 64 - 5 * e6 / 256) * phi
+						- (3 * e2 / 8 + 3 * e4 / 32 + 45 * e6 / 1024)
+						* Math.sin(2 * phi)
+						+ (15 * e4 / 256 + 45 * e6 / 1024) * Math.sin(4 * phi) - (35 * e6 / 3072)
+						* Math.sin(6 * phi));
+	}
+
+	@Override
+	protected void unproject(double[] xy, int count) {
+		final double c1 = 3 * e1 / 2 - 27 * e1 * e1 * e1 / 32;
+		final double c2 = 21 * e1 * e1 / 16 - 55 * e1 * e1 * e1 * e1 / 32;
+		final double c3 = 151 * e1 * e1 * e1 / 96;
+		final double c4 = 1097 * e1 * e1 * e1 * e1 / 512;
+
+		for (int i = 0; i < count * 2; i += 2) {
+			final double mu = (m0 + xy[i + 1] / k0) / mu0;
+			final double phi1 = mu + c1 * Math.sin(2 * mu) + c2
+					* Math.sin(4 * mu) + c3 * Math.sin(6 * mu) + c4
+					* Math.sin(8 * mu);
+
+			final double sin1 = Math.sin(phi1);
+			final double cos1 = Math.cos(phi1);
+			final double tan1 = sin1 / cos1;
+			final double w = 1 - e2 * sin1 * sin1;
+			final double n1 = a / Math.sqrt(w);
+			final double t1 = tan1 * tan1;
+			final double cc1 = ep2 * cos1 * cos1;
+			final double r1 = a * (1 - e2) / (w * Math.sqrt(w));
+			final double d = xy[i] / (n1 * k0);
+			final double d2 = d * d;
+
+			final double phi = phi1
+					- (n1 * tan1 / r1)
+					* (d2 / 2 - (5 + 3 * t1 + 10 * cc1 - 4 * cc1 * cc1 - 9 * ep2)
+							* d2 * d2 / 24 + (61 + 90 * t1 + 298 * cc1 + 45
+							* t1 * t1 - 252 * ep2 - 3 * cc1 * cc1)
+							* d2 * d2 * d2 / 720);
+			final double lambda = centralMeridian
+					+ (d - (1 + 2 * t1 + cc1) * d2 * d / 6 + (5 - 2 * cc1 + 28
+							* t1 - 3 * cc1 * cc1 + 8 * ep2 + 24 * t1 * t1)
+							* d2 * d2 * d / 120) / cos1;
+			xy[i] = lambda;
+			xy[i + 1] = phi;
+		}
+	}
+
+	@Override
+	protected void project(double[] lonLat, int count) {
+		for (int i = 0; i < count * 2; i += 2) {
+			final double phi = lonLat[i + 1];
+			final double sin = Math.sin(phi);
+			final double cos = Math.cos(phi);
+			final double n = a / Math.sqrt(1 - e2 * sin * sin);
+			final double t = (sin / cos) * (sin / cos);
+			final double c = ep2 * cos * cos;
+			final double aa = (lonLat[i] - centralMeridian) * cos;
+			final double a2 = aa * aa;
+
+			lonLat[i] = k0
+					* n
+					* (aa + (1 - t + c) * a2 * aa / 6 + (5 - 18 * t + t * t
+							+ 72 * c - 58 * ep2)
+							* a2 * a2 * aa / 120);
+			lonLat[i + 1] = k0
+					* (meridianArc(phi) - m0 + n
+							* sin
+							/ cos
+							* (a2 / 2 + (5 - t + 9 * c + 4 * c * c) * a2 * a2
+									/ 24 + (61 - 58 * t + t * t + 600 * c - 330 * ep2)
+									* a2 * a2 * a2 / 720));
+		}
+	}
+}
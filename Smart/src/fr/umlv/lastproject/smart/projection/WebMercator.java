@@ -0,0 +1,38 @@
+package fr.umlv.lastproject.smart.projection;
+
+/**
+ * Spherical Mercator of the web maps (EPSG:3857) : WGS84 coordinates
+ * projected on a sphere of the WGS84 semi-major axis
+ *
+ */
+public class WebMercator extends ProjectedTransform {
+
+	private static final double RADIUS = 6378137.0;
+
+	public WebMercator(double falseEasting, double falseNorthing,
+			double linearUnit) {
+		super(Ellipsoid.WGS84, null, 0, falseEasting, falseNorthing,
+				linearUnit);
+	}
+
+	public WebMercator() {
+		this(0, 0, 1);
+	}
+
+	@Override
+	protected void unproject(double[] xy, int count) {
+		for (int i = 0; i < count * 2; i += 2) {
+			xy[i] = xy[i] / RADIUS;
+			xy[i + 1] = Math.PI / 2 - 2 * Math.atan(Math.exp(-xy[i + 1] / RADIUS));
+		}
+	}
+
+	@Override
+	protected void project(double[] lonLat, int count) {
+		for (int i = 0; i < count * 2; i += 2) {
+			lonLat[i] = lonLat[i] * RADIUS;
+			lonLat[i + 1] = RADIUS
+					* Math.log(Math.tan(Math.PI / 4 + lonLat[i + 1] / 2));
+		}
+	}
+}
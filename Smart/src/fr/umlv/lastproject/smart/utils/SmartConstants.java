@@ -44,6 +44,8 @@ public final class SmartConstants {
 	public static final int PARAMS_GPS_SETTINGS = 2;
 	public static final int PARAMS_SETTINGS = 3;
 	public static final int PARAMS_HELP = 4;
+	public static final int PARAMS_CANCEL_IMPORT = 5;
+	public static final int PARAMS_CANCEL_EXPORT = 6;
 
 	public static final String TIFF_PATH = Environment
 			.getExternalStorageDirectory().getPath() + "/osmdroid/";
@@ -57,10 +59,14 @@ public final class SmartConstants {
 			.getExternalStorageDirectory().getPath() + "/SMART/.DB/";
 	public static final String TRACK_PATH = Environment
 			.getExternalStorageDirectory().getPath() + "/SMART/Tracks/";
+	public static final String CACHE_PATH = Environment
+			.getExternalStorageDirectory().getPath() + "/SMART/.cache/";
 	public static final String PICTURES_PATH = Environment
 			.getExternalStorageDirectory().getPath() + "/SMART/Pictures/";
 	public static final String LOG_PATH = Environment
 			.getExternalStorageDirectory().getPath() + "/SMART/Log/";
+	public static final String ARCHIVE_PATH = Environment
+			.getExternalStorageDirectory().getPath() + "/SMART/Archives/";
 
 	private static final int[] COLORS = new int[] { Color.BLACK,
 		Color.rgb(100, 149, 237), Color.rgb(0, 0, 128),
@@ -0,0 +1,82 @@
+package fr.umlv.lastproject.smart.database;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import fr.umlv.lastproject.smart.layers.GeometryType;
+import fr.umlv.lastproject.smart.layers.PackedCoordinates;
+
+/**
+ * Round trips of the polygons through the WKB encoding
+ *
+ */
+public class WkbTest {
+
+	private static final double DELTA = 0;
+
+	private static final PointRecord A = new PointRecord(48.8, 2.3, 35);
+	private static final PointRecord B = new PointRecord(48.9, 2.3, 36);
+	private static final PointRecord C = new PointRecord(48.9, 2.4, 37);
+
+	@Test
+	public void openRingRoundTrip() {
+		assertRoundTrip(Arrays.asList(A, B, C));
+	}
+
+	@Test
+	public void closedRingRoundTrip() {
+		assertRoundTrip(Arrays.asList(A, B, C, A));
+	}
+
+	@Test
+	public void degenerateRingRoundTrip() {
+		assertRoundTrip(Arrays.asList(A));
+		assertRoundTrip(Arrays.asList(A, A));
+	}
+
+	@Test
+	public void openRingOfAnotherEncoderIsKept() {
+		final ByteBuffer buffer = ByteBuffer.allocate(9 + 4 + 3 * 24).order(
+				ByteOrder.LITTLE_ENDIAN);
+		buffer.put((byte) 1).putInt(1003).putInt(1).putInt(3);
+		for (PointRecord point : Arrays.asList(A, B, C)) {
+			buffer.putDouble(point.getY()).putDouble(point.getX())
+					.putDouble(point.getZ());
+		}
+		assertEquals(3, Wkb.decodePoints(buffer.array(), 1).size());
+		assertEquals(3, decodeCoordinates(buffer.array()).size());
+	}
+
+	private static PackedCoordinates decodeCoordinates(byte[] wkb) {
+		final PackedCoordinates coordinates = new PackedCoordinates();
+		assertEquals(GeometryType.POLYGON, Wkb.decode(wkb, coordinates));
+		return coordinates;
+	}
+
+	private static void assertRoundTrip(List<PointRecord> points) {
+		final byte[] wkb = Wkb.encode(GeometryType.POLYGON, points);
+
+		final List<PointRecord> decoded = Wkb.decodePoints(wkb, 1);
+		assertEquals(points.size(), decoded.size());
+		for (int i = 0; i < points.size(); i++) {
+			assertEquals(points.get(i).getX(), decoded.get(i).getX(), DELTA);
+			assertEquals(points.get(i).getY(), decoded.get(i).getY(), DELTA);
+			assertEquals(points.get(i).getZ(), decoded.get(i).getZ(), DELTA);
+		}
+
+		final PackedCoordinates coordinates = decodeCoordinates(wkb);
+		assertEquals(points.size(), coordinates.size());
+		for (int i = 0; i < points.size(); i++) {
+			assertEquals(points.get(i).getX(), coordinates.getLatitude(i),
+					DELTA);
+			assertEquals(points.get(i).getY(), coordinates.getLongitude(i),
+					DELTA);
+		}
+	}
+}